@@ -1,9 +1,11 @@
 package com.synaric.app.rxmodel.demo;
 
+import com.synaric.app.rxmodel.annotation.Document;
+
 /**
  * <br/><br/>Created by Synaric on 2018/1/15.
  */
-
+@Document
 public class GameBean {
 
     private String id;
@@ -9,14 +9,17 @@ import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.synaric.app.rxmodel.ChangeSet;
 import com.synaric.app.rxmodel.DbModel;
 import com.synaric.app.rxmodel.RxModel;
-import com.synaric.app.rxmodel.filter.Filter;
+import com.synaric.app.rxmodel.filter.Condition;
+import com.synaric.app.rxmodel.filter.QueryFilter;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
+import rx.Subscription;
 import rx.functions.Action1;
 
 public class MainActivity extends AppCompatActivity {
@@ -35,12 +38,19 @@ public class MainActivity extends AppCompatActivity {
             //指定主键
             return gameBean.getId();
         }
+
+        @Override
+        public String[] bindIndexes() {
+            //为size建立索引，按size筛选时使用索引查找
+            return new String[]{"size"};
+        }
     };
 
     private List<GameBean> data = new ArrayList<>();
     private BaseAdapter adapter;
     private Random random = new Random();
     private int count;
+    private Subscription subscription;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -73,6 +83,13 @@ public class MainActivity extends AppCompatActivity {
                 return textView;
             }
         });
+        observeAll();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (subscription != null) subscription.unsubscribe();
     }
 
     private void save() {
@@ -81,22 +98,17 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void call(Boolean result) {
                 showToast("result:" + result);
-                queryAll();
             }
         });
     }
 
     private void delete() {
-        model.delete(new Filter<GameBean>() {
-            @Override
-            public boolean doIterativeFilter(GameBean gameBean) {
-                return gameBean.getSize() < 20000 || gameBean.getSize() > 40000;
-            }
-        }).subscribe(new Action1<Integer>() {
+        model.delete(new QueryFilter<GameBean>(
+                Condition.or(Condition.lt("size", 20000), Condition.gt("size", 40000))
+        )).subscribe(new Action1<Integer>() {
             @Override
             public void call(Integer count) {
                 showToast("delete items:" + count);
-                queryAll();
             }
         });
     }
@@ -107,16 +119,18 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void call(Boolean result) {
                 showToast("result:" + result);
-                queryAll();
             }
         });
     }
 
-    private void queryAll() {
-        model.queryAll().subscribe(new Action1<List<GameBean>>() {
+    /**
+     * 订阅实时查询，写操作提交后自动刷新列表，不需要在每次写入后重新查询。
+     */
+    private void observeAll() {
+        subscription = model.observe(null).subscribe(new Action1<ChangeSet<GameBean>>() {
             @Override
-            public void call(List<GameBean> data) {
-                MainActivity.this.data = data;
+            public void call(ChangeSet<GameBean> changeSet) {
+                MainActivity.this.data = changeSet.getItems();
                 adapter.notifyDataSetChanged();
             }
         });
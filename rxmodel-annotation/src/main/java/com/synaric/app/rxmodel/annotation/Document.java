@@ -0,0 +1,25 @@
+package com.synaric.app.rxmodel.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记需要存储的对象模型。
+ * 引入rxmodel-compiler注解处理器后，编译期会为被标记的类生成"类名_JsonAdapter"，
+ * 直接读写字段完成Json转换，DbModel会自动使用它代替Gson的反射转换。
+ * 生成的Json与Gson默认的格式一致，已有的数据不需要迁移；字段的TypeAdapter（包括注册的TypeAdapter）从DbModel使用的Gson中获取。
+ * Gson为被标记的类注册了TypeAdapter，配置了字段命名策略、serializeNulls、排除策略或版本，
+ * 或者字段使用了{@code @JsonAdapter}、{@code @SerializedName}的alternate时，DbModel不使用生成的TypeAdapter。
+ * <br/><br/>被标记的类需要满足：
+ * <ul>
+ * <li>不是private、abstract的类，内部类必须是static的，没有泛型参数。</li>
+ * <li>有非private的无参构造器，或者参数名与字段名一一对应的非private构造器。</li>
+ * <li>每个字段（不包括static和transient字段）非private，或者有对应的getter/setter（也可以通过构造器赋值）。</li>
+ * </ul>
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface Document {
+}
@@ -0,0 +1,168 @@
+package com.synaric.app.rxmodel.benchmark;
+
+import com.google.gson.GsonBuilder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基准测试的执行和记录。
+ * 每个基准先执行若干轮预热，再执行若干轮测量，记录每次操作的平均耗时和分配的内存。
+ * JMH无法在Robolectric的类加载器中运行，这里按照JMH的方式（预热、多轮测量、防止死代码消除）实现最小的部分。
+ * 内存分配通过HotSpot的{@code com.sun.management.ThreadMXBean}统计，不支持时记为-1。
+ * 多线程的基准应当复用工作线程，在测量期间结束的线程的分配无法统计。
+ */
+final class Benchmark {
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final List<Result> results = new ArrayList<>();
+
+    /**
+     * 防止基准中的计算被JIT当作死代码消除。
+     */
+    private long sink;
+
+    Benchmark(int warmupIterations, int measurementIterations) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+    }
+
+    /**
+     * 执行一轮基准。
+     */
+    interface Iteration {
+
+        /**
+         * @return 任意结果，用于防止死代码消除。
+         */
+        long run() throws Exception;
+    }
+
+    /**
+     * 测量一个基准。
+     * @param name 基准名称。
+     * @param params 参数，写入结果中用于区分同一个基准的不同配置。
+     * @param operations 每轮执行的操作数，耗时和分配的内存按操作数平均。
+     * @param setup 每轮执行前的准备，不计入测量，可以为null。
+     * @param iteration 一轮基准。
+     */
+    Result measure(String name,
+                   Map<String, Object> params,
+                   int operations,
+                   Iteration setup,
+                   Iteration iteration) throws Exception {
+        double[] nanos = new double[measurementIterations];
+        long bytes = 0;
+        for (int i = 0; i < warmupIterations + measurementIterations; i++) {
+            if (setup != null) sink += setup.run();
+            long allocatedBefore = allocatedBytes();
+            long begin = System.nanoTime();
+            sink += iteration.run();
+            long cost = System.nanoTime() - begin;
+            long allocated = allocatedBytes() - allocatedBefore;
+            if (i < warmupIterations) continue;
+            nanos[i - warmupIterations] = (double) cost / operations;
+            bytes = allocatedBefore < 0 ? -1 : bytes + allocated;
+        }
+
+        Result result = new Result(name, params, operations, nanos,
+                bytes < 0 ? -1 : bytes / ((long) operations * measurementIterations));
+        results.add(result);
+        System.out.println(result);
+        return result;
+    }
+
+    /**
+     * 以Json格式写入所有结果。
+     */
+    void write(File file) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("warmupIterations", warmupIterations);
+        report.put("measurementIterations", measurementIterations);
+        report.put("jvm", System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+        report.put("results", results);
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            new GsonBuilder().setPrettyPrinting().create().toJson(report, writer);
+        } finally {
+            writer.close();
+        }
+        System.out.println("Benchmark results written to " + file + " (sink " + sink + ")");
+    }
+
+    /**
+     * 所有存活线程累计分配的内存，不支持时返回-1。统计所有线程，以便包含多线程基准中工作线程的分配。
+     */
+    static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+        com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        if (!sunBean.isThreadAllocatedMemorySupported() || !sunBean.isThreadAllocatedMemoryEnabled()) return -1;
+        long total = 0;
+        for (long bytes : sunBean.getThreadAllocatedBytes(sunBean.getAllThreadIds())) {
+            if (bytes > 0) total += bytes;
+        }
+        return total;
+    }
+
+    static Map<String, Object> params(Object... keyValues) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            params.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return params;
+    }
+
+    /**
+     * 一个基准的结果。
+     */
+    static final class Result {
+
+        final String benchmark;
+        final Map<String, Object> params;
+        final int operations;
+        final double nsPerOp;
+        final double nsPerOpMin;
+        final double nsPerOpStdDev;
+        final long bytesPerOp;
+
+        Result(String benchmark, Map<String, Object> params, int operations, double[] nanos, long bytesPerOp) {
+            this.benchmark = benchmark;
+            this.params = params;
+            this.operations = operations;
+            double sum = 0;
+            double min = Double.MAX_VALUE;
+            for (double nano : nanos) {
+                sum += nano;
+                min = Math.min(min, nano);
+            }
+            double mean = sum / nanos.length;
+            double variance = 0;
+            for (double nano : nanos) {
+                variance += (nano - mean) * (nano - mean);
+            }
+            this.nsPerOp = mean;
+            this.nsPerOpMin = min;
+            this.nsPerOpStdDev = nanos.length > 1 ? Math.sqrt(variance / (nanos.length - 1)) : 0;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-24s %-40s %12.1f ns/op ± %10.1f %10d B/op",
+                    benchmark, params, nsPerOp, nsPerOpStdDev, bytesPerOp);
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package com.synaric.app.rxmodel.benchmark;
+
+import com.synaric.app.rxmodel.DbModel;
+import com.synaric.app.rxmodel.LockManager;
+import com.synaric.app.rxmodel.RxModel;
+import com.synaric.app.rxmodel.benchmark.Benchmark.Iteration;
+import com.synaric.app.rxmodel.converter.CompactBinaryConverter;
+import com.synaric.app.rxmodel.converter.Converter;
+import com.synaric.app.rxmodel.converter.JsonConverter;
+import com.synaric.app.rxmodel.filter.Condition;
+import com.synaric.app.rxmodel.filter.Filter;
+import com.synaric.app.rxmodel.filter.QueryFilter;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.synaric.app.rxmodel.benchmark.Benchmark.params;
+
+/**
+ * DbModel主要操作的基准：单条与批量写入、不同数据量下的查询、删除、文档模型的转换，以及多线程写入时的锁竞争。
+ * 只在指定-Pbenchmark时运行，参见rxmodel-benchmark/build.gradle。
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class DbModelBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+    private static final int BATCH = 1000;
+
+    private final Benchmark benchmark = new Benchmark(WARMUP_ITERATIONS, MEASUREMENT_ITERATIONS);
+    private RxModel rxModel;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue("Run with -Pbenchmark", Boolean.getBoolean("rxmodel.benchmark"));
+        rxModel = new RxModel.Builder(RuntimeEnvironment.application)
+                .dbName("benchmark")
+                .resultScheduler(null)
+                .build();
+    }
+
+    @Test
+    public void run() throws Exception {
+        insert();
+        for (int rows : intList("rxmodel.benchmark.rows")) {
+            scan(rows);
+        }
+        convert();
+        for (int threads : intList("rxmodel.benchmark.threads")) {
+            contention(threads);
+        }
+        benchmark.write(new File(System.getProperty("rxmodel.benchmark.output", "build/benchmark/results.json")));
+    }
+
+    private void insert() throws Exception {
+        final BeanModel model = new BeanModel(rxModel, "InsertBench");
+        final Iteration clear = new Iteration() {
+            @Override
+            public long run() {
+                return model.syncDeleteAll();
+            }
+        };
+
+        benchmark.measure("insert.single", params("rows", BATCH), BATCH, clear, new Iteration() {
+            @Override
+            public long run() {
+                long saved = 0;
+                for (int i = 0; i < BATCH; i++) {
+                    if (model.syncSave(Bean.create(i))) ++saved;
+                }
+                return saved;
+            }
+        });
+
+        final List<Bean> beans = Bean.createAll(0, BATCH);
+        benchmark.measure("insert.batch", params("rows", BATCH), BATCH, clear, new Iteration() {
+            @Override
+            public long run() {
+                return model.syncSaveAll(beans) ? 1 : 0;
+            }
+        });
+    }
+
+    private void scan(final int rows) throws Exception {
+        final BeanModel model = new BeanModel(rxModel, "ScanBench");
+        model.syncDeleteAll();
+        for (int from = 0; from < rows; from += 10000) {
+            model.syncSaveAll(Bean.createAll(from, Math.min(from + 10000, rows)));
+        }
+        boolean json = rxModel.isJsonSupported();
+        int iterations = rows >= 1000000 ? 1 : rows >= 100000 ? 5 : 50;
+
+        //索引列上的范围查询，只读取满足条件的100条
+        final Filter<Bean> indexed = new QueryFilter<>(Condition.ge("size", rows - 100));
+        benchmark.measure("query.indexed", params("rows", rows), iterations, null, repeat(iterations, new Iteration() {
+            @Override
+            public long run() {
+                return model.syncQuery(indexed).size();
+            }
+        }));
+
+        //非索引字段：支持JSON1时通过json_extract在SQLite中扫描，否则逐条解析
+        final Filter<Bean> unindexed = new QueryFilter<>(Condition.eq("name", "bean" + (rows / 2)));
+        benchmark.measure("query.unindexed", params("rows", rows, "json1", json), iterations, null,
+                repeat(iterations, new Iteration() {
+                    @Override
+                    public long run() {
+                        return model.syncQuery(unindexed).size();
+                    }
+                }));
+
+        //Java层筛选：逐条解析全部文档模型
+        final Filter<Bean> iterative = new Filter<Bean>() {
+            @Override
+            public boolean doIterativeFilter(Bean bean) {
+                return bean.size % 1000 == 0;
+            }
+
+            @Override
+            protected boolean isIterative() {
+                return true;
+            }
+        };
+        benchmark.measure("query.iterative", params("rows", rows), iterations, null, repeat(iterations, new Iteration() {
+            @Override
+            public long run() {
+                return model.syncQuery(iterative).size();
+            }
+        }));
+
+        final Filter<Bean> first = new QueryFilter<>(Condition.gt("size", rows / 2));
+        benchmark.measure("queryFirst", params("rows", rows), iterations, null, repeat(iterations, new Iteration() {
+            @Override
+            public long run() {
+                return model.syncQueryFirst(first).size;
+            }
+        }));
+
+        benchmark.measure("count", params("rows", rows), iterations, null, repeat(iterations, new Iteration() {
+            @Override
+            public long run() {
+                return model.syncCount(null);
+            }
+        }));
+
+        //每轮先插入100条待删除的数据，只测量删除
+        final List<Bean> victims = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            victims.add(new Bean("victim" + i, "victim" + i, -1 - i, false));
+        }
+        final Filter<Bean> negative = new QueryFilter<>(Condition.lt("size", 0));
+        benchmark.measure("delete", params("rows", rows, "deleted", victims.size()), 1, new Iteration() {
+            @Override
+            public long run() {
+                return model.syncSaveAll(victims) ? 1 : 0;
+            }
+        }, new Iteration() {
+            @Override
+            public long run() {
+                return model.syncDelete(negative);
+            }
+        });
+        model.syncDeleteAll();
+    }
+
+    private void convert() throws Exception {
+        final List<Bean> beans = Bean.createAll(0, 10000);
+        List<Converter<Bean>> converters = new ArrayList<>();
+        converters.add(new JsonConverter<Bean>(Bean.class, rxModel.getGson(), null) {
+            @Override
+            public String bindID(Bean bean) {
+                return bean.id;
+            }
+        });
+        converters.add(new CompactBinaryConverter<Bean>(Bean.class) {
+            @Override
+            public String bindID(Bean bean) {
+                return bean.id;
+            }
+        });
+
+        for (final Converter<Bean> converter : converters) {
+            String name = converter.isBinary() ? "binary" : "json";
+            final List<byte[]> documents = new ArrayList<>(beans.size());
+            for (Bean bean : beans) documents.add(converter.convertToBytes(bean));
+
+            benchmark.measure("convert.encode", params("converter", name), beans.size(), null, new Iteration() {
+                @Override
+                public long run() {
+                    long length = 0;
+                    for (Bean bean : beans) length += converter.convertToBytes(bean).length;
+                    return length;
+                }
+            });
+            benchmark.measure("convert.decode", params("converter", name), beans.size(), null, new Iteration() {
+                @Override
+                public long run() {
+                    long sum = 0;
+                    for (byte[] document : documents) sum += converter.convertToObject(document).size;
+                    return sum;
+                }
+            });
+        }
+    }
+
+    /**
+     * 多个线程同时写入同一张表（竞争同一把写锁），以及各自写入不同的表。
+     */
+    private void contention(final int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final int perThread = BATCH / threads;
+            for (final boolean shared : new boolean[]{true, false}) {
+                final List<BeanModel> models = new ArrayList<>(threads);
+                for (int i = 0; i < threads; i++) {
+                    models.add(new BeanModel(rxModel, shared ? "ContentionBench" : "ContentionBench" + i));
+                }
+                Iteration clear = new Iteration() {
+                    @Override
+                    public long run() {
+                        long deleted = 0;
+                        for (BeanModel model : models) deleted += model.syncDeleteAll();
+                        return deleted;
+                    }
+                };
+                benchmark.measure("contention.save", params("threads", threads, "sharedTable", shared),
+                        perThread * threads, clear, parallel(executor, threads, new Task() {
+                            @Override
+                            public long run(int thread) {
+                                BeanModel model = models.get(thread);
+                                long saved = 0;
+                                for (int i = 0; i < perThread; i++) {
+                                    if (model.syncSave(Bean.create(thread * perThread + i))) ++saved;
+                                }
+                                return saved;
+                            }
+                        }));
+            }
+            for (LockManager.Stats stats : rxModel.getLockManager().getAllStats()) {
+                System.out.println(stats);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Iteration repeat(final int times, final Iteration iteration) {
+        return new Iteration() {
+            @Override
+            public long run() throws Exception {
+                long result = 0;
+                for (int i = 0; i < times; i++) result += iteration.run();
+                return result;
+            }
+        };
+    }
+
+    private interface Task {
+
+        long run(int thread) throws Exception;
+    }
+
+    private static Iteration parallel(final ExecutorService executor, final int threads, final Task task) {
+        return new Iteration() {
+            @Override
+            public long run() throws Exception {
+                List<Future<Long>> futures = new ArrayList<>(threads);
+                for (int i = 0; i < threads; i++) {
+                    final int thread = i;
+                    futures.add(executor.submit(new Callable<Long>() {
+                        @Override
+                        public Long call() throws Exception {
+                            return task.run(thread);
+                        }
+                    }));
+                }
+                long result = 0;
+                for (Future<Long> future : futures) result += future.get();
+                return result;
+            }
+        };
+    }
+
+    private static List<Integer> intList(String property) {
+        List<Integer> values = new ArrayList<>();
+        for (String value : System.getProperty(property, "").split(",")) {
+            if (!value.trim().isEmpty()) values.add(Integer.parseInt(value.trim()));
+        }
+        return values;
+    }
+
+    static class BeanModel extends DbModel<Bean> {
+
+        BeanModel(RxModel rxModel, String table) {
+            super(rxModel, Bean.class, table);
+        }
+
+        @Override
+        public String bindID(Bean bean) {
+            return bean.id;
+        }
+
+        @Override
+        public String[] bindIndexes() {
+            return new String[]{"size"};
+        }
+    }
+
+    static class Bean {
+
+        String id;
+        String name;
+        int size;
+        boolean installed;
+
+        /**
+         * CompactBinaryConverter解码时使用。
+         */
+        private Bean() {
+        }
+
+        Bean(String id, String name, int size, boolean installed) {
+            this.id = id;
+            this.name = name;
+            this.size = size;
+            this.installed = installed;
+        }
+
+        static Bean create(int i) {
+            return new Bean("id" + i, "bean" + i, i, i % 2 == 0);
+        }
+
+        static List<Bean> createAll(int from, int to) {
+            List<Bean> beans = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) beans.add(create(i));
+            return beans;
+        }
+    }
+}
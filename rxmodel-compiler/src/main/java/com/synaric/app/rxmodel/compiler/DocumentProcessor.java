@@ -0,0 +1,560 @@
+package com.synaric.app.rxmodel.compiler;
+
+import com.synaric.app.rxmodel.annotation.Document;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+/**
+ * 为{@link Document}标记的类生成Gson的TypeAdapter，类名为"类名_JsonAdapter"（内部类以"_"连接外部类名）。
+ * 生成的代码直接读写字段（或getter/setter、构造器），不使用反射。
+ * 基本类型、包装类型和String直接读写；其余类型的字段（包括同样被标记的类）交给构造时传入的Gson的TypeAdapter，
+ * 这样Gson中注册的TypeAdapter仍然生效，互相引用的类也不会在构造时无限递归。
+ * 输出的Json与Gson默认配置一致：字段名取{@code @SerializedName}或字段名，值为null的字段不输出。
+ */
+@SupportedAnnotationTypes("com.synaric.app.rxmodel.annotation.Document")
+public class DocumentProcessor extends AbstractProcessor {
+
+    static final String SUFFIX = "_JsonAdapter";
+
+    private static final String SERIALIZED_NAME = "com.google.gson.annotations.SerializedName";
+
+    private Elements elements;
+    private Types types;
+    private Messager messager;
+    private Filer filer;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment env) {
+        super.init(env);
+        elements = env.getElementUtils();
+        types = env.getTypeUtils();
+        messager = env.getMessager();
+        filer = env.getFiler();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(Document.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@Document can only be applied to classes.");
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            try {
+                generate(parse(type));
+            } catch (ProcessingException e) {
+                error(e.element, e.getMessage());
+            } catch (IOException e) {
+                error(type, "Unable to generate adapter for " + type.getQualifiedName() + ": " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    private void error(Element element, String message) {
+        messager.printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    // ---------------------------------------------------------------- 解析
+
+    private Model parse(TypeElement type) throws ProcessingException {
+        Set<Modifier> modifiers = type.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.ABSTRACT)) {
+            throw new ProcessingException(type, "@Document class must not be private or abstract.");
+        }
+        if (type.getNestingKind() == NestingKind.MEMBER && !modifiers.contains(Modifier.STATIC)) {
+            throw new ProcessingException(type, "@Document nested class must be static.");
+        }
+        if (type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS) {
+            throw new ProcessingException(type, "@Document class must not be local or anonymous.");
+        }
+        if (!type.getTypeParameters().isEmpty()) {
+            throw new ProcessingException(type, "@Document class must not have type parameters.");
+        }
+
+        Model model = new Model(type, elements.getPackageOf(type).getQualifiedName().toString());
+        Map<String, Property> byJsonName = new HashMap<>();
+        for (TypeElement c = type; c != null; c = superclassOf(c)) {
+            for (VariableElement field : ElementFilter.fieldsIn(c.getEnclosedElements())) {
+                Set<Modifier> fieldModifiers = field.getModifiers();
+                if (fieldModifiers.contains(Modifier.STATIC) || fieldModifiers.contains(Modifier.TRANSIENT)) {
+                    continue;
+                }
+                if (containsTypeVariable(field.asType())) {
+                    throw new ProcessingException(field, "@Document field must not use type variables.");
+                }
+                Property property = new Property(field, jsonNameOf(field), model.properties.size());
+                Property existed = byJsonName.put(property.jsonName, property);
+                if (existed != null) {
+                    throw new ProcessingException(field, "Duplicate json name \"" + property.jsonName + "\" in "
+                            + type.getQualifiedName() + ".");
+                }
+                model.properties.add(property);
+            }
+        }
+
+        for (Property property : model.properties) {
+            property.fieldAccessible = isAccessible(property.field, model.packageName);
+            property.getter = findGetter(type, property, model.packageName);
+            property.setter = findSetter(type, property, model.packageName);
+        }
+        findConstructor(model);
+
+        for (Property property : model.properties) {
+            if (!property.fieldAccessible && property.getter == null) {
+                throw new ProcessingException(property.field, "Field " + property.name()
+                        + " must not be private, or it needs a getter.");
+            }
+            boolean writable = property.inConstructor || property.setter != null
+                    || (property.fieldAccessible && !property.field.getModifiers().contains(Modifier.FINAL));
+            if (!writable) {
+                throw new ProcessingException(property.field, "Field " + property.name()
+                        + " must be non-private and non-final, or it needs a setter or a constructor parameter.");
+            }
+            property.kind = kindOf(property.field.asType());
+        }
+        return model;
+    }
+
+    private TypeElement superclassOf(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) return null;
+        TypeElement element = (TypeElement) ((DeclaredType) superclass).asElement();
+        return element.getQualifiedName().contentEquals("java.lang.Object") ? null : element;
+    }
+
+    private boolean containsTypeVariable(TypeMirror type) {
+        switch (type.getKind()) {
+            case TYPEVAR:
+                return true;
+            case ARRAY:
+                return containsTypeVariable(((javax.lang.model.type.ArrayType) type).getComponentType());
+            case DECLARED:
+                for (TypeMirror argument : ((DeclaredType) type).getTypeArguments()) {
+                    if (containsTypeVariable(argument)) return true;
+                }
+                return false;
+            case WILDCARD:
+                javax.lang.model.type.WildcardType wildcard = (javax.lang.model.type.WildcardType) type;
+                return (wildcard.getExtendsBound() != null && containsTypeVariable(wildcard.getExtendsBound()))
+                        || (wildcard.getSuperBound() != null && containsTypeVariable(wildcard.getSuperBound()));
+            default:
+                return false;
+        }
+    }
+
+    private String jsonNameOf(VariableElement field) {
+        for (AnnotationMirror mirror : field.getAnnotationMirrors()) {
+            TypeElement annotation = (TypeElement) mirror.getAnnotationType().asElement();
+            if (!annotation.getQualifiedName().contentEquals(SERIALIZED_NAME)) continue;
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                    : mirror.getElementValues().entrySet()) {
+                if (entry.getKey().getSimpleName().contentEquals("value")) {
+                    return String.valueOf(entry.getValue().getValue());
+                }
+            }
+        }
+        return field.getSimpleName().toString();
+    }
+
+    /**
+     * 生成的类与对象模型在同一个包中：public成员，或者同一个包中非private的成员可以访问。
+     */
+    private boolean isAccessible(Element member, String packageName) {
+        Set<Modifier> modifiers = member.getModifiers();
+        if (modifiers.contains(Modifier.PUBLIC)) return true;
+        if (modifiers.contains(Modifier.PRIVATE)) return false;
+        PackageElement memberPackage = elements.getPackageOf(member);
+        return memberPackage.getQualifiedName().contentEquals(packageName);
+    }
+
+    private String findGetter(TypeElement type, Property property, String packageName) {
+        String suffix = capitalize(property.name());
+        boolean isBoolean = property.field.asType().getKind() == TypeKind.BOOLEAN;
+        for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(type))) {
+            String name = method.getSimpleName().toString();
+            if (!name.equals("get" + suffix) && !(isBoolean && name.equals("is" + suffix))) continue;
+            if (!method.getParameters().isEmpty() || method.getModifiers().contains(Modifier.STATIC)) continue;
+            if (!types.isSameType(method.getReturnType(), property.field.asType())) continue;
+            if (isAccessible(method, packageName)) return name;
+        }
+        return null;
+    }
+
+    private String findSetter(TypeElement type, Property property, String packageName) {
+        String name = "set" + capitalize(property.name());
+        for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(type))) {
+            if (!method.getSimpleName().contentEquals(name)) continue;
+            if (method.getParameters().size() != 1 || method.getModifiers().contains(Modifier.STATIC)) continue;
+            if (!types.isSameType(method.getParameters().get(0).asType(), property.field.asType())) continue;
+            if (isAccessible(method, packageName)) return name;
+        }
+        return null;
+    }
+
+    /**
+     * 优先使用无参构造器；否则使用参数最多、且每个参数都能按名称和类型对应到字段的构造器。
+     */
+    private void findConstructor(Model model) throws ProcessingException {
+        Map<String, Property> byName = new HashMap<>();
+        for (Property property : model.properties) {
+            byName.put(property.name(), property);
+        }
+
+        List<Property> best = null;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(model.type.getEnclosedElements())) {
+            if (!isAccessible(constructor, model.packageName)) continue;
+            List<Property> params = new ArrayList<>();
+            for (VariableElement param : constructor.getParameters()) {
+                Property property = byName.get(param.getSimpleName().toString());
+                if (property == null || !types.isSameType(param.asType(), property.field.asType())
+                        || params.contains(property)) {
+                    params = null;
+                    break;
+                }
+                params.add(property);
+            }
+            if (params == null) continue;
+            if (params.isEmpty()) {
+                best = params;
+                break;
+            }
+            if (best == null || params.size() > best.size()) best = params;
+        }
+        if (best == null) {
+            throw new ProcessingException(model.type, "@Document class needs a non-private no-args constructor, "
+                    + "or a constructor whose parameters are named after its fields.");
+        }
+        model.constructorParams = best;
+        for (Property property : best) {
+            property.inConstructor = true;
+        }
+    }
+
+    private Kind kindOf(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN: return Kind.BOOLEAN;
+            case BYTE: return Kind.BYTE;
+            case SHORT: return Kind.SHORT;
+            case CHAR: return Kind.CHAR;
+            case INT: return Kind.INT;
+            case LONG: return Kind.LONG;
+            case FLOAT: return Kind.FLOAT;
+            case DOUBLE: return Kind.DOUBLE;
+            case DECLARED:
+                String name = ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+                if (name.equals("java.lang.String")) return Kind.STRING;
+                try {
+                    Kind unboxed = kindOf(types.unboxedType(type));
+                    return Kind.valueOf("BOXED_" + unboxed.name());
+                } catch (IllegalArgumentException e) {
+                    //不是包装类型
+                }
+                return Kind.ADAPTER;
+            default:
+                return Kind.ADAPTER;
+        }
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    // ---------------------------------------------------------------- 生成
+
+    static String adapterSimpleName(TypeElement type) {
+        StringBuilder name = new StringBuilder(type.getSimpleName());
+        for (Element e = type.getEnclosingElement(); e.getKind() != ElementKind.PACKAGE; e = e.getEnclosingElement()) {
+            name.insert(0, e.getSimpleName() + "_");
+        }
+        return name.append(SUFFIX).toString();
+    }
+
+    private void generate(Model model) throws IOException {
+        String simpleName = adapterSimpleName(model.type);
+        String modelName = model.type.getQualifiedName().toString();
+        StringBuilder s = new StringBuilder();
+
+        s.append("// 由rxmodel-compiler生成，请勿修改。\n");
+        if (!model.packageName.isEmpty()) s.append("package ").append(model.packageName).append(";\n\n");
+        s.append("import com.google.gson.Gson;\n")
+                .append("import com.google.gson.TypeAdapter;\n")
+                .append("import com.google.gson.reflect.TypeToken;\n")
+                .append("import com.google.gson.stream.JsonReader;\n")
+                .append("import com.google.gson.stream.JsonToken;\n")
+                .append("import com.google.gson.stream.JsonWriter;\n\n")
+                .append("import java.io.IOException;\n\n");
+        s.append("public final class ").append(simpleName).append(" extends TypeAdapter<").append(modelName)
+                .append("> {\n\n");
+
+        //其余类型的字段使用的TypeAdapter
+        Map<Property, String> adapters = new LinkedHashMap<>();
+        for (Property property : model.properties) {
+            if (property.kind != Kind.ADAPTER) continue;
+            adapters.put(property, "adapter" + property.index);
+        }
+        for (Map.Entry<Property, String> entry : adapters.entrySet()) {
+            s.append("    private final TypeAdapter<").append(typeName(entry.getKey().field.asType()))
+                    .append("> ").append(entry.getValue()).append(";\n");
+        }
+        if (!adapters.isEmpty()) s.append("\n");
+        s.append("    public ").append(simpleName).append("() {\n")
+                .append("        this(new Gson());\n")
+                .append("    }\n\n");
+        s.append("    public ").append(simpleName).append("(Gson gson) {\n");
+        for (Map.Entry<Property, String> entry : adapters.entrySet()) {
+            TypeMirror type = entry.getKey().field.asType();
+            s.append("        ").append(entry.getValue()).append(" = ");
+            if (type.getKind() == TypeKind.DECLARED && !((DeclaredType) type).getTypeArguments().isEmpty()) {
+                s.append("gson.getAdapter(new TypeToken<").append(type).append(">() {});\n");
+            } else {
+                s.append("gson.getAdapter(").append(types.erasure(type)).append(".class);\n");
+            }
+        }
+        s.append("    }\n\n");
+
+        //write
+        s.append("    @Override\n")
+                .append("    public void write(JsonWriter out, ").append(modelName).append(" value) throws IOException {\n")
+                .append("        if (value == null) {\n")
+                .append("            out.nullValue();\n")
+                .append("            return;\n")
+                .append("        }\n")
+                .append("        out.beginObject();\n");
+        for (Property property : model.properties) {
+            String get = property.fieldAccessible ? "value." + property.name() : "value." + property.getter + "()";
+            String name = "out.name(\"" + escape(property.jsonName) + "\");";
+            if (property.kind.primitive) {
+                s.append("        ").append(name).append("\n");
+                s.append("        ").append(writeValue(property.kind, get)).append("\n");
+                continue;
+            }
+            String local = "p" + property.index;
+            s.append("        ").append(typeName(property.field.asType())).append(" ").append(local).append(" = ")
+                    .append(get).append(";\n");
+            s.append("        if (").append(local).append(" != null) {\n");
+            s.append("            ").append(name).append("\n");
+            if (property.kind == Kind.ADAPTER) {
+                s.append("            ").append(adapters.get(property)).append(".write(out, ").append(local)
+                        .append(");\n");
+            } else {
+                s.append("            ").append(writeValue(property.kind, local)).append("\n");
+            }
+            s.append("        }\n");
+        }
+        s.append("        out.endObject();\n")
+                .append("    }\n\n");
+
+        //read
+        s.append("    @Override\n")
+                .append("    public ").append(modelName).append(" read(JsonReader in) throws IOException {\n")
+                .append("        if (in.peek() == JsonToken.NULL) {\n")
+                .append("            in.nextNull();\n")
+                .append("            return null;\n")
+                .append("        }\n");
+        for (Property property : model.properties) {
+            s.append("        ").append(typeName(property.field.asType())).append(" p").append(property.index)
+                    .append(" = ").append(property.kind.defaultValue).append(";\n");
+            if (!property.inConstructor) {
+                s.append("        boolean has").append(property.index).append(" = false;\n");
+            }
+        }
+        s.append("        in.beginObject();\n")
+                .append("        while (in.hasNext()) {\n")
+                .append("            switch (in.nextName()) {\n");
+        for (Property property : model.properties) {
+            String local = "p" + property.index;
+            String has = property.inConstructor ? "" : " has" + property.index + " = true;";
+            s.append("                case \"").append(escape(property.jsonName)).append("\":\n");
+            if (property.kind == Kind.ADAPTER) {
+                s.append("                    ").append(local).append(" = ").append(adapters.get(property))
+                        .append(".read(in);").append(has).append("\n");
+            } else {
+                s.append("                    if (in.peek() == JsonToken.NULL) {\n")
+                        .append("                        in.nextNull();\n");
+                if (!property.kind.primitive) {
+                    s.append("                        ").append(local).append(" = null;").append(has).append("\n");
+                }
+                s.append("                    } else {\n")
+                        .append("                        ").append(local).append(" = ").append(property.kind.read)
+                        .append(";").append(has).append("\n")
+                        .append("                    }\n");
+            }
+            s.append("                    break;\n");
+        }
+        s.append("                default:\n")
+                .append("                    in.skipValue();\n")
+                .append("                    break;\n")
+                .append("            }\n")
+                .append("        }\n")
+                .append("        in.endObject();\n");
+        s.append("        ").append(modelName).append(" value = new ").append(modelName).append("(");
+        for (int i = 0; i < model.constructorParams.size(); i++) {
+            if (i > 0) s.append(", ");
+            s.append("p").append(model.constructorParams.get(i).index);
+        }
+        s.append(");\n");
+        for (Property property : model.properties) {
+            if (property.inConstructor) continue;
+            String local = "p" + property.index;
+            s.append("        if (has").append(property.index).append(") ");
+            boolean direct = property.fieldAccessible && !property.field.getModifiers().contains(Modifier.FINAL);
+            if (direct) {
+                s.append("value.").append(property.name()).append(" = ").append(local).append(";\n");
+            } else {
+                s.append("value.").append(property.setter).append("(").append(local).append(");\n");
+            }
+        }
+        s.append("        return value;\n")
+                .append("    }\n")
+                .append("}\n");
+
+        String qualifiedName = model.packageName.isEmpty() ? simpleName : model.packageName + "." + simpleName;
+        Writer writer = filer.createSourceFile(qualifiedName, model.type).openWriter();
+        try {
+            writer.write(s.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * 字段类型同样被{@link Document}标记时，返回生成的TypeAdapter的类名。
+     */
+    private String typeName(TypeMirror type) {
+        return type.toString();
+    }
+
+    private static String writeValue(Kind kind, String value) {
+        switch (kind) {
+            case CHAR:
+            case BOXED_CHAR:
+                return "out.value(String.valueOf(" + value + "));";
+            case FLOAT:
+                return "out.value(Float.valueOf(" + value + "));";
+            default:
+                return "out.value(" + value + ");";
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private enum Kind {
+
+        BOOLEAN(true, "false", "in.nextBoolean()"),
+        BYTE(true, "0", "(byte) in.nextInt()"),
+        SHORT(true, "0", "(short) in.nextInt()"),
+        CHAR(true, "'\\0'", "in.nextString().charAt(0)"),
+        INT(true, "0", "in.nextInt()"),
+        LONG(true, "0L", "in.nextLong()"),
+        FLOAT(true, "0f", "(float) in.nextDouble()"),
+        DOUBLE(true, "0d", "in.nextDouble()"),
+        BOXED_BOOLEAN(false, "null", BOOLEAN.read),
+        BOXED_BYTE(false, "null", BYTE.read),
+        BOXED_SHORT(false, "null", SHORT.read),
+        BOXED_CHAR(false, "null", CHAR.read),
+        BOXED_INT(false, "null", INT.read),
+        BOXED_LONG(false, "null", LONG.read),
+        BOXED_FLOAT(false, "null", FLOAT.read),
+        BOXED_DOUBLE(false, "null", DOUBLE.read),
+        STRING(false, "null",
+                "in.peek() == JsonToken.BOOLEAN ? Boolean.toString(in.nextBoolean()) : in.nextString()"),
+        ADAPTER(false, "null", null);
+
+        final boolean primitive;
+        final String defaultValue;
+        final String read;
+
+        Kind(boolean primitive, String defaultValue, String read) {
+            this.primitive = primitive;
+            this.defaultValue = defaultValue;
+            this.read = read;
+        }
+    }
+
+    private static final class Model {
+
+        final TypeElement type;
+        final String packageName;
+        final List<Property> properties = new ArrayList<>();
+        List<Property> constructorParams;
+
+        Model(TypeElement type, String packageName) {
+            this.type = type;
+            this.packageName = packageName;
+        }
+    }
+
+    private static final class Property {
+
+        final VariableElement field;
+        final String jsonName;
+        final int index;
+        Kind kind;
+        boolean fieldAccessible;
+        boolean inConstructor;
+        String getter;
+        String setter;
+
+        Property(VariableElement field, String jsonName, int index) {
+            this.field = field;
+            this.jsonName = jsonName;
+            this.index = index;
+        }
+
+        String name() {
+            return field.getSimpleName().toString();
+        }
+    }
+
+    private static final class ProcessingException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        final Element element;
+
+        ProcessingException(Element element, String message) {
+            super(message);
+            this.element = element;
+        }
+    }
+}
@@ -0,0 +1,6 @@
+# rxmodel-compiler生成的TypeAdapter通过类名查找，构造器通过反射调用
+-keepnames class **_JsonAdapter
+-keep class **_JsonAdapter {
+    public <init>();
+    public <init>(com.google.gson.Gson);
+}
@@ -0,0 +1,98 @@
+package com.synaric.app.rxmodel;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.synaric.app.rxmodel.converter.Converter;
+import com.synaric.app.rxmodel.converter.JsonConverter;
+import com.synaric.app.rxmodel.utils.SqlUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 单条保存的耗时对比：拼接SQL字符串后execSQL（原实现） vs 缓存的预编译语句绑定参数（{@link DbModel#syncSave(Object)}）。
+ * 结果输出到logcat，tag为"SaveBenchmark"。
+ */
+@RunWith(AndroidJUnit4.class)
+public class SaveBenchmark {
+
+    private static final String TAG = "SaveBenchmark";
+    private static final int WARMUP = 200;
+    private static final int COUNT = 2000;
+
+    private RxModel rxModel;
+    private DbModel<Bean> model;
+    private Converter<Bean> converter;
+
+    @Before
+    public void setUp() throws Exception {
+        InstrumentationRegistry.getTargetContext().deleteDatabase("save_benchmark");
+        rxModel = new RxModel.Builder(InstrumentationRegistry.getTargetContext())
+                .dbName("save_benchmark")
+                .build();
+        model = new DbModel<Bean>(rxModel) {
+            @Override
+            public String bindID(Bean bean) {
+                return bean.id;
+            }
+        };
+        converter = new JsonConverter<Bean>(Bean.class) {
+            @Override
+            public String bindID(Bean bean) {
+                return bean.id;
+            }
+        };
+    }
+
+    @Test
+    public void saveLatency() throws Exception {
+        SQLiteDatabase db = rxModel.getDataBase();
+        for (int i = 0; i < WARMUP; i++) {
+            saveLiteral(db, new Bean("w" + i, i));
+            model.syncSave(new Bean("w" + i, i));
+        }
+
+        long begin = System.nanoTime();
+        for (int i = 0; i < COUNT; i++) {
+            saveLiteral(db, new Bean("l" + i, i));
+        }
+        long literal = (System.nanoTime() - begin) / COUNT;
+
+        begin = System.nanoTime();
+        for (int i = 0; i < COUNT; i++) {
+            assertTrue(model.syncSave(new Bean("c" + i, i)));
+        }
+        long cached = (System.nanoTime() - begin) / COUNT;
+
+        Log.i(TAG, "literal execSQL: " + literal + " ns/save, cached statement: " + cached + " ns/save");
+    }
+
+    private void saveLiteral(SQLiteDatabase db, Bean bean) {
+        db.beginTransaction();
+        try {
+            db.execSQL(SqlUtils.ofInsert(SqlUtils.Operations.INSERT_OR_REPLACE, "Bean", converter, bean));
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    static class Bean {
+
+        String id;
+        String name;
+        int size;
+
+        Bean(String id, int size) {
+            this.id = id;
+            this.name = "bean" + size;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.synaric.app.rxmodel;
+
+import com.synaric.app.rxmodel.filter.Condition;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 聚合查询的类型。
+ * 能在SQL中执行时，使用{@link #sql}对子查询的结果列v聚合；否则在Java层通过{@link Accumulator}逐条累加，
+ * 结果与SQLite的聚合函数保持一致：忽略null，求和的结果为小数，比较大小遵循SQLite的规则。
+ */
+enum Aggregate {
+
+    COUNT("count(*)"),
+    SUM("total(v)"),
+    AVG("avg(v)"),
+    MIN("min(v)"),
+    MAX("max(v)"),
+    GROUP(null);
+
+    /**
+     * 聚合表达式，分组统计时为null。
+     */
+    final String sql;
+
+    Aggregate(String sql) {
+        this.sql = sql;
+    }
+
+    Accumulator newAccumulator() {
+        return new Accumulator(this);
+    }
+
+    private static final Comparator<Object> SQLITE_ORDER = new Comparator<Object>() {
+        @Override
+        public int compare(Object a, Object b) {
+            return Condition.compareValues(a, b);
+        }
+    };
+
+    /**
+     * 在Java层逐条累加，不保存数据本身。
+     */
+    static final class Accumulator {
+
+        private final Aggregate aggregate;
+        private long count;
+        private double sum;
+        private long numbers;
+        private Object extreme;
+        private Map<Object, Long> groups;
+
+        private Accumulator(Aggregate aggregate) {
+            this.aggregate = aggregate;
+            if (aggregate == GROUP) groups = new TreeMap<>(SQLITE_ORDER);
+        }
+
+        void add(Object value) {
+            switch (aggregate) {
+                case COUNT:
+                    ++count;
+                    break;
+                case SUM:
+                case AVG:
+                    if (value instanceof Number) {
+                        sum += ((Number) value).doubleValue();
+                        ++numbers;
+                    }
+                    break;
+                case MIN:
+                    if (value != null && (extreme == null || Condition.compareValues(value, extreme) < 0)) {
+                        extreme = value;
+                    }
+                    break;
+                case MAX:
+                    if (value != null && (extreme == null || Condition.compareValues(value, extreme) > 0)) {
+                        extreme = value;
+                    }
+                    break;
+                case GROUP:
+                    Long existed = groups.get(value);
+                    groups.put(value, existed == null ? 1L : existed + 1);
+                    break;
+            }
+        }
+
+        Object result() {
+            switch (aggregate) {
+                case COUNT:
+                    return count;
+                case SUM:
+                    return sum;
+                case AVG:
+                    return numbers == 0 ? null : sum / numbers;
+                case GROUP:
+                    return groups;
+                default:
+                    return extreme;
+            }
+        }
+    }
+}
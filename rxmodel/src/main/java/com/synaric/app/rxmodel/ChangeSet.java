@@ -0,0 +1,60 @@
+package com.synaric.app.rxmodel;
+
+import java.util.List;
+
+/**
+ * 实时查询的一次变化，参见{@link DbModel#observe(com.synaric.app.rxmodel.filter.Filter)}。
+ * 与上一次结果相比，新增、修改和移除的数据以_id列出；第一次发送时所有数据都视为新增。
+ */
+public final class ChangeSet<T> {
+
+    private final List<T> items;
+    private final List<String> inserted;
+    private final List<String> updated;
+    private final List<String> removed;
+
+    ChangeSet(List<T> items, List<String> inserted, List<String> updated, List<String> removed) {
+        this.items = items;
+        this.inserted = inserted;
+        this.updated = updated;
+        this.removed = removed;
+    }
+
+    /**
+     * 当前满足条件的所有数据，顺序与{@link DbModel#query(com.synaric.app.rxmodel.filter.Filter)}一致。
+     * 没有变化的数据复用上一次的对象，不会重新解析。
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * 新满足条件的数据的_id。
+     */
+    public List<String> getInsertedIds() {
+        return inserted;
+    }
+
+    /**
+     * 仍然满足条件、但文档模型发生变化的数据的_id。
+     */
+    public List<String> getUpdatedIds() {
+        return updated;
+    }
+
+    /**
+     * 不再满足条件（或者已被删除）的数据的_id。
+     */
+    public List<String> getRemovedIds() {
+        return removed;
+    }
+
+    public boolean isEmpty() {
+        return inserted.isEmpty() && updated.isEmpty() && removed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeSet{inserted=" + inserted + ", updated=" + updated + ", removed=" + removed + "}";
+    }
+}
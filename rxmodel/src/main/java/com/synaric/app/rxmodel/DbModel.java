@@ -1,26 +1,45 @@
 package com.synaric.app.rxmodel;
 
 import android.database.Cursor;
+import android.database.CursorWrapper;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteStatement;
 import android.text.TextUtils;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.synaric.app.rxmodel.converter.CompactBinaryConverter;
 import com.synaric.app.rxmodel.converter.Converter;
 import com.synaric.app.rxmodel.converter.JsonConverter;
-import com.synaric.app.rxmodel.filter.EmptyFilter;
+import com.synaric.app.rxmodel.filter.Condition;
+import com.synaric.app.rxmodel.filter.FieldMapper;
 import com.synaric.app.rxmodel.filter.Filter;
+import com.synaric.app.rxmodel.filter.SqlQuery;
+import com.synaric.app.rxmodel.utils.CursorOnSubscribe;
+import com.synaric.app.rxmodel.utils.JsonFieldResolver;
+import com.synaric.app.rxmodel.utils.JsonProjection;
+import com.synaric.app.rxmodel.utils.ParallelDecoder;
 import com.synaric.app.rxmodel.utils.ReflectUtils;
+import com.synaric.app.rxmodel.utils.StatementCache;
 import com.synaric.app.rxmodel.utils.RxUtils;
 import com.synaric.app.rxmodel.utils.SqlUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.TimeUnit;
 
 import rx.Observable;
+import rx.functions.Func0;
 import rx.functions.Func1;
 
 /**
@@ -30,25 +49,99 @@ import rx.functions.Func1;
 @SuppressWarnings("unused")
 public abstract class DbModel<T> {
 
+    /**
+     * {@link #observe(Filter)}合并连续写入的默认时间窗口，单位毫秒。
+     */
+    public static final long DEFAULT_OBSERVE_DEBOUNCE_MILLIS = 100;
+
     private RxModel rxModel;
     private String tableName;
     private Converter<T> converter;
-    private ReadWriteLock lock;
-    private final Class<T> clz;
+    private LockManager.TableLock lock;
+    private Class<T> clz;
+
+    /**
+     * 索引字段 -> 索引列。
+     */
+    private final Map<String, String> indexColumns = new LinkedHashMap<>();
+
+    /**
+     * 插入文档模型时写入的列：_id、value和所有索引列。
+     */
+    private String[] insertColumns;
+
+    /**
+     * 写入操作使用的预编译语句，借出后只被一个线程使用，{@link RxModel#close()}时关闭。
+     */
+    private final StatementCache statements = new StatementCache(8);
+
+    /**
+     * 插入操作（{@link SqlUtils.Operations}） -> 插入语句。
+     */
+    private final Map<String, String> insertSql = new HashMap<>();
+
+    /**
+     * 对象模型缓存，未开启时为null。
+     */
+    private volatile ModelCache<T> cache;
+
+    /**
+     * 将筛选条件中的字段映射为SQL表达式。索引字段直接映射为索引列；
+     * 其余字段在SQLite支持JSON1扩展时，按Json名称通过json_extract从文档模型中提取。
+     */
+    private final FieldMapper fieldMapper = new FieldMapper() {
+        @Override
+        public String map(String field) {
+            String column = indexColumns.get(field);
+            if(column != null) return column;
+            if(!rxModel.isJsonSupported() || converter.isBinary()) return null;
+            return SqlUtils.createJsonExtract(jsonFields.resolve(field));
+        }
+    };
+
+    /**
+     * 字段路径（Java字段名） -> 文档模型中的Json名称。
+     */
+    private JsonFieldResolver jsonFields;
 
     @SuppressWarnings("unchecked")
     public DbModel(RxModel rxModel, String table) {
+        init(rxModel, (Class<T>) ReflectUtils.getActualClass(this.getClass(), 0), table);
+    }
+
+    /**
+     * @param clz 对象模型的类型。明确指定时不需要通过反射获取泛型参数。
+     * @param table 表名，为空时使用类名。
+     */
+    public DbModel(RxModel rxModel, Class<T> clz, String table) {
+        init(rxModel, clz, table);
+    }
+
+    private void init(RxModel rxModel, Class<T> clz, String table) {
         this.rxModel = rxModel;
-        clz = (Class<T>) ReflectUtils.getActualClass(this.getClass(), 0);
+        this.clz = clz;
         tableName = TextUtils.isEmpty(table) ? clz.getSimpleName() : table;
-        converter = new JsonConverter<T>(clz) {
-            @Override
-            public String bindID(T t) {
-                return DbModel.this.bindID(t);
-            }
-        };
+        converter = bindConverter(clz);
+        jsonFields = new JsonFieldResolver(clz, rxModel.getGson());
 
-        lock = rxModel.getGlobalLock();
+        lock = rxModel.getLockManager().getLock(tableName);
+        rxModel.registerStatementCache(statements);
+        String[] indexes = bindIndexes();
+        if(indexes != null) {
+            for (String field : indexes) {
+                Condition.checkField(field);
+                indexColumns.put(field, SqlUtils.createIndexColumnName(field));
+            }
+        }
+        insertColumns = new String[indexColumns.size() + 2];
+        insertColumns[0] = "_id";
+        insertColumns[1] = "value";
+        int i = 2;
+        for (String column : indexColumns.values()) insertColumns[i++] = column;
+        for (String operation : new String[]{SqlUtils.Operations.INSERT,
+                SqlUtils.Operations.INSERT_OR_REPLACE, SqlUtils.Operations.INSERT_OR_IGNORE}) {
+            insertSql.put(operation, SqlUtils.ofBlankInsert(operation, tableName, insertColumns));
+        }
         createTableIfNotExists(tableName);
     }
 
@@ -64,6 +157,34 @@ public abstract class DbModel<T> {
      */
     public abstract String bindID(T t);
 
+    /**
+     * 确定对象模型-文档模型转换器。默认使用{@link JsonConverter}和{@link RxModel#getGson()}，文档模型以Json格式存储；
+     * 对象模型被{@code @Document}标记并引入了rxmodel-compiler时，使用生成的TypeAdapter读写Json（Gson配置了字段命名策略或serializeNulls时除外）。
+     * 返回{@link CompactBinaryConverter}等二进制转换器时，文档模型以BLOB存储，未建立索引的字段不再通过json_extract在SQL中筛选。
+     * 已有数据的表不应更换转换器。
+     * @param clz 对象模型的类型。
+     * @return 转换器，其bindID应与{@link #bindID(Object)}一致。
+     */
+    public Converter<T> bindConverter(Class<T> clz) {
+        return new JsonConverter<T>(clz, rxModel.getGson(), JsonConverter.findGeneratedAdapter(clz, rxModel.getGson())) {
+            @Override
+            public String bindID(T t) {
+                return DbModel.this.bindID(t);
+            }
+        };
+    }
+
+    /**
+     * 声明需要建立索引的字段。每个索引字段在表中对应一个索引列，写入文档模型时同步更新，
+     * 通过{@link Filter#where}筛选或排序这些字段时，SQLite可以使用索引查找，而不是全表扫描。
+     * 已有数据的表新增索引字段时，会在创建表时回填索引列。
+     * 默认没有索引字段。
+     * @return 字段路径，嵌套字段以"."分隔。
+     */
+    public String[] bindIndexes() {
+        return null;
+    }
+
     /**
      * 插入一个对象模型。一类对象模型对应一个表，表名为类名，因此包名不同但类名相同的对象模型将会插入到同一个表中。
      * 如果对象模型对应的表没有创建，将会首先创建表，再插入数据。
@@ -72,12 +193,8 @@ public abstract class DbModel<T> {
      * @return 插入结果。
      */
     public Observable<Boolean> insert(final T t) {
-        return RxUtils.makeModelObservable(new Callable<Boolean>() {
-            @Override
-            public Boolean call() throws Exception {
-                return insertInternal(t, SqlUtils.Operations.INSERT);
-            }
-        });
+        return makeWriteObservable(Metrics.Operation.INSERT, null, Collections.singletonList(t), false,
+                insertTask(t, SqlUtils.Operations.INSERT));
     }
 
     /**
@@ -89,12 +206,8 @@ public abstract class DbModel<T> {
      * @return 插入结果。
      */
     public Observable<Boolean> save(final T t) {
-        return RxUtils.makeModelObservable(new Callable<Boolean>() {
-            @Override
-            public Boolean call() throws Exception {
-                return insertInternal(t, SqlUtils.Operations.INSERT_OR_REPLACE);
-            }
-        });
+        return makeWriteObservable(Metrics.Operation.SAVE, coalesceKey(t), Collections.singletonList(t), false,
+                insertTask(t, SqlUtils.Operations.INSERT_OR_REPLACE));
     }
 
     /**
@@ -116,12 +229,8 @@ public abstract class DbModel<T> {
      * @return 插入结果。
      */
     public Observable<Boolean> insertAll(final Collection<? extends T> collection) {
-        return RxUtils.makeModelObservable(new Callable<Boolean>() {
-            @Override
-            public Boolean call() throws Exception {
-                return insertAllInternal(collection, SqlUtils.Operations.INSERT);
-            }
-        });
+        return makeWriteObservable(Metrics.Operation.INSERT, null, collection, false,
+                insertAllTask(collection, SqlUtils.Operations.INSERT));
     }
 
     /**
@@ -133,12 +242,8 @@ public abstract class DbModel<T> {
      * @return 插入结果。
      */
     public Observable<Boolean> saveAll(final Collection<? extends T> collection) {
-        return RxUtils.makeModelObservable(new Callable<Boolean>() {
-            @Override
-            public Boolean call() throws Exception {
-                return insertAllInternal(collection, SqlUtils.Operations.INSERT_OR_REPLACE);
-            }
-        });
+        return makeWriteObservable(Metrics.Operation.SAVE, null, collection, false,
+                insertAllTask(collection, SqlUtils.Operations.INSERT_OR_REPLACE));
     }
 
     /**
@@ -154,28 +259,102 @@ public abstract class DbModel<T> {
     }
 
     /**
-     * 更新一个对象模型。
+     * 更新一个对象模型。查询和写入在同一个写事务中完成，并发的更新不会互相覆盖。
      * @param onUpdate 更新回调，可以在回调中更新对象并返回。如果filter的筛选结果为空集，则
-     * {@link OnUpdate#update(Object)}中的传入值为null。
+     * {@link OnUpdate#update(Object)}中的传入值为null。返回null时不写入。
+     * @return 是否写入。
      */
     public Observable<Boolean> updateFirst(final OnUpdate<T> onUpdate, final Filter<T> filter) {
-        return queryFirst(filter)
-        .map(new Func1<T, Boolean>() {
-            @Override
-            public Boolean call(T t) {
-                t = onUpdate.update(t);
-                return syncSave(t);
-            }
-        });
+        List<T> written = new ArrayList<>();
+        return makeWriteObservable(Metrics.Operation.UPDATE, null, written, false, updateFirstTask(filter, onUpdate, written));
+    }
+
+    /**
+     * 原子地更新第一条满足条件的数据：在同一个写事务中读取、回调并写回，并发的更新不会互相覆盖。
+     * 与{@link #updateFirst(OnUpdate, Filter)}不同，没有满足条件的数据时不会回调。
+     * @param filter 筛选器，为null时更新第一条数据。
+     * @param onUpdate 更新回调，返回更新后的对象；返回null时不写回这条数据。回调在写事务中执行，不应包含耗时操作。
+     * @return 写回的文档数。
+     */
+    public Observable<Integer> update(Filter<T> filter, OnUpdate<T> onUpdate) {
+        List<T> written = new ArrayList<>();
+        return makeWriteObservable(Metrics.Operation.UPDATE, null, written, 0, updateTask(filter, onUpdate, false, written));
+    }
+
+    /**
+     * 同步原子地更新第一条满足条件的数据。
+     * @see #update(Filter, OnUpdate)
+     */
+    public int syncUpdate(Filter<T> filter, OnUpdate<T> onUpdate) {
+        List<T> written = new ArrayList<>();
+        return doWrite(Metrics.Operation.UPDATE, null, written, 0, updateTask(filter, onUpdate, false, written));
+    }
+
+    /**
+     * 原子地更新所有满足条件的数据：在同一个写事务中读取、逐条回调，并通过同一条预编译语句批量写回。
+     * @param filter 筛选器，为null时更新所有数据。
+     * @param onUpdate 更新回调，返回更新后的对象；返回null时不写回这条数据。回调在写事务中执行，不应包含耗时操作。
+     * @return 写回的文档数。
+     */
+    public Observable<Integer> updateAll(Filter<T> filter, OnUpdate<T> onUpdate) {
+        List<T> written = new ArrayList<>();
+        return makeWriteObservable(Metrics.Operation.UPDATE, null, written, 0, updateTask(filter, onUpdate, true, written));
+    }
+
+    /**
+     * 同步原子地更新所有满足条件的数据。
+     * @see #updateAll(Filter, OnUpdate)
+     */
+    public int syncUpdateAll(Filter<T> filter, OnUpdate<T> onUpdate) {
+        List<T> written = new ArrayList<>();
+        return doWrite(Metrics.Operation.UPDATE, null, written, 0, updateTask(filter, onUpdate, true, written));
+    }
+
+    /**
+     * 按字段修改第一条满足条件的数据，参见{@link #updateAll(Filter, Map)}。
+     */
+    public Observable<Integer> update(Filter<T> filter, Map<String, ?> patch) {
+        return makeWriteObservable(Metrics.Operation.UPDATE, null, null, 0, patchTask(filter, patch, false));
+    }
+
+    /**
+     * 同步按字段修改第一条满足条件的数据。
+     * @see #updateAll(Filter, Map)
+     */
+    public int syncUpdate(Filter<T> filter, Map<String, ?> patch) {
+        return doWrite(Metrics.Operation.UPDATE, null, null, 0, patchTask(filter, patch, false));
+    }
+
+    /**
+     * 按字段修改所有满足条件的数据。
+     * 如果SQLite支持JSON1扩展、文档模型为Json格式、并且筛选器可以完全翻译为SQL，只执行一条通过json_set修改的UPDATE语句，
+     * 不会解析或者重新生成任何文档模型；否则在同一个写事务中解析、修改并写回。
+     * @param filter 筛选器，为null时修改所有数据。
+     * @param patch 字段路径（嵌套字段以"."分隔） -> 新的值，值为null时移除该字段。
+     * @return 修改的文档数。
+     */
+    public Observable<Integer> updateAll(Filter<T> filter, Map<String, ?> patch) {
+        return makeWriteObservable(Metrics.Operation.UPDATE, null, null, 0, patchTask(filter, patch, true));
+    }
+
+    /**
+     * 同步按字段修改所有满足条件的数据。
+     * @see #updateAll(Filter, Map)
+     */
+    public int syncUpdateAll(Filter<T> filter, Map<String, ?> patch) {
+        return doWrite(Metrics.Operation.UPDATE, null, null, 0, patchTask(filter, patch, true));
     }
 
     /**
      * 查询所有满足条件的指定类型数据。如果数据不存在或者表尚未创建，则返回为空列表。
+     * 筛选器中通过{@link Filter#where}声明的条件会尽可能在SQLite中执行，
+     * {@link Filter#doIterativeFilter(Object)}对SQL的结果在Java层逐条执行。
+     * 通过{@link RxModel.Builder#parallelDecode(int, int, boolean)}开启并行解析时，解析和Java层的筛选在多个线程上执行。
      * @param filter 筛选器
      * @return 满足条件的数据。
      */
     public Observable<List<T>> query(final Filter<T> filter) {
-        return RxUtils.makeModelObservable(new Callable<List<T>>() {
+        return makeReadObservable(new Callable<List<T>>() {
             @Override
             public List<T> call() throws Exception {
                 return queryInternal(clz, filter);
@@ -193,266 +372,1667 @@ public abstract class DbModel<T> {
     }
 
     /**
-     * 查询所有指定类型数据。如果数据不存在或者表尚未创建，则返回为空列表。
-     * @return 所有指定类型的数据。
+     * 投影查询：只提取满足条件的数据的指定字段，不解析完整的对象模型。
+     * 筛选可以完全在SQL中执行时，字段通过索引列或json_extract在SQL中提取；SQLite不支持JSON1时，
+     * 逐条扫描Json文档模型，找到所有字段后即停止。二进制的文档模型，或者筛选需要在Java层执行时，
+     * 仍需解析对象模型后再提取字段。
+     * 字段值与SQLite中的类型一致：整数为Long，小数为Double，布尔值为1/0，字符串为String，对象和数组为Json字符串。
+     * @param filter 筛选器，为null时查询所有数据。
+     * @param fields 字段路径，嵌套字段以"."分隔。
+     * @return 每条数据对应一个Map：字段路径 -> 值，按照fields的顺序排列，不存在的字段值为null。
+     * @throws IllegalArgumentException 字段路径不合法。在调用时抛出，而不是在Observable执行时。
      */
-    public Observable<List<T>> queryAll() {
-        return RxUtils.makeModelObservable(new Callable<List<T>>() {
+    public Observable<List<Map<String, Object>>> queryFields(final Filter<T> filter, final String... fields) {
+        if(fields != null) {
+            for (String field : fields) Condition.checkField(field);
+        }
+        return makeReadObservable(new Callable<List<Map<String, Object>>>() {
             @Override
-            public List<T> call() throws Exception {
-                return queryInternal(clz, null);
+            public List<Map<String, Object>> call() throws Exception {
+                return syncQueryFields(filter, fields);
             }
         });
     }
 
     /**
-     * 查询指定类型数据满足条件的第一条数据。
-     * @param filter 筛选器。
-     * @return 满足条件的第一条数据。
+     * 同步投影查询。
+     * @see #queryFields(Filter, String...)
      */
-    public Observable<T> queryFirst(final Filter<T> filter) {
-        return RxUtils.makeModelObservable(new Callable<T>() {
-            @Override
-            public T call() throws Exception {
-                return queryOneInternal(clz, filter);
-            }
-        });
+    public List<Map<String, Object>> syncQueryFields(final Filter<T> filter, final String... fields) {
+        final List<Map<String, Object>> result = new ArrayList<>();
+        if(fields == null || fields.length == 0) return result;
+        for (String field : fields) Condition.checkField(field);
+
+        final SQLiteDatabase db = rxModel.acquireReader();
+        if(SqlUtils.assertDbNull(db)) return result;
+        try {
+            return doSqlOperation(db, false, Metrics.Operation.PROJECTION, result,
+                    new Callable<List<Map<String, Object>>>() {
+                @Override
+                public List<Map<String, Object>> call() throws Exception {
+                    SqlQuery<T> query = SqlQuery.compile(filter, fieldMapper);
+                    if(!query.isFullyInSql()) {
+                        //筛选需要在Java层执行，必须解析对象模型
+                        List<T> ts = new ArrayList<>();
+                        String sql = SqlUtils.createSelect(tableName, SqlUtils.COLUMNS_DOCUMENT, query);
+                        SqlUtils.readDocumentsFromCursor(rawQuery(db, sql, query), converter, query, ts);
+                        for (T t : ts) result.add(project(t, fields));
+                        return result;
+                    }
+
+                    String projection = SqlUtils.createProjection(fields, fieldMapper);
+                    if(projection != null) {
+                        Cursor cursor = rawQuery(db, SqlUtils.createSelect(tableName, projection, query), query);
+                        try {
+                            while(cursor.moveToNext()) {
+                                Map<String, Object> values = new LinkedHashMap<>();
+                                for (int i = 0; i < fields.length; i++) {
+                                    values.put(fields[i], SqlUtils.readValue(cursor, i));
+                                }
+                                result.add(values);
+                            }
+                        } finally {
+                            cursor.close();
+                        }
+                        return result;
+                    }
+
+                    Cursor cursor = rawQuery(db, SqlUtils.createSelect(tableName, "value", query), query);
+                    try {
+                        JsonProjection scanner = converter.isBinary() ? null : new JsonProjection(fields, jsonPaths(fields));
+                        while(cursor.moveToNext()) {
+                            if(scanner != null) {
+                                result.add(SqlUtils.readFields(cursor, 0, scanner));
+                            } else {
+                                result.add(project(SqlUtils.readDocument(cursor, 0, converter), fields));
+                            }
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                    return result;
+                }
+            });
+        } finally {
+            rxModel.releaseReader(db);
+        }
     }
 
     /**
-     * 查询所有指定类型数据在表中的第一条数据。
-     * @return 第一条查找到的数据。
+     * 按_id升序分页查询，参见{@link #page(Filter, String, String, int)}。
      */
-    public Observable<T> queryFirst() {
-        return RxUtils.makeModelObservable(new Callable<T>() {
+    public Observable<Page<T>> page(Filter<T> filter, String token, int pageSize) {
+        return page(filter, null, token, pageSize);
+    }
+
+    /**
+     * 键集分页查询：按指定的索引字段（相同时按_id）升序排列，从续页标记记录的位置继续读取，
+     * 相当于"WHERE key > ? ORDER BY key LIMIT ?"。与通过{@link Filter#setStart(int)}翻页不同，
+     * 翻到第N页时不需要读取并跳过前面的数据，耗时与页码无关；翻页期间插入或删除数据也不会导致重复或遗漏。
+     * 筛选器中的条件照常生效，筛选器自身的排序和范围被忽略。无法翻译为SQL的条件在Java层执行，
+     * 此时会继续读取直到凑满一页。
+     * @param field 排序字段，必须是{@link #bindIndexes()}中声明的索引字段；为null时按_id排序。
+     * @param token 上一页的{@link Page#getNextToken()}，为null时读取第一页。
+     * @param pageSize 每页的条数。
+     * @return 一页数据。如果表尚未创建或者查询失败，返回没有续页标记的空页。
+     * @throws IllegalArgumentException 字段不是索引字段，或者续页标记无效。在调用时抛出，而不是在Observable执行时。
+     */
+    public Observable<Page<T>> page(final Filter<T> filter, final String field, String token, final int pageSize) {
+        final String column = checkPage(field, pageSize);
+        final Page.Token after = token == null ? null : Page.Token.decode(token, field);
+        return makeReadObservable(new Callable<Page<T>>() {
             @Override
-            public T call() throws Exception {
-                return queryOneInternal(clz);
+            public Page<T> call() throws Exception {
+                return syncPage(filter, field, column, after, pageSize);
             }
         });
     }
 
     /**
-     * 同步查询所有指定类型数据在表中的第一条数据。
+     * 同步按_id升序分页查询。
+     * @see #page(Filter, String, String, int)
      */
-    public T syncQueryFirst() {
-        return queryOneInternal(clz);
+    public Page<T> syncPage(Filter<T> filter, String token, int pageSize) {
+        return syncPage(filter, null, token, pageSize);
     }
 
     /**
-     * 同步查询指定类型数据满足条件的第一条数据。
+     * 同步键集分页查询。
+     * @see #page(Filter, String, String, int)
      */
-    public T syncQueryFirst(final Filter<T> filter) {
-        return queryOneInternal(clz, filter);
+    public Page<T> syncPage(Filter<T> filter, String field, String token, int pageSize) {
+        String column = checkPage(field, pageSize);
+        Page.Token after = token == null ? null : Page.Token.decode(token, field);
+        return syncPage(filter, field, column, after, pageSize);
     }
 
     /**
-     * 删除满足条件的指定类型的数据。
-     * 首先，会基于{@link DbModel#query(Filter)}进行一次查询，对所有查询到的数据,开启事务
-     * 进行删除。
-     * @param filter 筛选器
-     * @return 删除文档数。
+     * 检查分页参数。
+     * @return 排序字段对应的索引列，按_id排序时为null。
      */
-    public Observable<Integer> delete(final Filter<T> filter) {
-        return query(filter)
-                .map(new Func1<List<T>, Integer>() {
-                    @Override
-                    public Integer call(List<T> ts) {
-                        return deleteInternal(ts);
-                    }
-                });
+    private String checkPage(String field, int pageSize) {
+        if(pageSize <= 0) throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        String column = field == null ? null : indexColumns.get(field);
+        if(field != null && column == null) {
+            throw new IllegalArgumentException("Field \"" + field + "\" is not declared in bindIndexes().");
+        }
+        return column;
     }
 
-    /**
-     * 同步删除满足条件的指定类型的数据。
-     * 首先，会基于{@link DbModel#query(Filter)}进行一次查询，对所有查询到的数据,开启事务
-     * 进行删除。
-     * @param filter 筛选器
-     * @return 删除文档数。
-     */
-    public int syncDelete(Filter<T> filter) {
-        List<T> ts = syncQuery(filter);
-        return deleteInternal(ts);
+    private Page<T> syncPage(final Filter<T> filter, final String field, final String column,
+                             final Page.Token after, final int pageSize) {
+        final Page<T> empty = new Page<>(Collections.<T>emptyList(), null);
+        final SQLiteDatabase db = rxModel.acquireReader();
+        if(SqlUtils.assertDbNull(db)) return empty;
+        final ModelCache<T> cache = this.cache;
+        final long version = cache == null ? 0 : cache.version();
+        try {
+            return doSqlOperation(db, false, Metrics.Operation.PAGE, empty, new Callable<Page<T>>() {
+                @Override
+                public Page<T> call() throws Exception {
+                    return pageInternal(db, SqlQuery.compile(filter, fieldMapper), field, column, after,
+                            pageSize, cache, version);
+                }
+            });
+        } finally {
+            rxModel.releaseReader(db);
+        }
     }
 
     /**
-     * 删除所有指定类型的数据。
-     * 首先，会基于{@link DbModel#query(Filter)}进行一次查询，对所有查询到的数据,开启事务
-     * 进行删除。
-     * @return 删除文档数。
+     * 多读取一条满足条件的数据，用于判断是否还有下一页。
+     * 有条件需要在Java层执行时，按批读取，直到凑满一页或者读完。
      */
-    public Observable<Integer> deleteAll() {
-        return queryAll()
-                .map(new Func1<List<T>, Integer>() {
-                    @Override
-                    public Integer call(List<T> ts) {
-                        return deleteInternal(ts);
-                    }
-                });
+    private Page<T> pageInternal(SQLiteDatabase db,
+                                 SqlQuery<T> query,
+                                 String field,
+                                 String column,
+                                 Page.Token after,
+                                 int pageSize,
+                                 ModelCache<T> cache,
+                                 long version) {
+        List<T> items = new ArrayList<>();
+        Page.Token last = null;
+        Page.Token scanned = after;
+        int batch = query.isFullyInSql() ? pageSize + 1 : Math.max(pageSize + 1, 64);
+        boolean more = true;
+        while(more && items.size() <= pageSize) {
+            List<String> args = new ArrayList<>();
+            String sql = SqlUtils.createKeysetSelect(tableName, column, query,
+                    scanned == null ? null : scanned.key, scanned == null ? null : scanned.id, batch, args);
+            trace(sql, query);
+            Cursor cursor = db.rawQuery(sql, args.toArray(new String[args.size()]));
+            try {
+                int read = 0;
+                while(cursor.moveToNext()) {
+                    ++read;
+                    //表结构： | _id | value | 排序列 |
+                    scanned = new Page.Token(field, column == null ? null : SqlUtils.readValue(cursor, 2),
+                            cursor.getString(0));
+                    T t = SqlUtils.readDocument(cursor, 1, converter);
+                    if(!query.accept(t)) continue;
+                    items.add(t);
+                    if(items.size() > pageSize) break;
+                    last = scanned;
+                }
+                more = read == batch;
+            } finally {
+                cursor.close();
+            }
+        }
+
+        boolean hasNext = items.size() > pageSize;
+        if(hasNext) items.remove(pageSize);
+        populateCache(cache, version, items);
+        return new Page<>(items, hasNext ? last.encode() : null);
     }
 
-    private boolean insertInternal(final T t, final String operation) {
-        final SQLiteDatabase db = rxModel.getDataBase();
-        if(SqlUtils.assertDbNull(db)) return false;
-        return doSqlOperation(db, lock.writeLock(), false, true, false, new Callable<Boolean>() {
+    private <K> Observable<K> makeAggregateObservable(final Aggregate aggregate,
+                                                      final String field,
+                                                      final Filter<T> filter,
+                                                      final K defaultValue) {
+        if(field != null) Condition.checkField(field);
+        return makeReadObservable(new Callable<K>() {
             @Override
-            public Boolean call() throws Exception {
-                String sql = SqlUtils.ofInsert(operation, tableName, converter, t);
-                if(TextUtils.isEmpty(sql)) return false;
-                db.execSQL(sql);
-                return true;
+            public K call() throws Exception {
+                return aggregate(aggregate, field, filter, defaultValue);
             }
         });
     }
 
-    private boolean insertAllInternal(final Collection<? extends T> collection, final String operation) {
-        final SQLiteDatabase db = rxModel.getDataBase();
-        if(SqlUtils.assertDbNull(db)) return false;
-        return doSqlOperation(db, lock.writeLock(), true, true, false, new Callable<Boolean>() {
-            @Override
-            public Boolean call() throws Exception {
-                String sql = SqlUtils.ofBlankInsert(operation, tableName, 2);
-                SQLiteStatement stmt = db.compileStatement(sql);
-                for (T t : collection) {
-                    String document = converter.convertToDocument(t);
-                    stmt.bindString(1, converter.bindID(t));
-                    stmt.bindString(2, document);
-                    stmt.execute();
-                    stmt.clearBindings();
+    private <K> K aggregate(final Aggregate aggregate,
+                            final String field,
+                            final Filter<T> filter,
+                            final K defaultValue) {
+        if(field != null) Condition.checkField(field);
+        final SQLiteDatabase db = rxModel.acquireReader();
+        if(SqlUtils.assertDbNull(db)) return defaultValue;
+        try {
+            return doSqlOperation(db, false, Metrics.Operation.AGGREGATE, defaultValue, new Callable<K>() {
+                @SuppressWarnings("unchecked")
+                @Override
+                public K call() throws Exception {
+                    SqlQuery<T> query = SqlQuery.compile(filter, fieldMapper);
+                    String expression = field == null ? null : fieldMapper.map(field);
+                    Object result;
+                    if(query.isFullyInSql() && (field == null || expression != null)) {
+                        result = aggregateInSql(db, aggregate, expression, query);
+                    } else {
+                        result = aggregateInJava(db, aggregate, field, query);
+                    }
+                    return result == null ? defaultValue : (K) result;
                 }
-                stmt.close();
-                return true;
-            }
-        });
+            });
+        } finally {
+            rxModel.releaseReader(db);
+        }
     }
 
-    private List<T> queryInternal(Class<T> clz, final Filter<T> filter) {
-        final SQLiteDatabase db = rxModel.getDataBase();
-        final List<T> result = new ArrayList<>();
-        if(SqlUtils.assertDbNull(db)) return result;
-        final String tableName = clz.getSimpleName();
-        return doSqlOperation(db, lock.readLock(), false, true, result, new Callable<List<T>>() {
-            @Override
-            public List<T> call() throws Exception {
-                String sql = SqlUtils.createSelectAll(tableName);
-                Cursor cursor = db.rawQuery(sql, null);
-                SqlUtils.readDocumentsFromCursor(cursor, converter, filter, result);
-                return result;
+    private Object aggregateInSql(SQLiteDatabase db, Aggregate aggregate, String expression, SqlQuery<T> query) {
+        if(aggregate == Aggregate.GROUP) {
+            Map<Object, Long> groups = new LinkedHashMap<>();
+            Cursor cursor = rawQuery(db, SqlUtils.createGroupCount(tableName, expression, query), query);
+            try {
+                while(cursor.moveToNext()) {
+                    groups.put(SqlUtils.readValue(cursor, 0), cursor.getLong(1));
+                }
+            } finally {
+                cursor.close();
             }
-        });
+            return groups;
+        }
+
+        Cursor cursor = rawQuery(db, SqlUtils.createAggregate(tableName, expression, aggregate.sql, query), query);
+        try {
+            return cursor.moveToFirst() ? SqlUtils.readValue(cursor, 0) : null;
+        } finally {
+            cursor.close();
+        }
     }
 
-    private T queryOneInternal(Class<T> clz, final Filter<T> filter) {
-        final SQLiteDatabase db = rxModel.getDataBase();
-        if(SqlUtils.assertDbNull(db)) return null;
-        final List<T> result = new ArrayList<>();
-        final String tableName = clz.getSimpleName();
-        return doSqlOperation(db, lock.readLock(), false, true, null, new Callable<T>() {
-            @Override
-            public T call() throws Exception {
-                String sql = SqlUtils.createSelectAll(tableName);
-                Cursor cursor = db.rawQuery(sql, null);
-                filter.setLimit(1);
-                SqlUtils.readDocumentsFromCursor(cursor, converter, filter, result);
-                return result.isEmpty() ? null : result.get(0);
+    /**
+     * 逐条解析、筛选并累加，不保存筛选结果。只有需要在Java层排序后再截取范围时，才需要先收集所有结果。
+     */
+    private Object aggregateInJava(SQLiteDatabase db, Aggregate aggregate, String field, SqlQuery<T> query) {
+        Aggregate.Accumulator accumulator = aggregate.newAccumulator();
+        int start = query.getJavaStart();
+        int limit = query.getJavaLimit();
+        Cursor cursor = rawQuery(db, SqlUtils.createSelect(tableName, SqlUtils.COLUMNS_DOCUMENT, query), query);
+        if(query.isSortInJava() && (start > 0 || limit > 0)) {
+            List<T> ts = new ArrayList<>();
+            SqlUtils.readDocumentsFromCursor(cursor, converter, query, ts);
+            for (T t : ts) accumulator.add(valueOf(t, field));
+            return accumulator.result();
+        }
+
+        try {
+            int matched = 0;
+            int taken = 0;
+            int scanned = 0;
+            while(cursor.moveToNext()) {
+                ++scanned;
+                T t = SqlUtils.readDocument(cursor, 1, converter);//表结构： | _id | value |
+                if(!query.accept(t)) continue;
+                if(matched++ < start) continue;
+                accumulator.add(valueOf(t, field));
+                if(limit > 0 && ++taken >= limit) break;
             }
-        });
+            addRows(scanned, Math.max(matched - start, 0));
+        } finally {
+            cursor.close();
+        }
+        return accumulator.result();
     }
 
-    private T queryOneInternal(Class<T> clz) {
-        return queryOneInternal(clz, new EmptyFilter<T>());
+    private Object valueOf(T t, String field) {
+        if(field == null) return null;
+        return JsonProjection.normalize(ReflectUtils.getFieldValue(t, field), rxModel.getGson());
     }
 
-    private int deleteInternal(final List<T> ts) {
-        if (ts == null || ts.isEmpty()) return 0;
-        final SQLiteDatabase db = rxModel.getDataBase();
-        if(SqlUtils.assertDbNull(db)) return 0;
-        return doSqlOperation(db, lock.writeLock(), true, true, 0, new Callable<Integer>() {
-            @Override
-            public Integer call() throws Exception {
-                String sql = SqlUtils.createBlankDeleteById(tableName);
-                SQLiteStatement stmt = db.compileStatement(sql);
-                int affectedLines = 0;
-                for(T t : ts) {
-                    stmt.bindString(1, converter.bindID(t));
-                    affectedLines += stmt.executeUpdateDelete();
-                    stmt.clearBindings();
-                }
-                return affectedLines;
-            }
-        });
+    private String[][] jsonPaths(String[] fields) {
+        String[][] paths = new String[fields.length][];
+        for (int i = 0; i < fields.length; i++) {
+            paths[i] = jsonFields.resolve(fields[i]);
+        }
+        return paths;
     }
 
     /**
-     * 如果表不存在，则创建；否则什么也不做。
+     * 从对象模型中提取字段，值的形式与{@link JsonProjection}一致。
      */
-    private void createTableIfNotExists(final String tableName) {
-        final SQLiteDatabase db = rxModel.getDataBase();
-        if(SqlUtils.assertDbNull(db)) return;
-        doSqlOperation(db, lock.writeLock(), true, true, false, new Callable<Boolean>() {
-            @Override
-            public Boolean call() throws Exception {
-                String sql = SqlUtils.generateCreateTableSQL(tableName);
-                db.execSQL(sql);
-                return true;
-            }
-        });
+    private Map<String, Object> project(T t, String[] fields) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String field : fields) {
+            values.put(field, valueOf(t, field));
+        }
+        return values;
     }
 
     /**
-     * 执行一个SQL操作。
-     * 首先检查指定数据库是否被锁（通过{@link SQLiteDatabase#isDbLockedByCurrentThread()}和RxModel中配置的全局锁）。
-     * 如果数据库被锁，则开启事务并执行指定任务；否则直接执行指定任务。
-     * 如果全局锁被锁，则需要等待直到获取获取全局锁再执行任务。
-     * 无论操作结果，如果closeDbFinally为true，则db均会被关闭。
-     * @param db 要操作的数据库。
-     * @param lock 从RxModel获取的全局锁。
-     * @param forceTransaction 是否跳过锁检查，强制使用事务。
-     * @param closeDbFinally 是否完成操作后关闭数据库。
-     * @param defaultValue 操作异常时，返回的默认值。
-     * @param runnable SQL操作。
-     * @return 是否执行成功
+     * 统计满足条件的数据条数。筛选可以完全在SQL中执行时使用count(*)，不解析任何对象模型；
+     * 否则逐条解析并筛选，不保存筛选结果。
+     * @param filter 筛选器，为null时统计所有数据。
      */
-    private <K> K doSqlOperation(SQLiteDatabase db,
-                                 Lock lock,
-                                 boolean forceTransaction,
-                                 boolean closeDbFinally,
-                                 K defaultValue,
-                                 Callable<K> runnable) {
-        if (!forceTransaction && db.isDbLockedByCurrentThread()) {
-            try {
-                lock.lock();
-                return runnable.call();
-            } catch (Exception e){
-                e.printStackTrace();
-            } finally {
+    public Observable<Long> count(Filter<T> filter) {
+        return makeAggregateObservable(Aggregate.COUNT, null, filter, 0L);
+    }
 
-                //由于每个线程只能获取一个SQLiteDatabase对象，因此不能关闭
-                //if(closeDbFinally) db.close();
-                lock.unlock();
-            }
-        } else {
-            db.beginTransaction();
-            try {
-                //lock.lock();
-                K result = runnable.call();
-                db.setTransactionSuccessful();
-                return result;
-            } catch (Exception e){
-                e.printStackTrace();
-            }  finally {
-                db.endTransaction();
-                //if(closeDbFinally) db.close();
-                //lock.unlock();
-            }
-        }
+    /**
+     * 同步统计满足条件的数据条数。
+     * @see #count(Filter)
+     */
+    public long syncCount(Filter<T> filter) {
+        return aggregate(Aggregate.COUNT, null, filter, 0L);
+    }
 
-        //执行SQL异常，返回默认值
-        return defaultValue;
+    /**
+     * 对满足条件的数据的指定字段求和，与SQLite的total()一致：忽略null和非数值，没有数据时为0。
+     * 字段可以映射为SQL表达式（索引列或json_extract）且筛选可以完全在SQL中执行时，在SQL中聚合；
+     * 否则逐条解析并累加，不保存筛选结果。min、max、avg、groupBy同理。
+     * @param field 字段路径，嵌套字段以"."分隔。
+     * @param filter 筛选器，为null时对所有数据聚合。
+     */
+    public Observable<Double> sum(String field, Filter<T> filter) {
+        return makeAggregateObservable(Aggregate.SUM, field, filter, 0d);
     }
 
-    public interface OnUpdate<K> {
+    /**
+     * 同步对指定字段求和。
+     * @see #sum(String, Filter)
+     */
+    public double syncSum(String field, Filter<T> filter) {
+        return aggregate(Aggregate.SUM, field, filter, 0d);
+    }
 
-        K update(K src);
+    /**
+     * 求指定字段的平均值，忽略null和非数值，没有数据时为null。
+     * @see #sum(String, Filter)
+     */
+    public Observable<Double> avg(String field, Filter<T> filter) {
+        return makeAggregateObservable(Aggregate.AVG, field, filter, null);
+    }
+
+    /**
+     * 同步求指定字段的平均值。
+     * @see #avg(String, Filter)
+     */
+    public Double syncAvg(String field, Filter<T> filter) {
+        return aggregate(Aggregate.AVG, field, filter, null);
+    }
+
+    /**
+     * 求指定字段的最小值，按SQLite的规则比较（数值 &lt; 文本），忽略null，没有数据时为null。
+     * 值的形式与{@link #queryFields(Filter, String...)}一致。
+     * @see #sum(String, Filter)
+     */
+    public Observable<Object> min(String field, Filter<T> filter) {
+        return makeAggregateObservable(Aggregate.MIN, field, filter, null);
+    }
+
+    /**
+     * 同步求指定字段的最小值。
+     * @see #min(String, Filter)
+     */
+    public Object syncMin(String field, Filter<T> filter) {
+        return aggregate(Aggregate.MIN, field, filter, null);
+    }
+
+    /**
+     * 求指定字段的最大值。
+     * @see #min(String, Filter)
+     */
+    public Observable<Object> max(String field, Filter<T> filter) {
+        return makeAggregateObservable(Aggregate.MAX, field, filter, null);
+    }
+
+    /**
+     * 同步求指定字段的最大值。
+     * @see #min(String, Filter)
+     */
+    public Object syncMax(String field, Filter<T> filter) {
+        return aggregate(Aggregate.MAX, field, filter, null);
+    }
+
+    /**
+     * 按指定字段的值分组统计条数。
+     * @return 字段值 -> 条数，按字段值升序排列；字段为null的数据归入null分组。
+     * @see #sum(String, Filter)
+     */
+    public Observable<Map<Object, Long>> groupBy(String field, Filter<T> filter) {
+        return makeAggregateObservable(Aggregate.GROUP, field, filter, Collections.<Object, Long>emptyMap());
+    }
+
+    /**
+     * 同步按指定字段的值分组统计条数。
+     * @see #groupBy(String, Filter)
+     */
+    public Map<Object, Long> syncGroupBy(String field, Filter<T> filter) {
+        return aggregate(Aggregate.GROUP, field, filter, Collections.<Object, Long>emptyMap());
+    }
+
+    /**
+     * 以流的形式查询所有满足条件的指定类型数据，每条数据单独发送，支持背压。
+     * 与{@link #query(Filter)}不同，数据在下游请求时才从Cursor读取并解析，不会一次性加载整个结果集，
+     * 适合遍历数据量很大的表。取消订阅时Cursor随即关闭。
+     * 开启WAL时读取过程不持有锁，依赖SQLite自身的快照保证一致。未开启WAL时只读连接就是写连接，
+     * 在Cursor关闭之前持有本表的读锁，本表的写操作会等待流式读取结束，因此不要在读取过程中同步写入本表。
+     * @param filter 筛选器，为null时查询所有数据。
+     * @return 逐条发送满足条件的数据。
+     */
+    public Observable<T> stream(final Filter<T> filter) {
+        final SqlQuery<T> query = SqlQuery.compile(filter, fieldMapper);
+        return RxUtils.makeModelStreamObservable(new CursorOnSubscribe<>(new Func0<Cursor>() {
+            @Override
+            public Cursor call() {
+                //先获取表锁、再占用数据库连接，与doSqlOperation一致
+                lock.lockStream();
+                final SQLiteDatabase db = rxModel.acquireReader();
+                if(SqlUtils.assertDbNull(db)) {
+                    lock.unlockStream();
+                    return null;
+                }
+                String sql = SqlUtils.createSelect(tableName, SqlUtils.COLUMNS_DOCUMENT, query);
+                Cursor cursor;
+                try {
+                    cursor = rawQuery(db, sql, query);
+                } catch (RuntimeException e) {
+                    lock.unlockStream();
+                    rxModel.releaseReader(db);
+                    throw e;
+                }
+                //读锁和读取连接在Cursor关闭时释放，Cursor可能在取消订阅的线程上关闭
+                return new CursorWrapper(cursor) {
+                    @Override
+                    public void close() {
+                        if(isClosed()) return;
+                        super.close();
+                        lock.unlockStream();
+                        rxModel.releaseReader(db);
+                    }
+                };
+            }
+        }, converter, query), rxModel.getReadScheduler(), rxModel.getResultScheduler());
+    }
+
+    /**
+     * 实时查询，参见{@link #observe(Filter, long)}，合并{@value #DEFAULT_OBSERVE_DEBOUNCE_MILLIS}毫秒内的连续写入。
+     */
+    public Observable<ChangeSet<T>> observe(Filter<T> filter) {
+        return observe(filter, DEFAULT_OBSERVE_DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * 实时查询：订阅时立即查询一次，之后每当有写操作提交到这张表时重新查询，只在结果变化时发送。
+     * 每次发送的{@link ChangeSet}列出与上一次结果相比新增、修改和移除的_id；
+     * 文档模型没有变化的数据复用上一次的对象，不会重新解析。在debounceMillis毫秒内连续提交的写操作只触发一次查询。
+     * 这个Observable不会结束，不再需要时必须取消订阅。
+     * @param filter 筛选器，为null时查询所有数据。查询期间不应修改筛选器。
+     * @param debounceMillis 合并连续写入的时间窗口，单位毫秒。
+     * @return 每次结果变化时发送一个ChangeSet，第一次发送时所有数据都视为新增。
+     */
+    public Observable<ChangeSet<T>> observe(final Filter<T> filter, final long debounceMillis) {
+        return RxUtils.observeOn(Observable.defer(new Func0<Observable<ChangeSet<T>>>() {
+            @Override
+            public Observable<ChangeSet<T>> call() {
+                return rxModel.observeTableChanges()
+                        .filter(new Func1<String, Boolean>() {
+                            @Override
+                            public Boolean call(String table) {
+                                return tableName.equals(table);
+                            }
+                        })
+                        .debounce(debounceMillis, TimeUnit.MILLISECONDS)
+                        .startWith(tableName)
+                        .onBackpressureLatest()
+                        .observeOn(rxModel.getReadScheduler())
+                        .map(new LiveQuery(filter))
+                        .filter(new Func1<ChangeSet<T>, Boolean>() {
+                            @Override
+                            public Boolean call(ChangeSet<T> changeSet) {
+                                return changeSet != null;
+                            }
+                        });
+            }
+        }), rxModel.getResultScheduler());
+    }
+
+    /**
+     * 查询所有指定类型数据。如果数据不存在或者表尚未创建，则返回为空列表。
+     * @return 所有指定类型的数据。
+     */
+    public Observable<List<T>> queryAll() {
+        return makeReadObservable(new Callable<List<T>>() {
+            @Override
+            public List<T> call() throws Exception {
+                return queryInternal(clz, null);
+            }
+        });
+    }
+
+    /**
+     * 查询指定类型数据满足条件的第一条数据。
+     * @param filter 筛选器。
+     * @return 满足条件的第一条数据。
+     */
+    public Observable<T> queryFirst(final Filter<T> filter) {
+        return makeReadObservable(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return queryOneInternal(clz, filter);
+            }
+        });
+    }
+
+    /**
+     * 查询所有指定类型数据在表中的第一条数据。
+     * @return 第一条查找到的数据。
+     */
+    public Observable<T> queryFirst() {
+        return makeReadObservable(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return queryOneInternal(clz);
+            }
+        });
+    }
+
+    /**
+     * 同步查询所有指定类型数据在表中的第一条数据。
+     */
+    public T syncQueryFirst() {
+        return queryOneInternal(clz);
+    }
+
+    /**
+     * 同步查询指定类型数据满足条件的第一条数据。
+     */
+    public T syncQueryFirst(final Filter<T> filter) {
+        return queryOneInternal(clz, filter);
+    }
+
+    /**
+     * 开启对象模型缓存，以{@link #bindID(Object)}的值为key，按LRU淘汰。
+     * 查询和{@link #get(String)}读取到的对象会被放入缓存，写入和删除时相关的缓存失效。
+     * 开启缓存后返回的对象可能被多个调用方共享，不应直接修改。
+     * @param maxSize 最多缓存的对象数。
+     */
+    public void enableCache(int maxSize) {
+        enableCache(maxSize, null);
+    }
+
+    /**
+     * 开启对象模型缓存，以{@link #bindID(Object)}的值为key，按LRU淘汰。
+     * @param maxSize 缓存的最大容量。
+     * @param weigher 计算每个对象占用的容量，为null时每个对象占用1。
+     */
+    public void enableCache(int maxSize, ModelCache.Weigher<? super T> weigher) {
+        cache = new ModelCache<>(maxSize, weigher);
+    }
+
+    /**
+     * 获取对象模型缓存，可以从中读取命中、未命中和淘汰次数。未开启缓存时返回null。
+     */
+    public ModelCache<T> getCache() {
+        return cache;
+    }
+
+    /**
+     * 根据id查询文档。开启缓存时优先从缓存读取。
+     * @param id {@link #bindID(Object)}对应的值。
+     * @return 对应的对象模型，不存在时为null。
+     */
+    public Observable<T> get(final String id) {
+        return makeReadObservable(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return syncGet(id);
+            }
+        });
+    }
+
+    /**
+     * 同步根据id查询文档。开启缓存时优先从缓存读取。
+     * @param id {@link #bindID(Object)}对应的值。
+     * @return 对应的对象模型，不存在时为null。
+     */
+    public T syncGet(final String id) {
+        if(id == null) return null;
+        final ModelCache<T> cache = this.cache;
+        if(cache != null) {
+            T cached = cache.get(id);
+            if(cached != null) return cached;
+        }
+        final long version = cache == null ? 0 : cache.version();
+        final SQLiteDatabase db = rxModel.acquireReader();
+        if(SqlUtils.assertDbNull(db)) return null;
+        try {
+            return doSqlOperation(db, false, Metrics.Operation.GET, null, new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    Cursor cursor = db.rawQuery(SqlUtils.createSelectById(tableName), new String[]{id});
+                    try {
+                        if(!cursor.moveToFirst()) return null;
+                        T t = SqlUtils.readDocument(cursor, 1, converter);//表结构： | _id | value |
+                        if(cache != null) cache.put(version, id, t);
+                        return t;
+                    } finally {
+                        cursor.close();
+                    }
+                }
+            });
+        } finally {
+            rxModel.releaseReader(db);
+        }
+    }
+
+    /**
+     * 根据多个id查询文档。开启缓存时优先从缓存读取，其余的按{@link SqlUtils#MAX_BIND_ARGS}个一组，
+     * 通过_id主键查询。
+     * @param ids {@link #bindID(Object)}对应的值。
+     * @return 按照ids的顺序排列的对象模型，不存在的id和重复的id会被忽略。
+     */
+    public Observable<List<T>> getAll(final Collection<String> ids) {
+        return makeReadObservable(new Callable<List<T>>() {
+            @Override
+            public List<T> call() throws Exception {
+                return syncGetAll(ids);
+            }
+        });
+    }
+
+    /**
+     * 同步根据多个id查询文档。
+     * @see #getAll(Collection)
+     */
+    public List<T> syncGetAll(Collection<String> ids) {
+        List<T> result = new ArrayList<>();
+        if(ids == null || ids.isEmpty()) return result;
+
+        final ModelCache<T> cache = this.cache;
+        final long version = cache == null ? 0 : cache.version();
+        final Map<String, T> found = new HashMap<>();
+        final List<String> missed = new ArrayList<>();
+        for (String id : ids) {
+            if(id == null || found.containsKey(id)) continue;
+            T cached = cache == null ? null : cache.get(id);
+            if(cached == null) missed.add(id);
+            found.put(id, cached);
+        }
+
+        if(!missed.isEmpty()) {
+            final SQLiteDatabase db = rxModel.acquireReader();
+            if(SqlUtils.assertDbNull(db)) return result;
+            try {
+                doSqlOperation(db, false, Metrics.Operation.GET, null, new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int from = 0; from < missed.size(); from += SqlUtils.MAX_BIND_ARGS) {
+                            int size = Math.min(SqlUtils.MAX_BIND_ARGS, missed.size() - from);
+                            String[] args = missed.subList(from, from + size).toArray(new String[size]);
+                            Cursor cursor = db.rawQuery(SqlUtils.createSelectByIds(tableName, size), args);
+                            try {
+                                while(cursor.moveToNext()) {
+                                    String id = cursor.getString(0);//表结构： | _id | value |
+                                    T t = SqlUtils.readDocument(cursor, 1, converter);
+                                    found.put(id, t);
+                                    if(cache != null) cache.put(version, id, t);
+                                }
+                            } finally {
+                                cursor.close();
+                            }
+                        }
+                        return null;
+                    }
+                });
+            } finally {
+                rxModel.releaseReader(db);
+            }
+        }
+
+        //按ids的顺序输出，remove保证重复的id只输出一次
+        for (String id : ids) {
+            T t = id == null ? null : found.remove(id);
+            if(t != null) result.add(t);
+        }
+        return result;
+    }
+
+    /**
+     * 获取查询的执行计划，用于确认筛选是否使用了索引。
+     * @param filter 筛选器。
+     * @return EXPLAIN QUERY PLAN的结果，每一项为一个执行步骤。
+     */
+    public Observable<List<String>> explain(final Filter<T> filter) {
+        return makeReadObservable(new Callable<List<String>>() {
+            @Override
+            public List<String> call() throws Exception {
+                return syncExplain(filter);
+            }
+        });
+    }
+
+    /**
+     * 同步获取查询的执行计划，用于确认筛选是否使用了索引。
+     * @param filter 筛选器。
+     * @return EXPLAIN QUERY PLAN的结果，每一项为一个执行步骤。
+     */
+    public List<String> syncExplain(Filter<T> filter) {
+        SQLiteDatabase db = rxModel.acquireReader();
+        if(SqlUtils.assertDbNull(db)) return new ArrayList<>();
+        try {
+            SqlQuery<T> query = SqlQuery.compile(filter, fieldMapper);
+            String sql = SqlUtils.createSelect(tableName, SqlUtils.COLUMNS_DOCUMENT, query);
+            return SqlUtils.readQueryPlan(db, sql, query.getArgs());
+        } finally {
+            rxModel.releaseReader(db);
+        }
+    }
+
+    /**
+     * 删除满足条件的指定类型的数据。
+     * 如果筛选器可以完全翻译为SQL，只执行一条带WHERE子句的DELETE语句，不会解析任何文档模型；
+     * 否则在同一个事务中逐条读取_id和文档模型，筛选后按_id分批删除。
+     * @param filter 筛选器
+     * @return 删除文档数。
+     */
+    public Observable<Integer> delete(final Filter<T> filter) {
+        return makeWriteObservable(Metrics.Operation.DELETE, null, null, 0, deleteTask(filter));
+    }
+
+    /**
+     * 同步删除满足条件的指定类型的数据。
+     * 如果筛选器可以完全翻译为SQL，只执行一条带WHERE子句的DELETE语句，不会解析任何文档模型；
+     * 否则在同一个事务中逐条读取_id和文档模型，筛选后按_id分批删除。
+     * @param filter 筛选器
+     * @return 删除文档数。
+     */
+    public int syncDelete(Filter<T> filter) {
+        return deleteInternal(filter);
+    }
+
+    /**
+     * 删除所有指定类型的数据，只执行一条DELETE语句。
+     * @return 删除文档数。
+     */
+    public Observable<Integer> deleteAll() {
+        return makeWriteObservable(Metrics.Operation.DELETE, null, null, 0, deleteTask(null));
+    }
+
+    /**
+     * 同步删除所有指定类型的数据，只执行一条DELETE语句。
+     * @return 删除文档数。
+     */
+    public int syncDeleteAll() {
+        return deleteInternal(null);
+    }
+
+    private boolean insertInternal(T t, String operation) {
+        String key = SqlUtils.Operations.INSERT_OR_REPLACE.equals(operation) ? coalesceKey(t) : null;
+        return doWrite(metricsOperation(operation), key, Collections.singletonList(t), false, insertTask(t, operation));
+    }
+
+    private boolean insertAllInternal(Collection<? extends T> collection, String operation) {
+        return doWrite(metricsOperation(operation), null, collection, false, insertAllTask(collection, operation));
+    }
+
+    private static Metrics.Operation metricsOperation(String insertOperation) {
+        return SqlUtils.Operations.INSERT_OR_REPLACE.equals(insertOperation)
+                ? Metrics.Operation.SAVE : Metrics.Operation.INSERT;
+    }
+
+    private Callable<Boolean> insertTask(final T t, final String operation) {
+        return new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                String sql = insertSql.get(operation);
+                if(TextUtils.isEmpty(sql)) return false;
+                SQLiteDatabase db = rxModel.getDataBase();
+                SQLiteStatement stmt = statements.acquire(db, sql);
+                try {
+                    bindDocument(stmt, t);
+                    stmt.executeInsert();
+                } finally {
+                    statements.release(db, sql, stmt);
+                }
+                return true;
+            }
+        };
+    }
+
+    private Callable<Boolean> insertAllTask(final Collection<? extends T> collection, final String operation) {
+        return new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                String sql = insertSql.get(operation);
+                if(TextUtils.isEmpty(sql)) return false;
+                SQLiteDatabase db = rxModel.getDataBase();
+                SQLiteStatement stmt = statements.acquire(db, sql);
+                try {
+                    for (T t : collection) {
+                        bindDocument(stmt, t);
+                        stmt.execute();
+                        stmt.clearBindings();
+                    }
+                } finally {
+                    statements.release(db, sql, stmt);
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * 延迟写入时，对同一个_id的保存可以合并。
+     */
+    private String coalesceKey(T t) {
+        String id = converter.bindID(t);
+        return id == null ? null : tableName + "#" + id;
+    }
+
+    /**
+     * 创建在{@link RxModel#getReadScheduler()}上查询、在{@link RxModel#getResultScheduler()}上回调的Observable。
+     */
+    private <K> Observable<K> makeReadObservable(Callable<K> task) {
+        return RxUtils.makeModelObservable(task, rxModel.getReadScheduler(), rxModel.getResultScheduler());
+    }
+
+    /**
+     * 创建写操作的Observable。开启延迟写入时，写操作进入{@link WriteBehindQueue}，所在批次提交后发送结果，
+     * 缓存失效和表变化的通知在提交线程上执行，即使调用方已经取消订阅；否则在{@link RxModel#getWriteScheduler()}上立即执行。
+     * @param operation 统计中的操作类型。
+     * @param key 延迟写入时的合并键，为null表示不可合并。
+     * @param written 被写入的对象模型，用于使缓存失效；为null表示整张表的缓存都失效。
+     * @param defaultValue 执行失败时的结果。
+     * @param task 写操作，失败时抛出异常。
+     */
+    private <K> Observable<K> makeWriteObservable(final Metrics.Operation operation,
+                                                  final String key,
+                                                  final Collection<? extends T> written,
+                                                  final K defaultValue,
+                                                  final Callable<K> task) {
+        WriteBehindQueue queue = rxModel.getWriteBehindQueue();
+        if(queue != null) {
+            return queue.enqueue(key, recording(operation, invalidating(written, task)), defaultValue,
+                    committedAction(written));
+        }
+        return RxUtils.makeModelObservable(new Callable<K>() {
+            @Override
+            public K call() throws Exception {
+                return doWrite(operation, key, written, defaultValue, task);
+            }
+        }, rxModel.getWriteScheduler(), rxModel.getResultScheduler());
+    }
+
+    /**
+     * 同步执行写操作。开启延迟写入时，写操作进入{@link WriteBehindQueue}并阻塞到所在批次提交；
+     * 在{@link RxModel#syncRunInTransaction(Callable)}中，或者在延迟写入的批次中（例如批次中执行的更新回调里）时，直接加入当前事务。
+     * 写入前后都会使相关的缓存失效：写入前失效保证写入期间不会读到旧的缓存，提交后失效保证并发读取放入的旧数据被清除。
+     * 提交后通过{@link RxModel#observeTableChanges()}通知表已经被修改。
+     */
+    private <K> K doWrite(Metrics.Operation operation,
+                          String key,
+                          Collection<? extends T> written,
+                          K defaultValue,
+                          Callable<K> task) {
+        WriteBehindQueue queue = rxModel.getWriteBehindQueue();
+        if(queue != null && !rxModel.inTransaction() && !queue.isCommitThread()) {
+            return queue.enqueueAndWait(key, recording(operation, invalidating(written, task)), defaultValue,
+                    committedAction(written));
+        }
+        SQLiteDatabase db = rxModel.getDataBase();
+        if(SqlUtils.assertDbNull(db)) return defaultValue;
+        K result = doSqlOperation(db, true, operation, defaultValue, invalidating(written, task));
+        onCommitted(written);
+        return result;
+    }
+
+    /**
+     * 写操作提交后调用：使相关的缓存失效，并通知表已经被修改。
+     * 在{@link RxModel#syncRunInTransaction(Callable)}中时，推迟到整个事务结束后执行。
+     */
+    private void onCommitted(Collection<? extends T> written) {
+        rxModel.runAfterTransaction(committedAction(written));
+    }
+
+    /**
+     * 写操作提交后执行的操作：使相关的缓存失效，并通知表已经被修改。
+     */
+    private Runnable committedAction(final Collection<? extends T> written) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                invalidateCache(written);
+                rxModel.notifyTableChanged(tableName);
+            }
+        };
+    }
+
+    private <K> Callable<K> invalidating(final Collection<? extends T> written, final Callable<K> task) {
+        if(cache == null) return task;
+        return new Callable<K>() {
+            @Override
+            public K call() throws Exception {
+                invalidateCache(written);
+                return task.call();
+            }
+        };
+    }
+
+    private void invalidateCache(Collection<? extends T> written) {
+        ModelCache<T> cache = this.cache;
+        if(cache == null) return;
+        if(written == null) {
+            cache.invalidateAll();
+            return;
+        }
+        for (T t : written) {
+            cache.invalidate(converter.bindID(t));
+        }
+    }
+
+    /**
+     * 将读取到的对象模型放入缓存。
+     * @param version 读取之前的缓存版本号。
+     */
+    private void populateCache(ModelCache<T> cache, long version, Collection<T> ts) {
+        if(cache == null) return;
+        for (T t : ts) {
+            cache.put(version, converter.bindID(t), t);
+        }
+    }
+
+    /**
+     * 按照{@link #insertColumns}的顺序绑定_id、文档模型和索引列。
+     */
+    private void bindDocument(SQLiteStatement stmt, T t) {
+        stmt.bindString(1, converter.bindID(t));
+        SqlUtils.bindDocument(stmt, 2, converter, t);
+        bindIndexValues(stmt, 3, t);
+    }
+
+    /**
+     * 从对象模型中提取索引字段的值，按照Gson存储后的形式从指定位置开始依次绑定，与json_extract取出的值一致。
+     */
+    private void bindIndexValues(SQLiteStatement stmt, int from, T t) {
+        Gson gson = rxModel.getGson();
+        for (String field : indexColumns.keySet()) {
+            SqlUtils.bindValue(stmt, from++, ReflectUtils.getFieldValue(t, field), gson);
+        }
+    }
+
+    private List<T> queryInternal(Class<T> clz, final Filter<T> filter) {
+        final SQLiteDatabase db = rxModel.acquireReader();
+        final List<T> result = new ArrayList<>();
+        if(SqlUtils.assertDbNull(db)) return result;
+        final ModelCache<T> cache = this.cache;
+        final long version = cache == null ? 0 : cache.version();
+        try {
+            return doSqlOperation(db, false, Metrics.Operation.QUERY, result, new Callable<List<T>>() {
+                @Override
+                public List<T> call() throws Exception {
+                    SqlQuery<T> query = SqlQuery.compile(filter, fieldMapper);
+                    String sql = SqlUtils.createSelect(tableName, SqlUtils.COLUMNS_DOCUMENT, query);
+                    Cursor cursor = rawQuery(db, sql, query);
+                    ParallelDecoder decoder = rxModel.getParallelDecoder();
+                    if(decoder != null) {
+                        decoder.read(cursor, converter, query, result);
+                    } else {
+                        SqlUtils.readDocumentsFromCursor(cursor, converter, query, result);
+                    }
+                    populateCache(cache, version, result);
+                    return result;
+                }
+            });
+        } finally {
+            rxModel.releaseReader(db);
+        }
+    }
+
+    private T queryOneInternal(Class<T> clz, final Filter<T> filter) {
+        final SQLiteDatabase db = rxModel.acquireReader();
+        if(SqlUtils.assertDbNull(db)) return null;
+        final List<T> result = new ArrayList<>();
+        final ModelCache<T> cache = this.cache;
+        final long version = cache == null ? 0 : cache.version();
+        try {
+            return doSqlOperation(db, false, Metrics.Operation.QUERY_FIRST, null, new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    SqlQuery<T> query = SqlQuery.compile(filter, fieldMapper).withLimit(1);
+                    String sql = SqlUtils.createSelect(tableName, SqlUtils.COLUMNS_DOCUMENT, query);
+                    Cursor cursor = rawQuery(db, sql, query);
+                    SqlUtils.readDocumentsFromCursor(cursor, converter, query, result);
+                    populateCache(cache, version, result);
+                    return result.isEmpty() ? null : result.get(0);
+                }
+            });
+        } finally {
+            rxModel.releaseReader(db);
+        }
+    }
+
+    private T queryOneInternal(Class<T> clz) {
+        return queryOneInternal(clz, null);
+    }
+
+    private int deleteInternal(Filter<T> filter) {
+        return doWrite(Metrics.Operation.DELETE, null, null, 0, deleteTask(filter));
+    }
+
+    private Callable<Integer> deleteTask(final Filter<T> filter) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                SQLiteDatabase db = rxModel.getDataBase();
+                SqlQuery<T> query = SqlQuery.compile(filter, fieldMapper);
+                if(query.isFullyInSql()) {
+                    String sql = SqlUtils.createDelete(tableName, query);
+                    trace(sql, query);
+                    SQLiteStatement stmt = db.compileStatement(sql);
+                    try {
+                        stmt.bindAllArgsAsStrings(query.getArgs());
+                        return stmt.executeUpdateDelete();
+                    } finally {
+                        stmt.close();
+                    }
+                }
+                return deleteByIds(db, selectIds(db, query));
+            }
+        };
+    }
+
+    private Callable<Boolean> updateFirstTask(final Filter<T> filter,
+                                              final OnUpdate<T> onUpdate,
+                                              final List<T> written) {
+        return new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                SQLiteDatabase db = rxModel.getDataBase();
+                List<T> matched = selectForUpdate(db, SqlQuery.compile(filter, fieldMapper), false);
+                //没有满足条件的数据时，以null回调
+                if(matched.isEmpty()) matched = Collections.singletonList(null);
+                return rewrite(db, matched, onUpdate, written) > 0;
+            }
+        };
+    }
+
+    private Callable<Integer> updateTask(final Filter<T> filter,
+                                         final OnUpdate<T> onUpdate,
+                                         final boolean all,
+                                         final List<T> written) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                SQLiteDatabase db = rxModel.getDataBase();
+                List<T> matched = selectForUpdate(db, SqlQuery.compile(filter, fieldMapper), all);
+                return rewrite(db, matched, onUpdate, written);
+            }
+        };
+    }
+
+    private Callable<Integer> patchTask(final Filter<T> filter, final Map<String, ?> patch, final boolean all) {
+        //在调用方线程上检查字段并生成Json，避免在写事务中抛出异常
+        final Map<String, String> values = new LinkedHashMap<>();
+        for (Map.Entry<String, ?> entry : patch.entrySet()) {
+            Condition.checkField(entry.getKey());
+            values.put(entry.getKey(), entry.getValue() == null ? null : rxModel.getGson().toJson(entry.getValue()));
+        }
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                if(values.isEmpty()) return 0;
+                SQLiteDatabase db = rxModel.getDataBase();
+                SqlQuery<T> query = SqlQuery.compile(filter, fieldMapper);
+                Map<String, String> jsonPatch = null;
+                Map<String, String> jsonIndexes = null;
+                if(rxModel.isJsonSupported() && !converter.isBinary() && query.isFullyInSql()) {
+                    jsonPatch = toJsonPatch(values);
+                    jsonIndexes = toJsonIndexes(affectedIndexes(values.keySet()));
+                }
+                if(jsonPatch != null && jsonIndexes != null) {
+                    List<String> args = new ArrayList<>();
+                    String sql = SqlUtils.createJsonPatch(tableName, jsonPatch, jsonIndexes, query, !all, args);
+                    trace(sql, query);
+                    SQLiteStatement stmt = db.compileStatement(sql);
+                    try {
+                        stmt.bindAllArgsAsStrings(args.toArray(new String[args.size()]));
+                        return stmt.executeUpdateDelete();
+                    } finally {
+                        stmt.close();
+                    }
+                }
+
+                //二进制的文档模型、需要在Java层筛选或者Json路径无法在SQL中表示：通过Gson的树模型修改
+                return rewrite(db, selectForUpdate(db, query, all), new OnUpdate<T>() {
+                    @Override
+                    public T update(T src) {
+                        return applyPatch(src, values);
+                    }
+                }, null);
+            }
+        };
+    }
+
+    /**
+     * 与修改的字段重叠（相同，或者一方是另一方的上级）的索引列 -> 索引字段。
+     */
+    private Map<String, String> affectedIndexes(Collection<String> fields) {
+        Map<String, String> affected = new LinkedHashMap<>();
+        for (Map.Entry<String, String> index : indexColumns.entrySet()) {
+            String indexField = index.getKey();
+            for (String field : fields) {
+                if(indexField.equals(field) || indexField.startsWith(field + ".") || field.startsWith(indexField + ".")) {
+                    affected.put(index.getValue(), indexField);
+                    break;
+                }
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * 字段路径 -> 值转换为Json路径（SQL字面量） -> 值。
+     * @return 任意路径无法在SQL中表示时返回null。
+     */
+    private Map<String, String> toJsonPatch(Map<String, String> values) {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            String path = SqlUtils.createJsonPath(jsonFields.resolve(entry.getKey()));
+            if(path == null) return null;
+            result.put(path, entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * 索引列 -> 索引字段转换为索引列 -> Json路径（SQL字面量）。
+     * @return 任意路径无法在SQL中表示时返回null。
+     */
+    private Map<String, String> toJsonIndexes(Map<String, String> indexes) {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : indexes.entrySet()) {
+            String path = SqlUtils.createJsonPath(jsonFields.resolve(entry.getValue()));
+            if(path == null) return null;
+            result.put(entry.getKey(), path);
+        }
+        return result;
+    }
+
+    /**
+     * 在Json树上修改字段。Json格式的文档模型通过转换器读写，与存储的格式一致；二进制的文档模型通过Gson读写。
+     */
+    private T applyPatch(T t, Map<String, String> values) {
+        Gson gson = rxModel.getGson();
+        JsonParser parser = new JsonParser();
+        JsonObject root = converter.isBinary() ? gson.toJsonTree(t).getAsJsonObject()
+                : parser.parse(converter.convertToDocument(t)).getAsJsonObject();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            String[] names = jsonFields.resolve(entry.getKey());
+            JsonObject parent = root;
+            for (int i = 0; i < names.length - 1 && parent != null; i++) {
+                JsonElement child = parent.get(names[i]);
+                if(child == null || !child.isJsonObject()) {
+                    if(entry.getValue() == null) {
+                        parent = null;
+                        break;
+                    }
+                    child = new JsonObject();
+                    parent.add(names[i], child);
+                }
+                parent = child.getAsJsonObject();
+            }
+            if(parent == null) continue;
+            String name = names[names.length - 1];
+            if(entry.getValue() == null) {
+                parent.remove(name);
+            } else {
+                parent.add(name, parser.parse(entry.getValue()));
+            }
+        }
+        return converter.isBinary() ? gson.fromJson(root, clz) : converter.convertToObject(root.toString());
+    }
+
+    /**
+     * 在写事务中读取需要更新的数据，筛选规则与{@link #query(Filter)}一致。
+     * @param all 为false时只读取第一条满足条件的数据。
+     */
+    private List<T> selectForUpdate(SQLiteDatabase db, SqlQuery<T> query, boolean all) {
+        Cursor cursor = rawQuery(db, SqlUtils.createSelect(tableName, SqlUtils.COLUMNS_DOCUMENT, query), query);
+        List<T> ts = new ArrayList<>();
+        if(all || query.isSortInJava()) {
+            SqlUtils.readDocumentsFromCursor(cursor, converter, query, ts);
+            return all || ts.size() <= 1 ? ts : ts.subList(0, 1);
+        }
+
+        try {
+            int start = query.getJavaStart();
+            int matched = 0;
+            while(cursor.moveToNext()) {
+                T t = SqlUtils.readDocument(cursor, 1, converter);//表结构： | _id | value |
+                if(!query.accept(t)) continue;
+                if(matched++ < start) continue;
+                ts.add(t);
+                break;
+            }
+        } finally {
+            cursor.close();
+        }
+        return ts;
+    }
+
+    /**
+     * 逐条回调并通过同一条预编译语句写回。
+     * @param written 输出参数，添加更新前后的对象模型，用于提交后使缓存失效；为null时不添加。
+     * @return 写回的文档数。
+     */
+    private int rewrite(SQLiteDatabase db, List<T> ts, OnUpdate<T> onUpdate, List<T> written) {
+        String sql = insertSql.get(SqlUtils.Operations.INSERT_OR_REPLACE);
+        SQLiteStatement stmt = statements.acquire(db, sql);
+        int count = 0;
+        try {
+            for (T t : ts) {
+                T updated = onUpdate.update(t);
+                if(updated == null) continue;
+                bindDocument(stmt, updated);
+                stmt.execute();
+                stmt.clearBindings();
+                if(written != null) {
+                    if(t != null) written.add(t);
+                    written.add(updated);
+                }
+                ++count;
+            }
+        } finally {
+            statements.release(db, sql, stmt);
+        }
+        return count;
+    }
+
+    /**
+     * 查询满足条件的文档的_id，只用于无法完全翻译为SQL的筛选器。
+     * 不需要在Java层排序时，只保留_id，解析出的对象模型在筛选后即被丢弃。
+     */
+    private List<String> selectIds(SQLiteDatabase db, SqlQuery<T> query) {
+        String sql = SqlUtils.createSelect(tableName, SqlUtils.COLUMNS_DOCUMENT, query);
+        Cursor cursor = rawQuery(db, sql, query);
+        List<String> ids = new ArrayList<>();
+        if(query.isSortInJava()) {
+            List<T> ts = new ArrayList<>();
+            SqlUtils.readDocumentsFromCursor(cursor, converter, query, ts);
+            for (T t : ts) ids.add(converter.bindID(t));
+            return ids;
+        }
+
+        try {
+            int start = query.getJavaStart();
+            int limit = query.getJavaLimit();
+            int matched = 0;
+            int scanned = 0;
+            while(cursor.moveToNext()) {
+                ++scanned;
+                T t = SqlUtils.readDocument(cursor, 1, converter);//表结构： | _id | value |
+                if(!query.accept(t)) continue;
+                if(matched++ < start) continue;
+                ids.add(cursor.getString(0));
+                if(limit > 0 && ids.size() >= limit) break;
+            }
+            addRows(scanned, ids.size());
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+
+    /**
+     * 按_id分批删除，每批最多{@link SqlUtils#MAX_BIND_ARGS}个参数。
+     * 满批使用同一条缓存的预编译语句；最后不足一批时参数个数各不相同，直接编译执行后关闭，不放入缓存，以免挤出其他语句。
+     */
+    private int deleteByIds(SQLiteDatabase db, List<String> ids) {
+        int affectedLines = 0;
+        String fullSql = null;
+        for (int from = 0; from < ids.size(); from += SqlUtils.MAX_BIND_ARGS) {
+            int size = Math.min(SqlUtils.MAX_BIND_ARGS, ids.size() - from);
+            if (size < SqlUtils.MAX_BIND_ARGS) {
+                SQLiteStatement stmt = db.compileStatement(SqlUtils.createBlankDeleteByIds(tableName, size));
+                try {
+                    affectedLines += deleteByIds(stmt, ids, from, size);
+                } finally {
+                    stmt.close();
+                }
+                continue;
+            }
+            if (fullSql == null) fullSql = SqlUtils.createBlankDeleteByIds(tableName, size);
+            SQLiteStatement stmt = statements.acquire(db, fullSql);
+            try {
+                affectedLines += deleteByIds(stmt, ids, from, size);
+            } finally {
+                statements.release(db, fullSql, stmt);
+            }
+        }
+        return affectedLines;
+    }
+
+    private static int deleteByIds(SQLiteStatement stmt, List<String> ids, int from, int size) {
+        for (int i = 0; i < size; i++) {
+            stmt.bindString(i + 1, ids.get(from + i));
+        }
+        return stmt.executeUpdateDelete();
+    }
+
+    /**
+     * 如果表不存在，则创建；否则什么也不做。
+     * 同时补齐缺少的索引列并建立索引，新增的索引列会从已有的文档模型中回填。
+     */
+    private void createTableIfNotExists(final String tableName) {
+        final SQLiteDatabase db = rxModel.getDataBase();
+        if(SqlUtils.assertDbNull(db)) return;
+        doSqlOperation(db, true, Metrics.Operation.CREATE_TABLE, false, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                String sql = SqlUtils.generateCreateTableSQL(tableName);
+                db.execSQL(sql);
+                if(indexColumns.isEmpty()) return true;
+
+                List<String> existed = SqlUtils.readColumns(db, tableName);
+                boolean added = false;
+                for (String column : indexColumns.values()) {
+                    if(!existed.contains(column)) {
+                        db.execSQL(SqlUtils.createAddColumn(tableName, column));
+                        added = true;
+                    }
+                    db.execSQL(SqlUtils.createIndex(tableName, column));
+                }
+                if(added) fillIndexColumns(db);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * 根据已有的文档模型回填所有索引列。
+     */
+    private void fillIndexColumns(SQLiteDatabase db) {
+        String[] columns = indexColumns.values().toArray(new String[indexColumns.size()]);
+        SQLiteStatement stmt = db.compileStatement(SqlUtils.createBlankUpdateById(tableName, columns));
+        Cursor cursor = db.rawQuery(SqlUtils.createSelect(tableName, SqlUtils.COLUMNS_DOCUMENT,
+                SqlQuery.<T>compile(null, null)), null);
+        try {
+            while(cursor.moveToNext()) {
+                T t = SqlUtils.readDocument(cursor, 1, converter);
+                bindIndexValues(stmt, 1, t);
+                stmt.bindString(columns.length + 1, cursor.getString(0));
+                stmt.execute();
+                stmt.clearBindings();
+            }
+        } finally {
+            cursor.close();
+            stmt.close();
+        }
+    }
+
+    /**
+     * 执行查询，并记录执行的SQL和筛选器。
+     */
+    private Cursor rawQuery(SQLiteDatabase db, String sql, SqlQuery<T> query) {
+        trace(sql, query);
+        return db.rawQuery(sql, query.getArgs());
+    }
+
+    /**
+     * 累计当前操作扫描和返回的行数，用于不经过{@link SqlUtils#readDocumentsFromCursor(Cursor, Converter, SqlQuery, List)}的逐条读取。
+     */
+    private static void addRows(int scanned, int returned) {
+        Metrics.Recording recording = Metrics.current();
+        if(recording != null) recording.addRows(scanned, returned);
+    }
+
+    /**
+     * 记录当前操作执行的SQL和筛选器，用于{@link SlowOperationLog}。
+     */
+    private static void trace(String sql, SqlQuery<?> query) {
+        Metrics.Recording recording = Metrics.current();
+        if(recording != null) recording.setQuery(sql, query.getFilter());
+    }
+
+    /**
+     * 执行一个SQL操作。
+     * 如果当前线程已经处于事务中（例如延迟写入的批次事务），直接在该事务中执行，不再获取表锁，也不开启新的事务，
+     * 此时由外层事务保证互斥。
+     * 否则，写操作先获取本表的写锁，再开启事务执行；读操作获取本表的读锁（开启WAL时不需要）后直接执行。
+     * 先获取表锁、再占用数据库连接，保证不会与外层事务相互等待。
+     * @param db 要操作的数据库。
+     * @param write 是否为写操作。
+     * @param operation 统计中的操作类型，参见{@link Metrics}。
+     * @param defaultValue 操作异常时，返回的默认值。
+     * @param runnable SQL操作。
+     * @return 是否执行成功
+     */
+    private <K> K doSqlOperation(SQLiteDatabase db,
+                                 boolean write,
+                                 Metrics.Operation operation,
+                                 K defaultValue,
+                                 Callable<K> runnable) {
+        Metrics metrics = rxModel.getMetrics();
+        Metrics.Recording recording = metrics.begin(tableName, operation);
+        boolean success = false;
+        try {
+            if (db.inTransaction() && db.isDbLockedByCurrentThread()) {
+                //加入当前线程上的事务，写操作失败时整个事务回滚
+                try {
+                    K result = runnable.call();
+                    success = true;
+                    return result;
+                } catch (Exception e) {
+                    onFailure(metrics, recording, operation, e);
+                    if (write) rxModel.markTransactionFailed();
+                }
+            } else if (write) {
+                long lockWait = lock.lockWrite();
+                if (recording != null) recording.addLockWait(lockWait);
+                try {
+                    db.beginTransaction();
+                    try {
+                        K result = runnable.call();
+                        db.setTransactionSuccessful();
+                        success = true;
+                        return result;
+                    } finally {
+                        db.endTransaction();
+                    }
+                } catch (Exception e) {
+                    success = false;
+                    onFailure(metrics, recording, operation, e);
+                } finally {
+                    metrics.onTransaction(success);
+                    lock.unlockWrite();
+                }
+            } else {
+                long lockWait = lock.lockRead();
+                if (recording != null) recording.addLockWait(lockWait);
+                try {
+                    K result = runnable.call();
+                    success = true;
+                    return result;
+                } catch (Exception e) {
+                    onFailure(metrics, recording, operation, e);
+                } finally {
+                    lock.unlockRead();
+                }
+            }
+        } finally {
+            if (recording != null) recording.end(success);
+        }
+
+        //执行SQL异常，返回默认值
+        return defaultValue;
+    }
+
+    private void onFailure(Metrics metrics, Metrics.Recording recording, Metrics.Operation operation, Exception e) {
+        if (recording != null) {
+            recording.fail(e);
+        } else {
+            metrics.onFailure(tableName, operation, e);
+        }
+    }
+
+    /**
+     * 在延迟写入的批次中执行时，单独记录写操作的统计；批次事务的提交和回滚由{@link WriteBehindQueue}记录。
+     */
+    private <K> Callable<K> recording(final Metrics.Operation operation, final Callable<K> task) {
+        return new Callable<K>() {
+            @Override
+            public K call() throws Exception {
+                Metrics metrics = rxModel.getMetrics();
+                Metrics.Recording recording = metrics.begin(tableName, operation);
+                boolean success = false;
+                try {
+                    K result = task.call();
+                    success = true;
+                    return result;
+                } catch (Exception e) {
+                    onFailure(metrics, recording, operation, e);
+                    throw e;
+                } finally {
+                    if (recording != null) recording.end(success);
+                }
+            }
+        };
+    }
+
+    public interface OnUpdate<K> {
+
+        K update(K src);
+    }
+
+    /**
+     * 实时查询的一次订阅，保存上一次的结果，用于计算变化。只在同一个线程上依次调用。
+     */
+    private final class LiveQuery implements Func1<String, ChangeSet<T>> {
+
+        private final Filter<T> filter;
+
+        /**
+         * 上一次的结果：_id -> 文档模型和对象模型，为null表示尚未查询过。
+         */
+        private Map<String, LiveRow<T>> snapshot;
+
+        LiveQuery(Filter<T> filter) {
+            this.filter = filter;
+        }
+
+        /**
+         * @return 结果的变化，没有变化或者查询失败时返回null。
+         */
+        @Override
+        public ChangeSet<T> call(String table) {
+            final SQLiteDatabase db = rxModel.acquireReader();
+            if(SqlUtils.assertDbNull(db)) return null;
+            try {
+                return doSqlOperation(db, false, Metrics.Operation.OBSERVE, null, new Callable<ChangeSet<T>>() {
+                    @Override
+                    public ChangeSet<T> call() throws Exception {
+                        return diff(read(db));
+                    }
+                });
+            } finally {
+                rxModel.releaseReader(db);
+            }
+        }
+
+        /**
+         * 按查询计划读取结果。文档模型与上一次相同时直接复用上一次的对象模型。
+         */
+        private List<LiveRow<T>> read(SQLiteDatabase db) {
+            SqlQuery<T> query = SqlQuery.compile(filter, fieldMapper);
+            boolean sort = query.isSortInJava();
+            int start = sort ? 0 : query.getJavaStart();
+            int limit = sort ? -1 : query.getJavaLimit();
+            int matched = 0;
+            List<LiveRow<T>> rows = new ArrayList<>();
+            Cursor cursor = rawQuery(db, SqlUtils.createSelect(tableName, SqlUtils.COLUMNS_DOCUMENT, query), query);
+            try {
+                while(cursor.moveToNext()) {
+                    String id = cursor.getString(0);//表结构： | _id | value |
+                    Object document = cursor.getType(1) == Cursor.FIELD_TYPE_BLOB
+                            ? cursor.getBlob(1) : cursor.getString(1);
+                    LiveRow<T> previous = snapshot == null ? null : snapshot.get(id);
+                    T t = previous != null && previous.isSameDocument(document)
+                            ? previous.model : SqlUtils.readDocument(cursor, 1, converter);
+                    if(!query.accept(t)) continue;
+                    if(matched++ < start) continue;
+                    rows.add(new LiveRow<>(id, document, t));
+                    if(limit > 0 && rows.size() >= limit) break;
+                }
+            } finally {
+                cursor.close();
+            }
+            if(!sort) return rows;
+
+            //需要在Java层排序时，排序后再截取范围
+            Map<T, LiveRow<T>> byModel = new IdentityHashMap<>();
+            List<T> ts = new ArrayList<>(rows.size());
+            for (LiveRow<T> row : rows) {
+                byModel.put(row.model, row);
+                ts.add(row.model);
+            }
+            query.sort(ts);
+            int skip = Math.min(query.getJavaStart(), ts.size());
+            int end = query.getJavaLimit() > 0 ? Math.min(skip + query.getJavaLimit(), ts.size()) : ts.size();
+            List<LiveRow<T>> sorted = new ArrayList<>(end - skip);
+            for (T t : ts.subList(skip, end)) sorted.add(byModel.get(t));
+            return sorted;
+        }
+
+        private ChangeSet<T> diff(List<LiveRow<T>> rows) {
+            boolean initial = snapshot == null;
+            Map<String, LiveRow<T>> previous = initial ? Collections.<String, LiveRow<T>>emptyMap() : snapshot;
+            Map<String, LiveRow<T>> current = new LinkedHashMap<>();
+            List<T> items = new ArrayList<>(rows.size());
+            List<String> inserted = new ArrayList<>();
+            List<String> updated = new ArrayList<>();
+            List<String> removed = new ArrayList<>();
+            for (LiveRow<T> row : rows) {
+                current.put(row.id, row);
+                items.add(row.model);
+                LiveRow<T> old = previous.get(row.id);
+                if(old == null) {
+                    inserted.add(row.id);
+                } else if(old.model != row.model) {
+                    updated.add(row.id);
+                }
+            }
+            for (String id : previous.keySet()) {
+                if(!current.containsKey(id)) removed.add(id);
+            }
+            snapshot = current;
+            ChangeSet<T> changeSet = new ChangeSet<>(items, inserted, updated, removed);
+            return initial || !changeSet.isEmpty() ? changeSet : null;
+        }
+    }
+
+    /**
+     * 实时查询结果中的一条数据。
+     */
+    private static final class LiveRow<T> {
+
+        final String id;
+        /**
+         * 文档模型：String或者byte[]。
+         */
+        final Object document;
+        final T model;
+
+        LiveRow(String id, Object document, T model) {
+            this.id = id;
+            this.document = document;
+            this.model = model;
+        }
+
+        boolean isSameDocument(Object other) {
+            if(document instanceof byte[] && other instanceof byte[]) {
+                return Arrays.equals((byte[]) document, (byte[]) other);
+            }
+            return document != null && document.equals(other);
+        }
     }
 }
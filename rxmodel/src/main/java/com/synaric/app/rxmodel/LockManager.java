@@ -0,0 +1,216 @@
+package com.synaric.app.rxmodel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 按表管理的读写锁。
+ * 每张表持有独立的读写锁，一张表的写操作不会阻塞其他表的读写。
+ * 开启WAL时，读操作不需要与写操作互斥（SQLite保证读到一致的快照），因此不获取读锁。
+ * 每张表记录获取锁时的等待次数和等待时间，用于观察锁竞争。
+ */
+public final class LockManager {
+
+    private final ConcurrentHashMap<String, TableLock> locks = new ConcurrentHashMap<>();
+    private final boolean lockReads;
+
+    LockManager(boolean lockReads) {
+        this.lockReads = lockReads;
+    }
+
+    /**
+     * 获取指定表的锁。
+     */
+    TableLock getLock(String table) {
+        TableLock lock = locks.get(table);
+        if (lock == null) {
+            TableLock created = new TableLock(table);
+            lock = locks.putIfAbsent(table, created);
+            if (lock == null) lock = created;
+        }
+        return lock;
+    }
+
+    /**
+     * 读操作是否需要获取读锁。开启WAL时为false。
+     */
+    public boolean isLockReads() {
+        return lockReads;
+    }
+
+    /**
+     * 获取指定表的锁等待统计，表尚未使用过锁时返回null。
+     */
+    public Stats getStats(String table) {
+        TableLock lock = locks.get(table);
+        return lock == null ? null : lock.snapshot();
+    }
+
+    /**
+     * 获取所有表的锁等待统计。
+     */
+    public List<Stats> getAllStats() {
+        List<Stats> stats = new ArrayList<>();
+        for (TableLock lock : locks.values()) {
+            stats.add(lock.snapshot());
+        }
+        return stats;
+    }
+
+    /**
+     * 单张表的读写锁。优先尝试无等待地获取锁，只有发生竞争时才计时。
+     */
+    final class TableLock {
+
+        private final String table;
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final AtomicLong acquired = new AtomicLong();
+        private final AtomicLong contended = new AtomicLong();
+        private final AtomicLong waitNanos = new AtomicLong();
+
+        /**
+         * 尚未关闭的流式读取数，由{@link #streams}自身同步。
+         */
+        private final int[] streams = new int[1];
+
+        TableLock(String table) {
+            this.table = table;
+        }
+
+        /**
+         * 获取读锁。开启WAL时不获取。
+         * @return 等待时间，单位纳秒。
+         */
+        long lockRead() {
+            return lockReads ? acquire(lock.readLock()) : 0;
+        }
+
+        void unlockRead() {
+            if (lockReads) lock.readLock().unlock();
+        }
+
+        /**
+         * 开始一次流式读取，与读锁一样阻止写操作，但可以在任意线程上通过{@link #unlockStream()}结束。
+         * 流式读取的Cursor可能在取消订阅的线程上关闭，而读锁只能由获取它的线程释放。开启WAL时不需要。
+         * @return 等待时间，单位纳秒。
+         */
+        long lockStream() {
+            if (!lockReads) return 0;
+            long wait = acquire(lock.readLock());
+            synchronized (streams) {
+                ++streams[0];
+            }
+            lock.readLock().unlock();
+            return wait;
+        }
+
+        void unlockStream() {
+            if (!lockReads) return;
+            synchronized (streams) {
+                if (--streams[0] == 0) streams.notifyAll();
+            }
+        }
+
+        /**
+         * 获取写锁。未开启WAL时，还要等待已经开始的流式读取结束；持有写锁期间不会开始新的流式读取。
+         * @return 等待时间，单位纳秒。
+         */
+        long lockWrite() {
+            long wait = acquire(lock.writeLock());
+            if (lockReads) wait += awaitStreams();
+            return wait;
+        }
+
+        void unlockWrite() {
+            lock.writeLock().unlock();
+        }
+
+        private long awaitStreams() {
+            synchronized (streams) {
+                if (streams[0] == 0) return 0;
+                long begin = System.nanoTime();
+                boolean interrupted = false;
+                while (streams[0] > 0) {
+                    try {
+                        streams.wait();
+                    } catch (InterruptedException e) {
+                        //与Lock.lock()一样不响应中断，结束等待后恢复中断状态
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) Thread.currentThread().interrupt();
+                long wait = System.nanoTime() - begin;
+                contended.incrementAndGet();
+                waitNanos.addAndGet(wait);
+                return wait;
+            }
+        }
+
+        private long acquire(Lock l) {
+            acquired.incrementAndGet();
+            if (l.tryLock()) return 0;
+            long begin = System.nanoTime();
+            l.lock();
+            long wait = System.nanoTime() - begin;
+            contended.incrementAndGet();
+            waitNanos.addAndGet(wait);
+            return wait;
+        }
+
+        Stats snapshot() {
+            return new Stats(table, acquired.get(), contended.get(), waitNanos.get());
+        }
+    }
+
+    /**
+     * 锁等待统计。
+     */
+    public static final class Stats {
+
+        private final String table;
+        private final long acquired;
+        private final long contended;
+        private final long waitNanos;
+
+        Stats(String table, long acquired, long contended, long waitNanos) {
+            this.table = table;
+            this.acquired = acquired;
+            this.contended = contended;
+            this.waitNanos = waitNanos;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        /**
+         * 获取锁的总次数。
+         */
+        public long getAcquired() {
+            return acquired;
+        }
+
+        /**
+         * 需要等待才获取到锁的次数。
+         */
+        public long getContended() {
+            return contended;
+        }
+
+        /**
+         * 等待锁的总时间，单位纳秒。
+         */
+        public long getWaitNanos() {
+            return waitNanos;
+        }
+
+        @Override
+        public String toString() {
+            return table + ": acquired=" + acquired + ", contended=" + contended + ", waitNanos=" + waitNanos;
+        }
+    }
+}
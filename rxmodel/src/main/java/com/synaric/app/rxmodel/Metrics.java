@@ -0,0 +1,413 @@
+package com.synaric.app.rxmodel;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 运行统计，通过{@link RxModel#getMetrics()}获取。
+ * 按表和操作类型记录耗时的分布（总耗时、等待锁、执行SQL、文档模型的转换）、扫描和返回的行数、失败次数，
+ * 以及事务的提交和回滚次数。也可以通过{@link RxModel.Builder#metricsListener(Listener)}逐次接收每个操作的统计。
+ * 记录时只更新原子计数器，每个线程复用同一个记录对象，不产生额外的对象，可以在正式版本中保持开启。
+ * 开启慢操作日志时，超过阈值的操作还会记录到{@link SlowOperationLog}中。
+ */
+public final class Metrics {
+
+    /**
+     * DbModel的操作类型。
+     */
+    public enum Operation {
+        INSERT, SAVE, UPDATE, DELETE, QUERY, QUERY_FIRST, GET, PROJECTION, AGGREGATE, PAGE, OBSERVE, CREATE_TABLE
+    }
+
+    /**
+     * 逐次接收操作的统计。在执行操作的线程上回调，不应包含耗时操作。
+     */
+    public interface Listener {
+
+        /**
+         * 一个操作结束。
+         * @param totalNanos 总耗时，单位纳秒，下同。
+         * @param lockWaitNanos 等待锁的时间。
+         * @param sqlNanos 执行SQL（以及读取结果）的时间，即总耗时减去等待锁和转换的时间。
+         * @param codecNanos 文档模型与对象模型之间转换的时间。
+         * @param rowsScanned 从SQLite读取的行数。
+         * @param rowsReturned 筛选后返回的行数。
+         * @param success 是否成功。
+         */
+        void onOperation(String table, Operation operation, long totalNanos, long lockWaitNanos, long sqlNanos,
+                         long codecNanos, int rowsScanned, int rowsReturned, boolean success);
+
+        /**
+         * 一个操作失败。失败的操作仍然会回调{@link #onOperation}。
+         */
+        void onFailure(String table, Operation operation, Throwable error);
+    }
+
+    private static final ThreadLocal<Recording> RECORDING = new ThreadLocal<Recording>() {
+        @Override
+        protected Recording initialValue() {
+            return new Recording();
+        }
+    };
+
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    private final LockManager lockManager;
+    private final Listener listener;
+    private final SlowOperationLog slowOperationLog;
+    private final ConcurrentHashMap<String, AtomicReferenceArray<OperationStats>> tables = new ConcurrentHashMap<>();
+    private final AtomicLong transactions = new AtomicLong();
+    private final AtomicLong rollbacks = new AtomicLong();
+
+    Metrics(LockManager lockManager, Listener listener, SlowOperationLog slowOperationLog) {
+        this.lockManager = lockManager;
+        this.listener = listener;
+        this.slowOperationLog = slowOperationLog;
+    }
+
+    /**
+     * 获取指定表、指定操作的统计，尚未执行过时返回null。
+     */
+    public OperationStats getStats(String table, Operation operation) {
+        AtomicReferenceArray<OperationStats> stats = tables.get(table);
+        return stats == null ? null : stats.get(operation.ordinal());
+    }
+
+    /**
+     * 获取所有表、所有执行过的操作的统计。
+     */
+    public List<OperationStats> getAllStats() {
+        List<OperationStats> result = new ArrayList<>();
+        for (Map.Entry<String, AtomicReferenceArray<OperationStats>> entry : tables.entrySet()) {
+            AtomicReferenceArray<OperationStats> stats = entry.getValue();
+            for (int i = 0; i < stats.length(); i++) {
+                if (stats.get(i) != null) result.add(stats.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 所有表的锁等待统计，等同于{@link LockManager#getAllStats()}。
+     */
+    public List<LockManager.Stats> getLockStats() {
+        return lockManager.getAllStats();
+    }
+
+    /**
+     * 提交的事务数，包括每个写操作自身的事务、{@link RxModel#syncRunInTransaction}和延迟写入的批次。
+     */
+    public long getTransactionCount() {
+        return transactions.get();
+    }
+
+    /**
+     * 回滚的事务数。
+     */
+    public long getRollbackCount() {
+        return rollbacks.get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sBuilder = new StringBuilder("Metrics{transactions=").append(transactions.get())
+                .append(", rollbacks=").append(rollbacks.get());
+        for (OperationStats stats : getAllStats()) {
+            sBuilder.append("\n  ").append(stats);
+        }
+        return sBuilder.append("}").toString();
+    }
+
+    /**
+     * 记录一个事务的结束。
+     */
+    void onTransaction(boolean committed) {
+        (committed ? transactions : rollbacks).incrementAndGet();
+    }
+
+    /**
+     * 开始记录当前线程上的一个操作。当前线程上已经有正在记录的操作时（例如在一个操作的回调中执行另一个操作），
+     * 返回null，内层操作的耗时计入外层操作。
+     */
+    Recording begin(String table, Operation operation) {
+        Recording recording = RECORDING.get();
+        if (recording.metrics != null) return null;
+        recording.start(this, table, operation);
+        return recording;
+    }
+
+    /**
+     * 当前线程上正在记录的操作，没有时返回null。用于在不方便传递参数的位置（例如逐行读取时）累计统计。
+     */
+    public static Recording current() {
+        Recording recording = RECORDING.get();
+        return recording.metrics == null ? null : recording;
+    }
+
+    /**
+     * 记录失败的操作。所有操作的异常都经过这里，在此统一输出日志。
+     */
+    void onFailure(String table, Operation operation, Throwable error) {
+        Log.w("RxModel", table + " " + operation + " failed.", error);
+        stats(table, operation).failures.incrementAndGet();
+        if (listener != null) listener.onFailure(table, operation, error);
+    }
+
+    private OperationStats stats(String table, Operation operation) {
+        AtomicReferenceArray<OperationStats> stats = tables.get(table);
+        if (stats == null) {
+            AtomicReferenceArray<OperationStats> created = new AtomicReferenceArray<>(OPERATIONS.length);
+            stats = tables.putIfAbsent(table, created);
+            if (stats == null) stats = created;
+        }
+        OperationStats operationStats = stats.get(operation.ordinal());
+        if (operationStats == null) {
+            stats.compareAndSet(operation.ordinal(), null, new OperationStats(table, operation));
+            operationStats = stats.get(operation.ordinal());
+        }
+        return operationStats;
+    }
+
+    private void record(Recording recording, boolean success) {
+        long total = System.nanoTime() - recording.begin;
+        long sql = Math.max(total - recording.lockWaitNanos - recording.codecNanos, 0);
+        OperationStats stats = stats(recording.table, recording.operation);
+        stats.total.record(total);
+        stats.lockWait.record(recording.lockWaitNanos);
+        stats.sql.record(sql);
+        stats.codec.record(recording.codecNanos);
+        stats.rowsScanned.addAndGet(recording.rowsScanned);
+        stats.rowsReturned.addAndGet(recording.rowsReturned);
+        if (listener != null) {
+            listener.onOperation(recording.table, recording.operation, total, recording.lockWaitNanos, sql,
+                    recording.codecNanos, recording.rowsScanned, recording.rowsReturned, success);
+        }
+        if (slowOperationLog != null && slowOperationLog.isSlow(total)) {
+            slowOperationLog.record(recording.table, recording.operation,
+                    recording.filter == null ? null : recording.filter.getName(), recording.sql,
+                    total, recording.rowsScanned, recording.rowsReturned, success);
+        }
+    }
+
+    /**
+     * 一个正在记录的操作。每个线程复用同一个对象。
+     */
+    public static final class Recording {
+
+        private Metrics metrics;
+        private String table;
+        private Operation operation;
+        private long begin;
+        private long lockWaitNanos;
+        private long codecNanos;
+        private int rowsScanned;
+        private int rowsReturned;
+        private Class<?> filter;
+        private String sql;
+
+        private Recording() {
+        }
+
+        private void start(Metrics metrics, String table, Operation operation) {
+            this.metrics = metrics;
+            this.table = table;
+            this.operation = operation;
+            this.begin = System.nanoTime();
+            this.lockWaitNanos = 0;
+            this.codecNanos = 0;
+            this.rowsScanned = 0;
+            this.rowsReturned = 0;
+            this.filter = null;
+            this.sql = null;
+        }
+
+        /**
+         * 记录执行的SQL和筛选器，用于慢操作日志。
+         */
+        void setQuery(String sql, Object filter) {
+            this.sql = sql;
+            this.filter = filter == null ? null : filter.getClass();
+        }
+
+        void addLockWait(long nanos) {
+            lockWaitNanos += nanos;
+        }
+
+        /**
+         * 累计文档模型与对象模型之间转换的时间。
+         */
+        public void addCodec(long nanos) {
+            codecNanos += nanos;
+        }
+
+        /**
+         * 累计扫描和返回的行数。
+         */
+        public void addRows(int scanned, int returned) {
+            rowsScanned += scanned;
+            rowsReturned += returned;
+        }
+
+        void fail(Throwable error) {
+            metrics.onFailure(table, operation, error);
+        }
+
+        /**
+         * 结束记录并汇总。
+         */
+        void end(boolean success) {
+            Metrics metrics = this.metrics;
+            try {
+                metrics.record(this, success);
+            } finally {
+                this.metrics = null;
+                this.table = null;
+                this.filter = null;
+                this.sql = null;
+            }
+        }
+    }
+
+    /**
+     * 一张表上一种操作的统计。
+     */
+    public static final class OperationStats {
+
+        private final String table;
+        private final Operation operation;
+        private final Histogram total = new Histogram();
+        private final Histogram lockWait = new Histogram();
+        private final Histogram sql = new Histogram();
+        private final Histogram codec = new Histogram();
+        private final AtomicLong rowsScanned = new AtomicLong();
+        private final AtomicLong rowsReturned = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+
+        OperationStats(String table, Operation operation) {
+            this.table = table;
+            this.operation = operation;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public Operation getOperation() {
+            return operation;
+        }
+
+        /**
+         * 总耗时的分布，其中的次数即为执行次数。
+         */
+        public Histogram getTotal() {
+            return total;
+        }
+
+        public Histogram getLockWait() {
+            return lockWait;
+        }
+
+        public Histogram getSql() {
+            return sql;
+        }
+
+        public Histogram getCodec() {
+            return codec;
+        }
+
+        /**
+         * 从SQLite读取的总行数。与{@link #getRowsReturned()}相差越大，说明越多的筛选在Java层完成。
+         */
+        public long getRowsScanned() {
+            return rowsScanned.get();
+        }
+
+        public long getRowsReturned() {
+            return rowsReturned.get();
+        }
+
+        public long getFailures() {
+            return failures.get();
+        }
+
+        @Override
+        public String toString() {
+            return table + "." + operation + ": total=" + total + ", lockWait=" + lockWait + ", sql=" + sql
+                    + ", codec=" + codec + ", rows=" + rowsReturned.get() + "/" + rowsScanned.get()
+                    + ", failures=" + failures.get();
+        }
+    }
+
+    /**
+     * 耗时分布。按2的幂划分区间，第i个区间记录[2^(i-1), 2^i)纳秒的次数，百分位数取所在区间的上界。
+     */
+    public static final class Histogram {
+
+        private static final int BUCKETS = 64;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+            buckets.incrementAndGet(Math.min(BUCKETS - Long.numberOfLeadingZeros(nanos), BUCKETS - 1));
+            count.incrementAndGet();
+            sum.addAndGet(nanos);
+            long current;
+            while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+                //并发更新时重试
+            }
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getTotalNanos() {
+            return sum.get();
+        }
+
+        public long getMaxNanos() {
+            return max.get();
+        }
+
+        public long getMeanNanos() {
+            long count = this.count.get();
+            return count == 0 ? 0 : sum.get() / count;
+        }
+
+        /**
+         * 百分位数的近似值（所在区间的上界，不超过最大值）。
+         * @param percentile 0到100之间。
+         */
+        public long getPercentileNanos(double percentile) {
+            long count = this.count.get();
+            if (count == 0) return 0;
+            long rank = (long) Math.ceil(count * Math.min(Math.max(percentile, 0), 100) / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank && seen > 0) {
+                    long upper = i == 0 ? 0 : i >= BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+                    return Math.min(upper, max.get());
+                }
+            }
+            return max.get();
+        }
+
+        @Override
+        public String toString() {
+            return "{n=" + count.get() + ", mean=" + getMeanNanos() + "ns, p50=" + getPercentileNanos(50)
+                    + "ns, p99=" + getPercentileNanos(99) + "ns, max=" + max.get() + "ns}";
+        }
+    }
+}
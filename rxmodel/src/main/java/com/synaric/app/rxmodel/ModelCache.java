@@ -0,0 +1,100 @@
+package com.synaric.app.rxmodel;
+
+import android.util.LruCache;
+
+/**
+ * 对象模型的LRU缓存，以_id为key。
+ * 缓存在读取时填充，在写入时失效。为避免读取与写入并发时把旧数据放回缓存，每次失效都会增加版本号，
+ * 读取开始前记录的版本号与放入时不一致时，放弃放入。
+ * 开启缓存后，{@link DbModel#get(String)}等方法返回的对象可能被多个调用方共享，不应直接修改。
+ */
+public final class ModelCache<T> {
+
+    private final LruCache<String, T> cache;
+    private volatile long version;
+
+    ModelCache(int maxSize, final Weigher<? super T> weigher) {
+        cache = new LruCache<String, T>(maxSize) {
+            @Override
+            protected int sizeOf(String key, T value) {
+                return weigher == null ? 1 : weigher.weigh(value);
+            }
+        };
+    }
+
+    T get(String id) {
+        return id == null ? null : cache.get(id);
+    }
+
+    /**
+     * 获取当前版本号，在读取数据库之前调用。
+     */
+    long version() {
+        return version;
+    }
+
+    /**
+     * 如果读取期间缓存没有失效过，放入缓存。
+     * @param version 读取数据库之前通过{@link #version()}获取的版本号。
+     */
+    synchronized void put(long version, String id, T t) {
+        if (id == null || t == null || version != this.version) return;
+        cache.put(id, t);
+    }
+
+    synchronized void invalidate(String id) {
+        ++version;
+        if (id != null) cache.remove(id);
+    }
+
+    synchronized void invalidateAll() {
+        ++version;
+        cache.evictAll();
+    }
+
+    /**
+     * 命中次数。
+     */
+    public int getHitCount() {
+        return cache.hitCount();
+    }
+
+    /**
+     * 未命中次数。
+     */
+    public int getMissCount() {
+        return cache.missCount();
+    }
+
+    /**
+     * 因超出容量被淘汰的次数。
+     */
+    public int getEvictionCount() {
+        return cache.evictionCount();
+    }
+
+    /**
+     * 当前缓存的大小（没有设置{@link Weigher}时为对象数）。
+     */
+    public int getSize() {
+        return cache.size();
+    }
+
+    public int getMaxSize() {
+        return cache.maxSize();
+    }
+
+    @Override
+    public String toString() {
+        return "ModelCache{hit=" + getHitCount() + ", miss=" + getMissCount()
+                + ", eviction=" + getEvictionCount() + ", size=" + getSize() + "/" + getMaxSize() + "}";
+    }
+
+    /**
+     * 计算对象模型在缓存中占用的大小。
+     */
+    public interface Weigher<T> {
+
+        int weigh(T t);
+    }
+}
@@ -0,0 +1,125 @@
+package com.synaric.app.rxmodel;
+
+import android.util.Base64;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * 键集分页的一页数据。
+ * 通过{@link #getNextToken()}获取下一页的续页标记，传给{@link DbModel#page(com.synaric.app.rxmodel.filter.Filter, String, int)}
+ * 读取下一页。续页标记记录了本页最后一条数据的排序键，读取下一页时直接从该位置继续，不需要跳过前面的数据。
+ */
+public final class Page<T> {
+
+    private final List<T> items;
+    private final String nextToken;
+
+    Page(List<T> items, String nextToken) {
+        this.items = items;
+        this.nextToken = nextToken;
+    }
+
+    /**
+     * 本页的数据。
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * 下一页的续页标记，没有更多数据时为null。
+     */
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    public boolean hasNext() {
+        return nextToken != null;
+    }
+
+    /**
+     * 续页标记：排序字段、最后一条数据的排序键和_id。
+     * 排序键保留SQLite中的类型（整数、小数、字符串），以便生成相同类型的比较条件。
+     */
+    static final class Token {
+
+        private static final Charset UTF_8 = Charset.forName("UTF-8");
+        private static final int FLAGS = Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING;
+
+        final String field;
+        final Object key;
+        final String id;
+
+        Token(String field, Object key, String id) {
+            this.field = field;
+            this.key = key;
+            this.id = id;
+        }
+
+        String encode() {
+            JsonArray array = new JsonArray();
+            array.add(field == null ? "" : field);
+            if (key == null) {
+                array.add("n");
+                array.add("");
+            } else if (key instanceof Long) {
+                array.add("i");
+                array.add(key.toString());
+            } else if (key instanceof Double) {
+                array.add("r");
+                array.add(key.toString());
+            } else {
+                array.add("s");
+                array.add(key.toString());
+            }
+            array.add(id);
+            byte[] bytes = array.toString().getBytes(UTF_8);
+            return Base64.encodeToString(bytes, FLAGS);
+        }
+
+        /**
+         * @param field 本次查询的排序字段，与续页标记中的字段不一致时抛出异常。
+         */
+        static Token decode(String token, String field) {
+            try {
+                byte[] bytes = Base64.decode(token, FLAGS);
+                JsonArray array = new JsonParser()
+                        .parse(new String(bytes, UTF_8))
+                        .getAsJsonArray();
+                String tokenField = array.get(0).getAsString();
+                if (!tokenField.equals(field == null ? "" : field)) {
+                    throw new IllegalArgumentException("Page token was created for field \"" + tokenField
+                            + "\", not \"" + (field == null ? "" : field) + "\".");
+                }
+                String kind = array.get(1).getAsString();
+                String value = array.get(2).getAsString();
+                Object key;
+                switch (kind) {
+                    case "n":
+                        key = null;
+                        break;
+                    case "i":
+                        key = Long.parseLong(value);
+                        break;
+                    case "r":
+                        key = Double.parseDouble(value);
+                        break;
+                    case "s":
+                        key = value;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Invalid page token: " + token);
+                }
+                return new Token(field, key, array.get(3).getAsString());
+            } catch (IllegalArgumentException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid page token: " + token, e);
+            }
+        }
+    }
+}
@@ -1,13 +1,40 @@
 package com.synaric.app.rxmodel;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 import android.util.Log;
 
+import com.google.gson.Gson;
+import com.synaric.app.rxmodel.utils.ParallelDecoder;
+import com.synaric.app.rxmodel.utils.RxUtils;
+import com.synaric.app.rxmodel.utils.StatementCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import rx.Observable;
+import rx.Scheduler;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
+import rx.subjects.SerializedSubject;
+
 /**
  * 装饰类，提供数据库操作的总控制。
  * Created by Synaric on 2016/8/23 0023.
@@ -23,36 +50,407 @@ public final class RxModel {
     private SQLiteOpenHelper devHelper;
     private SQLiteDatabase database;
     private ReadWriteLock lock;
+    private boolean jsonSupported;
+    private WriteBehindQueue writeBehindQueue;
+    private LockManager lockManager;
+    private Metrics metrics;
+    private SlowOperationLog slowOperationLog;
+    private ParallelDecoder parallelDecoder;
+    private Gson gson;
+    private Scheduler readScheduler;
+    private Scheduler writeScheduler;
+    private Scheduler resultScheduler;
+    private volatile boolean closed;
+
+    /**
+     * RxModel创建的线程池，关闭时停止。
+     */
+    private final List<ExecutorService> executors = new ArrayList<>();
+
+    /**
+     * 各个DbModel的预编译语句缓存，关闭时关闭其中的语句。不阻止DbModel被回收。
+     */
+    private final Set<StatementCache> statementCaches =
+            Collections.newSetFromMap(new WeakHashMap<StatementCache, Boolean>());
+
+    /**
+     * 表变化通知总线：写操作提交后发送被修改的表名。
+     */
+    private final SerializedSubject<String, String> tableChanges =
+            PublishSubject.<String>create().toSerialized();
+
+    /**
+     * 当前线程上通过{@link #syncRunInTransaction(Callable)}开启的事务，没有时为null。
+     */
+    private final ThreadLocal<TransactionState> transaction = new ThreadLocal<>();
+
+    /**
+     * 空闲的只读连接。
+     */
+    private BlockingQueue<SQLiteDatabase> readers;
 
     private RxModel(Builder builder) {
         context = builder.context;
         dbName = builder.dbName;
+        gson = builder.gson != null ? builder.gson : new Gson();
         devHelper = new DevHelper(context, dbName, null, VERSION);
         database = devHelper.getWritableDatabase();
         lock = new ReentrantReadWriteLock();
+        boolean wal = database.enableWriteAheadLogging();
+        lockManager = new LockManager(!wal);
+        if (builder.slowOperationCapacity > 0) {
+            slowOperationLog = new SlowOperationLog(builder.slowOperationThresholdMillis,
+                    builder.slowOperationCapacity, builder.slowOperationMaxScanRatio);
+        }
+        metrics = new Metrics(lockManager, builder.metricsListener, slowOperationLog);
+        readers = new ArrayBlockingQueue<>(Math.max(builder.readerConnections, 1));
+        if (wal && dbName != null) {
+            openReaders(builder.readerConnections);
+        }
+        jsonSupported = checkJsonSupported(database);
+        if (builder.readScheduler != null) {
+            readScheduler = builder.readScheduler;
+        } else if (readers.isEmpty()) {
+            //没有只读连接时，查询在写连接上并发执行，与之前一样使用IO线程
+            readScheduler = Schedulers.io();
+        } else {
+            readScheduler = Schedulers.from(newExecutor("RxModel-Reader", readers.size()));
+        }
+        writeScheduler = builder.writeScheduler != null ? builder.writeScheduler
+                : Schedulers.from(newExecutor("RxModel-Writer", 1));
+        resultScheduler = builder.resultSchedulerSet ? builder.resultScheduler : AndroidSchedulers.mainThread();
+        if (builder.decodeThreads > 0) {
+            parallelDecoder = new ParallelDecoder(newExecutor("RxModel-Decoder", builder.decodeThreads),
+                    builder.decodeThreads, builder.decodeChunkSize, builder.decodeOrdered);
+        }
+        if (builder.writeBehindBatchSize > 0) {
+            writeBehindQueue = new WriteBehindQueue(this, builder.writeBehindBatchSize, builder.writeBehindWindowMillis);
+        }
     }
 
     /**
-     * 获取未被锁定的数据库。
+     * 获取用于写入的数据库连接。WAL在打开数据库时已经配置。
      */
     public SQLiteDatabase getDataBase() {
         try {
-            SQLiteDatabase db = devHelper.getWritableDatabase();
-            db.enableWriteAheadLogging();
-            return db;
+            return devHelper.getWritableDatabase();
         } catch (Exception e) {
             e.printStackTrace();
             return null;
         }
     }
 
+    /**
+     * 借出一个用于读取的数据库连接，使用完毕后必须通过{@link #releaseReader(SQLiteDatabase)}归还。
+     * 如果当前线程正在写连接上执行事务，返回写连接，以便读到事务中尚未提交的修改；
+     * 如果没有空闲的只读连接，也返回写连接（开启WAL时，写连接自身也支持并发读）。
+     */
+    public SQLiteDatabase acquireReader() {
+        SQLiteDatabase writer = getDataBase();
+        if (writer == null || (writer.inTransaction() && writer.isDbLockedByCurrentThread())) return writer;
+        SQLiteDatabase reader = readers.poll();
+        return reader != null ? reader : writer;
+    }
+
+    /**
+     * 归还通过{@link #acquireReader()}借出的连接。
+     */
+    public void releaseReader(SQLiteDatabase db) {
+        if (db == null || db == database) return;
+        readers.offer(db);
+        //已经关闭时，归还的连接不会再被借出
+        if (closed && readers.remove(db)) db.close();
+    }
+
     /**
      * 获取全局读写锁。
+     * @deprecated DbModel已经改为使用{@link #getLockManager()}中按表划分的锁，这个锁不再被任何操作使用。
      */
+    @Deprecated
     public ReadWriteLock getGlobalLock() {
         return lock;
     }
 
+    /**
+     * 获取按表划分的锁管理器，可以从中读取每张表的锁等待统计（也可以通过{@link Metrics#getLockStats()}读取）。
+     */
+    public LockManager getLockManager() {
+        return lockManager;
+    }
+
+    /**
+     * 获取运行统计：按表和操作类型划分的耗时分布、扫描行数、失败次数和事务数。
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 获取慢操作日志，没有通过{@link Builder#slowOperationLog(long, int, int)}开启时为null。
+     */
+    public SlowOperationLog getSlowOperationLog() {
+        return slowOperationLog;
+    }
+
+    /**
+     * 获取并行解析查询结果的解析器，没有通过{@link Builder#parallelDecode(int, int, boolean)}开启时为null。
+     */
+    ParallelDecoder getParallelDecoder() {
+        return parallelDecoder;
+    }
+
+    /**
+     * SQLite是否支持JSON1扩展。支持时，筛选条件可以通过json_extract在SQL中执行。
+     */
+    public boolean isJsonSupported() {
+        return jsonSupported;
+    }
+
+    /**
+     * 获取所有DbModel共享的Gson，用于Json格式的文档模型转换。
+     */
+    public Gson getGson() {
+        return gson;
+    }
+
+    /**
+     * 执行查询的线程。默认在打开了只读连接时为线程数与只读连接数相同的线程池，否则为{@link Schedulers#io()}。
+     */
+    public Scheduler getReadScheduler() {
+        return readScheduler;
+    }
+
+    /**
+     * 执行写操作的线程，默认为单线程：写操作依次执行，不需要在锁上排队。
+     */
+    public Scheduler getWriteScheduler() {
+        return writeScheduler;
+    }
+
+    /**
+     * 回调结果的线程，默认为主线程；为null时在执行操作的线程上直接回调。
+     */
+    public Scheduler getResultScheduler() {
+        return resultScheduler;
+    }
+
+    /**
+     * 在一个事务中执行多个操作，参见{@link #syncRunInTransaction(Callable)}。
+     * 在{@link #getWriteScheduler()}上执行，在{@link #getResultScheduler()}上回调结果。事务回滚时结果为null。
+     */
+    public <K> Observable<K> runInTransaction(final Callable<K> task) {
+        return RxUtils.makeModelObservable(new Callable<K>() {
+            @Override
+            public K call() throws Exception {
+                return syncRunInTransaction(task);
+            }
+        }, writeScheduler, resultScheduler);
+    }
+
+    /**
+     * 在写连接上的一个事务中执行多个操作，所有操作一起提交（只需要一次fsync），或者一起回滚。
+     * task中调用任意DbModel的同步方法（syncSave、syncDelete、syncUpdateAll等）都会加入这个事务，不再单独开启事务，
+     * 也不会进入延迟写入队列；嵌套调用runInTransaction同样加入外层事务。
+     * 事务中的写操作对其他线程不可见，直到事务提交；事务期间其他线程的写操作会等待。
+     * 注意：task中应当只调用同步方法，返回Observable的方法在其他线程上执行，不会加入这个事务。
+     * @param task 在事务中执行的操作。抛出异常，或者其中任意DbModel操作失败时，整个事务回滚。
+     * @return task的返回值；事务回滚时返回null。
+     */
+    public <K> K syncRunInTransaction(Callable<K> task) {
+        if (transaction.get() != null) {
+            //加入外层事务
+            try {
+                return task.call();
+            } catch (Exception e) {
+                e.printStackTrace();
+                markTransactionFailed();
+                return null;
+            }
+        }
+
+        SQLiteDatabase db = getDataBase();
+        if (db == null) return null;
+        TransactionState state = new TransactionState();
+        transaction.set(state);
+        boolean committed = false;
+        K result = null;
+        try {
+            db.beginTransaction();
+            try {
+                result = task.call();
+                if (!state.failed) db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            committed = !state.failed;
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            transaction.remove();
+            metrics.onTransaction(committed);
+            //无论提交还是回滚，都要使事务中读写过的缓存失效
+            for (Runnable runnable : state.afterTransaction) {
+                runnable.run();
+            }
+        }
+        return committed ? result : null;
+    }
+
+    /**
+     * 当前线程是否在{@link #syncRunInTransaction(Callable)}开启的事务中。
+     */
+    public boolean inTransaction() {
+        return transaction.get() != null;
+    }
+
+    /**
+     * 标记当前线程上的事务失败，事务结束时回滚。由事务中失败的DbModel操作调用。
+     */
+    void markTransactionFailed() {
+        TransactionState state = transaction.get();
+        if (state != null) state.failed = true;
+    }
+
+    /**
+     * 在当前线程上的事务结束（提交或回滚）后执行；在延迟写入的批次中时，批次结束后执行；都不在时立即执行。
+     */
+    void runAfterTransaction(Runnable runnable) {
+        TransactionState state = transaction.get();
+        if (state != null) {
+            state.afterTransaction.add(runnable);
+        } else if (writeBehindQueue != null && writeBehindQueue.isCommitThread()) {
+            writeBehindQueue.runAfterBatch(runnable);
+        } else {
+            runnable.run();
+        }
+    }
+
+    /**
+     * 监听表的变化。每次写操作提交后，发送被修改的表名。通知在提交写操作的线程上发送。
+     */
+    public Observable<String> observeTableChanges() {
+        return tableChanges.asObservable();
+    }
+
+    /**
+     * 通知指定的表已经被修改，由DbModel的写操作在提交后调用。
+     */
+    void notifyTableChanged(String table) {
+        tableChanges.onNext(table);
+    }
+
+    /**
+     * 获取延迟写入队列，未开启延迟写入时返回null。
+     */
+    WriteBehindQueue getWriteBehindQueue() {
+        return writeBehindQueue;
+    }
+
+    /**
+     * 立即提交延迟写入队列中的所有写操作，阻塞直到提交完成。未开启延迟写入时什么也不做。
+     */
+    public void flushWrites() {
+        if (writeBehindQueue != null) writeBehindQueue.flushAndWait();
+    }
+
+    /**
+     * 关闭RxModel：提交延迟写入队列中的写操作，停止RxModel创建的线程池，关闭预编译语句、只读连接和写连接。
+     * 关闭后不应再使用这个RxModel以及通过它创建的DbModel。正在借出的只读连接在归还时关闭。
+     */
+    public void close() {
+        if (closed) return;
+        closed = true;
+        if (writeBehindQueue != null) writeBehindQueue.shutdown();
+        for (ExecutorService executor : executors) {
+            executor.shutdown();
+        }
+        synchronized (statementCaches) {
+            for (StatementCache cache : statementCaches) {
+                cache.close();
+            }
+            statementCaches.clear();
+        }
+        SQLiteDatabase reader;
+        while ((reader = readers.poll()) != null) {
+            reader.close();
+        }
+        devHelper.close();
+    }
+
+    /**
+     * 登记DbModel的预编译语句缓存，在{@link #close()}时关闭。
+     */
+    void registerStatementCache(StatementCache cache) {
+        synchronized (statementCaches) {
+            statementCaches.add(cache);
+        }
+    }
+
+    /**
+     * RxModel是否已经关闭。
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 打开只读连接。连接以读写方式打开（只读方式打开的连接在部分版本上无法读取WAL），
+     * 同时声明WAL，使连接与写连接使用相同的日志模式和连接配置；通过query_only禁止写入。
+     */
+    private void openReaders(int count) {
+        String path = context.getDatabasePath(dbName).getPath();
+        int flags = SQLiteDatabase.OPEN_READWRITE;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            flags |= SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING;
+        }
+        for (int i = 0; i < count; i++) {
+            try {
+                SQLiteDatabase reader = SQLiteDatabase.openDatabase(path, null, flags);
+                Cursor cursor = reader.rawQuery("pragma query_only = 1", null);
+                cursor.moveToFirst();
+                cursor.close();
+                readers.offer(reader);
+            } catch (SQLiteException e) {
+                Log.d("RxModel", "Failed to open reader connection: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private ExecutorService newExecutor(final String name, int threads) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executors.add(executor);
+        return executor;
+    }
+
+    private static boolean checkJsonSupported(SQLiteDatabase db) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("select json_extract('{\"a\":1}', '$.a')", null);
+            return cursor.moveToFirst() && cursor.getInt(0) == 1;
+        } catch (SQLiteException e) {
+            Log.d("RxModel", "JSON1 extension is not available.");
+            return false;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    private static final class TransactionState {
+
+        private boolean failed;
+        private final List<Runnable> afterTransaction = new ArrayList<>();
+    }
+
     private static class DevHelper extends SQLiteOpenHelper {
 
         public DevHelper(Context context, String name, SQLiteDatabase.CursorFactory factory, int version) {
@@ -74,6 +472,21 @@ public final class RxModel {
 
         private Context context;
         private String dbName;
+        private int writeBehindBatchSize;
+        private long writeBehindWindowMillis;
+        private int readerConnections;
+        private Gson gson;
+        private Scheduler readScheduler;
+        private Scheduler writeScheduler;
+        private Scheduler resultScheduler;
+        private boolean resultSchedulerSet;
+        private Metrics.Listener metricsListener;
+        private long slowOperationThresholdMillis;
+        private int slowOperationCapacity;
+        private int slowOperationMaxScanRatio;
+        private int decodeThreads;
+        private int decodeChunkSize;
+        private boolean decodeOrdered;
 
         public Builder(Context context) {
             this.context = context;
@@ -87,6 +500,116 @@ public final class RxModel {
             return this;
         }
 
+        /**
+         * 设置所有DbModel共享的Gson，可以在其中注册TypeAdapter、字段命名策略等。默认为new Gson()。
+         * 已有数据的表不应改变Json的格式（例如字段命名策略）。
+         * 筛选条件、排序、索引、投影中的字段路径始终是Java字段名，在SQL中按这里的字段命名策略和{@code @SerializedName}转换为Json名称。
+         */
+        public Builder gson(Gson gson) {
+            this.gson = gson;
+            return this;
+        }
+
+        /**
+         * 设置只读连接的数量，默认为0。
+         * 查询操作优先使用空闲的只读连接，写操作始终使用唯一的写连接，多个只读连接可以在不同线程上并行查询。
+         * 只在开启了WAL的文件数据库上生效；为0时所有操作使用写连接（其内部在WAL下同样支持少量并发读）。
+         */
+        public Builder readerConnections(int readerConnections) {
+            if (readerConnections < 0) throw new IllegalArgumentException("readerConnections must >= 0.");
+            this.readerConnections = readerConnections;
+            return this;
+        }
+
+        /**
+         * 设置执行查询的线程。默认在打开了只读连接时为线程数与只读连接数相同的线程池，每个线程都能借到一个只读连接；
+         * 没有只读连接时为{@link Schedulers#io()}。
+         */
+        public Builder readScheduler(Scheduler readScheduler) {
+            this.readScheduler = readScheduler;
+            return this;
+        }
+
+        /**
+         * 设置执行写操作的线程。默认为单线程，写操作依次提交，不需要在表的写锁上排队。
+         * 改为多线程的Scheduler时，写操作仍然由写锁保证互斥。
+         */
+        public Builder writeScheduler(Scheduler writeScheduler) {
+            this.writeScheduler = writeScheduler;
+            return this;
+        }
+
+        /**
+         * 设置回调结果的线程，默认为主线程。
+         * 传入null表示不切换线程，直接在执行操作的线程上回调，适合结果交给其他后台流程继续处理的情况。
+         */
+        public Builder resultScheduler(Scheduler resultScheduler) {
+            this.resultScheduler = resultScheduler;
+            this.resultSchedulerSet = true;
+            return this;
+        }
+
+        /**
+         * 设置运行统计的监听器，逐次接收每个操作的耗时和行数，例如用于上报慢操作。
+         * 不设置时统计仍然会记录，可以通过{@link RxModel#getMetrics()}读取。
+         */
+        public Builder metricsListener(Metrics.Listener metricsListener) {
+            this.metricsListener = metricsListener;
+            return this;
+        }
+
+        /**
+         * 开启慢操作日志。耗时不少于thresholdMillis的操作记录表名、筛选器的类名、耗时、扫描和返回的行数以及执行的SQL，
+         * 保存在最多capacity条的环形缓冲区中；扫描行数超过返回行数的maxScanRatio倍时标记为扫描放大。
+         * @param thresholdMillis 慢操作的阈值，单位毫秒。
+         * @param capacity 最多保存的记录数。
+         * @param maxScanRatio 扫描行数与返回行数之比的上限。
+         */
+        public Builder slowOperationLog(long thresholdMillis, int capacity, int maxScanRatio) {
+            if (thresholdMillis < 0) throw new IllegalArgumentException("thresholdMillis must >= 0.");
+            if (capacity <= 0) throw new IllegalArgumentException("capacity must > 0.");
+            if (maxScanRatio <= 0) throw new IllegalArgumentException("maxScanRatio must > 0.");
+            this.slowOperationThresholdMillis = thresholdMillis;
+            this.slowOperationCapacity = capacity;
+            this.slowOperationMaxScanRatio = maxScanRatio;
+            return this;
+        }
+
+        /**
+         * 开启并行解析。{@link DbModel#query}和{@link DbModel#queryAll()}读取大量数据时，
+         * 执行查询的线程按块读取原始的文档模型，交给threads个解析线程并行解析并执行{@link com.synaric.app.rxmodel.filter.Filter#doIterativeFilter(Object)}。
+         * 筛选范围（start、limit）仍然有效。不足一块的结果直接在执行查询的线程上解析。
+         * 开启后筛选器和转换器会在多个线程上同时使用，必须是线程安全的。
+         * @param threads 解析线程数。
+         * @param chunkSize 每块的行数。
+         * @param ordered 是否保持查询结果的顺序。为false时各块按解析完成的先后合并，没有声明排序的查询结果顺序不确定，
+         *                有limit时取到的是先解析完成的数据。
+         */
+        public Builder parallelDecode(int threads, int chunkSize, boolean ordered) {
+            if (threads <= 0) throw new IllegalArgumentException("threads must > 0.");
+            if (chunkSize <= 0) throw new IllegalArgumentException("chunkSize must > 0.");
+            this.decodeThreads = threads;
+            this.decodeChunkSize = chunkSize;
+            this.decodeOrdered = ordered;
+            return this;
+        }
+
+        /**
+         * 开启延迟写入。所有DbModel的save、insert、delete等写操作先进入队列，
+         * 队列中的操作数达到maxBatchSize，或者第一个操作入队后经过windowMillis毫秒时，在同一个事务中批量提交。
+         * 对同一个_id的连续save会被合并。写操作返回的Observable（以及同步方法）在所在批次提交后才会返回结果。
+         * 注意：提交之前，查询不会看到队列中的写操作。
+         * @param maxBatchSize 每批最多的写操作数。
+         * @param windowMillis 最长等待时间，单位毫秒。
+         */
+        public Builder writeBehind(int maxBatchSize, long windowMillis) {
+            if (maxBatchSize <= 0) throw new IllegalArgumentException("maxBatchSize must > 0.");
+            if (windowMillis < 0) throw new IllegalArgumentException("windowMillis must >= 0.");
+            this.writeBehindBatchSize = maxBatchSize;
+            this.writeBehindWindowMillis = windowMillis;
+            return this;
+        }
+
         /**
          * 构建RxModel控制总线。
          */
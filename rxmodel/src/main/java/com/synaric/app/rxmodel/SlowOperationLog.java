@@ -0,0 +1,196 @@
+package com.synaric.app.rxmodel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 慢操作日志，通过{@link RxModel.Builder#slowOperationLog(long, int, int)}开启，{@link RxModel#getSlowOperationLog()}获取。
+ * 耗时超过阈值的操作记录到固定大小的环形缓冲区中，缓冲区满后覆盖最早的记录，可以随时读取或者导出。
+ * 扫描行数超过返回行数一定倍数的操作会被标记为扫描放大，通常说明筛选条件没有翻译为SQL，或者缺少索引。
+ * 只有超过阈值的操作才会产生记录对象，未超过阈值的操作没有额外开销。
+ */
+public final class SlowOperationLog {
+
+    private final long thresholdNanos;
+    private final int maxScanRatio;
+    private final Entry[] entries;
+    private int next;
+    private long total;
+
+    SlowOperationLog(long thresholdMillis, int capacity, int maxScanRatio) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(thresholdMillis, 0));
+        this.maxScanRatio = Math.max(maxScanRatio, 1);
+        this.entries = new Entry[capacity];
+    }
+
+    /**
+     * 慢操作的阈值，单位毫秒。
+     */
+    public long getThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+    }
+
+    /**
+     * 扫描行数与返回行数之比超过该值时，标记为扫描放大。
+     */
+    public int getMaxScanRatio() {
+        return maxScanRatio;
+    }
+
+    /**
+     * 缓冲区中的记录，从早到晚排列。
+     */
+    public synchronized List<Entry> getEntries() {
+        List<Entry> result = new ArrayList<>(entries.length);
+        for (int i = 0; i < entries.length; i++) {
+            Entry entry = entries[(next + i) % entries.length];
+            if (entry != null) result.add(entry);
+        }
+        return result;
+    }
+
+    /**
+     * 记录过的慢操作总数，包括已经被覆盖的记录。
+     */
+    public synchronized long getTotalCount() {
+        return total;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < entries.length; i++) entries[i] = null;
+        next = 0;
+    }
+
+    /**
+     * 以文本形式导出缓冲区中的记录，每行一条。
+     */
+    public String dump() {
+        List<Entry> entries = getEntries();
+        StringBuilder sBuilder = new StringBuilder("SlowOperationLog{threshold=").append(getThresholdMillis())
+                .append("ms, total=").append(getTotalCount()).append(", buffered=").append(entries.size()).append("}");
+        for (Entry entry : entries) {
+            sBuilder.append("\n  ").append(entry);
+        }
+        return sBuilder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return dump();
+    }
+
+    boolean isSlow(long elapsedNanos) {
+        return elapsedNanos >= thresholdNanos;
+    }
+
+    void record(String table, Metrics.Operation operation, String filterClass, String sql,
+                long elapsedNanos, int rowsScanned, int rowsReturned, boolean success) {
+        boolean amplified = rowsScanned > (long) Math.max(rowsReturned, 1) * maxScanRatio;
+        Entry entry = new Entry(System.currentTimeMillis(), table, operation, filterClass, sql,
+                elapsedNanos, rowsScanned, rowsReturned, amplified, success);
+        synchronized (this) {
+            entries[next] = entry;
+            next = (next + 1) % entries.length;
+            ++total;
+        }
+    }
+
+    /**
+     * 一条慢操作记录。
+     */
+    public static final class Entry {
+
+        private final long timestamp;
+        private final String table;
+        private final Metrics.Operation operation;
+        private final String filterClass;
+        private final String sql;
+        private final long elapsedNanos;
+        private final int rowsScanned;
+        private final int rowsReturned;
+        private final boolean scanAmplified;
+        private final boolean success;
+
+        Entry(long timestamp, String table, Metrics.Operation operation, String filterClass, String sql,
+              long elapsedNanos, int rowsScanned, int rowsReturned, boolean scanAmplified, boolean success) {
+            this.timestamp = timestamp;
+            this.table = table;
+            this.operation = operation;
+            this.filterClass = filterClass;
+            this.sql = sql;
+            this.elapsedNanos = elapsedNanos;
+            this.rowsScanned = rowsScanned;
+            this.rowsReturned = rowsReturned;
+            this.scanAmplified = scanAmplified;
+            this.success = success;
+        }
+
+        /**
+         * 操作结束的时间，即{@link System#currentTimeMillis()}。
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public Metrics.Operation getOperation() {
+            return operation;
+        }
+
+        /**
+         * 筛选器的类名，没有筛选器时为null。
+         */
+        public String getFilterClass() {
+            return filterClass;
+        }
+
+        /**
+         * 最后执行的SQL，没有执行带筛选条件的SQL时为null。
+         */
+        public String getSql() {
+            return sql;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * 从SQLite读取并解析的行数。
+         */
+        public int getRowsScanned() {
+            return rowsScanned;
+        }
+
+        /**
+         * 满足条件并返回的行数。
+         */
+        public int getRowsReturned() {
+            return rowsReturned;
+        }
+
+        /**
+         * 扫描行数与返回行数之比是否超过{@link SlowOperationLog#getMaxScanRatio()}。
+         */
+        public boolean isScanAmplified() {
+            return scanAmplified;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        @Override
+        public String toString() {
+            return table + "." + operation + " " + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "ms"
+                    + ", rows=" + rowsReturned + "/" + rowsScanned + (scanAmplified ? " [scan amplified]" : "")
+                    + (success ? "" : " [failed]")
+                    + (filterClass == null ? "" : ", filter=" + filterClass)
+                    + (sql == null ? "" : ", sql=" + sql);
+        }
+    }
+}
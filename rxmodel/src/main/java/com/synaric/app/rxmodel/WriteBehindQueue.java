@@ -0,0 +1,332 @@
+package com.synaric.app.rxmodel;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import com.synaric.app.rxmodel.utils.RxUtils;
+import com.synaric.app.rxmodel.utils.SqlUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import rx.Observable;
+import rx.Subscriber;
+
+/**
+ * 延迟写入队列。
+ * 所有DbModel的写操作先进入队列，当队列中的操作数达到{@link #maxBatchSize}，或者第一个操作入队后经过
+ * {@link #windowMillis}毫秒时，在同一个事务中依次执行并提交。这样一批写操作只需要一次提交（一次fsync）。
+ * 对同一张表、同一个_id的连续保存会被合并，只执行最后一次保存。
+ * 每个操作的结果在所在批次提交后才会回调。每个操作在各自的保存点中执行，失败的操作只回滚自身，不影响同一批次的其他操作。
+ * 批次提交后，在提交线程上使相关的缓存失效并通知表的变化，与调用方是否仍在订阅结果无关。
+ */
+final class WriteBehindQueue {
+
+    private static final String SAVEPOINT = "SAVEPOINT rxmodel_write";
+    private static final String RELEASE_SAVEPOINT = "RELEASE rxmodel_write";
+
+    /**
+     * SQLiteDatabase按照SQL的前3个字符识别语句，以"ROL"开头的语句会被当作结束整个事务，加上注释使其作为普通语句执行。
+     */
+    private static final String ROLLBACK_TO_SAVEPOINT = "/* savepoint */ ROLLBACK TO rxmodel_write";
+
+    private final RxModel rxModel;
+    private final int maxBatchSize;
+    private final long windowMillis;
+    private final ScheduledExecutorService executor;
+
+    private final Object lock = new Object();
+    private List<PendingWrite<?>> pending = new ArrayList<>();
+
+    /**
+     * 合并键 -> 队列中可以被合并的操作。遇到不可合并的操作时清空，保证合并不会越过它改变执行顺序。
+     */
+    private Map<String, PendingWrite<?>> coalescable = new HashMap<>();
+    private boolean flushScheduled;
+    private boolean shutdown;
+
+    /**
+     * 执行批次的线程。
+     */
+    private volatile Thread thread;
+
+    /**
+     * 批次执行期间，在批次中直接执行的写操作提交后需要执行的操作，只在{@link #thread}上访问。
+     */
+    private List<Runnable> afterBatch = new ArrayList<>();
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    WriteBehindQueue(RxModel rxModel, int maxBatchSize, long windowMillis) {
+        if (maxBatchSize <= 0) throw new IllegalArgumentException("maxBatchSize must > 0.");
+        if (windowMillis < 0) throw new IllegalArgumentException("windowMillis must >= 0.");
+        this.rxModel = rxModel;
+        this.maxBatchSize = maxBatchSize;
+        this.windowMillis = windowMillis;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "RxModel-WriteBehind");
+                thread.setDaemon(true);
+                WriteBehindQueue.this.thread = thread;
+                return thread;
+            }
+        });
+        //shutdown时立即提交，不再等待尚未到期的提交
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.executor = executor;
+    }
+
+    /**
+     * 创建一个写操作的Observable，订阅时入队，所在批次提交后发送结果并结束。结果在{@link RxModel#getResultScheduler()}上回调。
+     * @param key 合并键，为null表示该操作不可合并。
+     * @param write 写操作，在批次的事务中执行。
+     * @param defaultValue 事务提交失败时的结果。
+     * @param afterCommit 所在批次结束（提交或回滚）后在提交线程上执行，例如使缓存失效，可以为null。
+     */
+    <K> Observable<K> enqueue(final String key,
+                              final Callable<K> write,
+                              final K defaultValue,
+                              final Runnable afterCommit) {
+        return RxUtils.observeOn(Observable.create(new Observable.OnSubscribe<K>() {
+            @Override
+            public void call(final Subscriber<? super K> subscriber) {
+                add(key, write, defaultValue, afterCommit, new OnCommitted<K>() {
+                    @Override
+                    public void onCommitted(K result) {
+                        subscriber.onNext(result);
+                        subscriber.onCompleted();
+                    }
+                });
+            }
+        }), rxModel.getResultScheduler());
+    }
+
+    /**
+     * 写操作入队，阻塞直到所在批次提交。不能在提交线程上调用，参见{@link #isCommitThread()}。
+     */
+    <K> K enqueueAndWait(String key, Callable<K> write, K defaultValue, Runnable afterCommit) {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<K> holder = new ArrayList<>(1);
+        add(key, write, defaultValue, afterCommit, new OnCommitted<K>() {
+            @Override
+            public void onCommitted(K result) {
+                holder.add(result);
+                latch.countDown();
+            }
+        });
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return defaultValue;
+        }
+        return holder.get(0);
+    }
+
+    /**
+     * 立即提交队列中所有操作，阻塞直到提交完成。
+     * 在提交线程上调用时（例如在批次中执行的回调里）不会阻塞，新的写操作在当前批次之后提交。
+     */
+    void flushAndWait() {
+        if (isCommitThread()) {
+            executor.execute(flushTask);
+            return;
+        }
+        try {
+            executor.submit(flushTask).get();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 提交队列中所有操作，然后停止提交线程。之后入队的操作不再执行，直接以默认值回调。
+     */
+    void shutdown() {
+        synchronized (lock) {
+            if (shutdown) return;
+            shutdown = true;
+        }
+        //shutdown之后不会再有新的批次，已经入队的批次照常执行
+        executor.execute(flushTask);
+        executor.shutdown();
+        if (isCommitThread()) return;
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 当前线程是否为执行批次的线程。在批次中执行的写操作（例如更新回调中的同步写入）应当直接在批次的事务中执行，
+     * 不能再入队等待，否则会等待自身所在的批次。
+     */
+    boolean isCommitThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * 在当前批次结束后执行，只能在提交线程上调用。
+     */
+    void runAfterBatch(Runnable runnable) {
+        afterBatch.add(runnable);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <K> void add(String key,
+                         Callable<K> write,
+                         K defaultValue,
+                         Runnable afterCommit,
+                         OnCommitted<K> callback) {
+        synchronized (lock) {
+            if (shutdown) {
+                callback.onCommitted(defaultValue);
+                return;
+            }
+            PendingWrite<K> existed = key == null ? null : (PendingWrite<K>) coalescable.get(key);
+            if (existed != null) {
+                //合并：保留原来的位置，执行最后一次写入，所有调用方共享结果
+                existed.write = write;
+                existed.callbacks.add(callback);
+                if (afterCommit != null) existed.afterCommit.add(afterCommit);
+                return;
+            }
+
+            PendingWrite<K> pendingWrite = new PendingWrite<>(write, defaultValue);
+            pendingWrite.callbacks.add(callback);
+            if (afterCommit != null) pendingWrite.afterCommit.add(afterCommit);
+            pending.add(pendingWrite);
+            if (key == null) {
+                coalescable.clear();
+            } else {
+                coalescable.put(key, pendingWrite);
+            }
+
+            if (pending.size() >= maxBatchSize) {
+                executor.execute(flushTask);
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                executor.schedule(flushTask, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void flush() {
+        List<PendingWrite<?>> batch;
+        synchronized (lock) {
+            batch = pending;
+            pending = new ArrayList<>();
+            coalescable = new HashMap<>();
+            flushScheduled = false;
+        }
+        if (batch.isEmpty()) return;
+        try {
+            execute(batch);
+        } finally {
+            List<Runnable> runnables = afterBatch;
+            afterBatch = new ArrayList<>();
+            for (Runnable runnable : runnables) {
+                runnable.run();
+            }
+        }
+    }
+
+    private void execute(List<PendingWrite<?>> batch) {
+        SQLiteDatabase db = rxModel.getDataBase();
+        if (SqlUtils.assertDbNull(db)) {
+            for (PendingWrite<?> pendingWrite : batch) {
+                pendingWrite.notifyCommitted(false);
+            }
+            return;
+        }
+
+        boolean committed = commit(db, batch);
+        for (PendingWrite<?> pendingWrite : batch) {
+            pendingWrite.notifyCommitted(committed && pendingWrite.succeeded);
+        }
+    }
+
+    /**
+     * 在一个事务中执行所有写操作，每个操作在各自的保存点中执行。
+     * 操作抛出异常时只回滚到它的保存点，批次中的其他操作照常提交，不会重新执行（也就不会再次调用其中的更新回调）。
+     * @return 事务是否提交成功。
+     */
+    private boolean commit(SQLiteDatabase db, List<PendingWrite<?>> writes) {
+        db.beginTransaction();
+        try {
+            for (PendingWrite<?> pendingWrite : writes) {
+                db.execSQL(SAVEPOINT);
+                try {
+                    pendingWrite.execute();
+                } catch (Exception e) {
+                    //失败已由写操作自身记录到统计中
+                    db.execSQL(ROLLBACK_TO_SAVEPOINT);
+                }
+                db.execSQL(RELEASE_SAVEPOINT);
+            }
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            db.endTransaction();
+            rxModel.getMetrics().onTransaction(false);
+            return false;
+        }
+        try {
+            db.endTransaction();
+            rxModel.getMetrics().onTransaction(true);
+            return true;
+        } catch (Exception e) {
+            rxModel.getMetrics().onTransaction(false);
+            return false;
+        }
+    }
+
+    private interface OnCommitted<K> {
+
+        void onCommitted(K result);
+    }
+
+    private static final class PendingWrite<K> {
+
+        private Callable<K> write;
+        private final K defaultValue;
+        private final List<OnCommitted<K>> callbacks = new ArrayList<>(1);
+        private final List<Runnable> afterCommit = new ArrayList<>(1);
+        private K result;
+        private boolean succeeded;
+
+        PendingWrite(Callable<K> write, K defaultValue) {
+            this.write = write;
+            this.defaultValue = defaultValue;
+            this.result = defaultValue;
+        }
+
+        void execute() throws Exception {
+            result = write.call();
+            succeeded = true;
+        }
+
+        void notifyCommitted(boolean committed) {
+            K value = committed ? result : defaultValue;
+            for (Runnable runnable : afterCommit) {
+                runnable.run();
+            }
+            for (OnCommitted<K> callback : callbacks) {
+                callback.onCommitted(value);
+            }
+        }
+    }
+}
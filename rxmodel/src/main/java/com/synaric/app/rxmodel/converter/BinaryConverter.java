@@ -0,0 +1,35 @@
+package com.synaric.app.rxmodel.converter;
+
+import android.util.Base64;
+
+/**
+ * 将对象模型以二进制形式（BLOB）存储的转换器。
+ * 子类实现对象模型与byte[]之间的相互转换。字符串形式的转换（例如拼接SQL时）使用Base64编码。
+ */
+public abstract class BinaryConverter<T> extends Converter<T> {
+
+    public BinaryConverter(Class<T> clz) {
+        super(clz);
+    }
+
+    @Override
+    public final boolean isBinary() {
+        return true;
+    }
+
+    @Override
+    public abstract T convertToObject(byte[] document);
+
+    @Override
+    public abstract byte[] convertToBytes(T t);
+
+    @Override
+    public T convertToObject(String document) {
+        return convertToObject(Base64.decode(document, Base64.NO_WRAP));
+    }
+
+    @Override
+    public String convertToDocument(T t) {
+        return Base64.encodeToString(convertToBytes(t), Base64.NO_WRAP);
+    }
+}
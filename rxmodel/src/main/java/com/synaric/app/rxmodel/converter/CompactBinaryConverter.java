@@ -0,0 +1,498 @@
+package com.synaric.app.rxmodel.converter;
+
+import com.google.gson.Gson;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 以紧凑的二进制格式存储对象模型。
+ * 对象模型的每个字段（不包括static和transient字段）编码为"标签 + 值"，值为null的字段不写入：
+ * <ul>
+ * <li>标签为varint，由字段名的哈希值和值的编码方式组成。标签不依赖字段的顺序，增删字段后仍然可以读取旧数据，
+ * 未知的字段和编码方式不匹配的字段会被跳过。</li>
+ * <li>整数、布尔值和字符编码为zigzag varint，float和double分别编码为定长4字节和8字节。</li>
+ * <li>字符串、枚举（名称）和byte[]编码为"长度 + 内容"，嵌套的对象按字段声明的类型递归编码，子类中的字段不会被保存。</li>
+ * <li>集合、Map、数组和其他系统类型以Json格式编码。</li>
+ * </ul>
+ * 对象模型以及嵌套的对象必须有无参构造器（可以是private），否则创建转换器时抛出{@link IllegalArgumentException}。
+ * 相比Json，文档模型中没有字段名、引号和数字的文本形式，占用的空间更小，解析时也不需要词法分析。
+ * 文档模型不是Json，筛选条件中未建立索引的字段无法通过json_extract在SQL中筛选。
+ */
+public abstract class CompactBinaryConverter<T> extends BinaryConverter<T> {
+
+    private final Schema schema;
+
+    public CompactBinaryConverter(Class<T> clz) {
+        super(clz);
+        schema = Schema.of(clz);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T convertToObject(byte[] document) {
+        if (document == null) return null;
+        return (T) schema.read(new Reader(document), document.length);
+    }
+
+    @Override
+    public byte[] convertToBytes(T t) {
+        Writer writer = new Writer(64);
+        schema.write(writer, t);
+        return writer.toByteArray();
+    }
+
+    private static final int WIRE_VARINT = 0;
+    private static final int WIRE_FIXED64 = 1;
+    private static final int WIRE_BYTES = 2;
+    private static final int WIRE_FIXED32 = 5;
+
+    private static final int KIND_BOOLEAN = 0;
+    private static final int KIND_BYTE = 1;
+    private static final int KIND_SHORT = 2;
+    private static final int KIND_CHAR = 3;
+    private static final int KIND_INT = 4;
+    private static final int KIND_LONG = 5;
+    private static final int KIND_FLOAT = 6;
+    private static final int KIND_DOUBLE = 7;
+    private static final int KIND_STRING = 8;
+    private static final int KIND_BYTES = 9;
+    private static final int KIND_ENUM = 10;
+    private static final int KIND_OBJECT = 11;
+    private static final int KIND_JSON = 12;
+
+    private static final Gson GSON = new Gson();
+
+    /**
+     * 一个类的编码方式：所有需要编码的字段，以及字段标签到字段的映射。
+     */
+    private static final class Schema {
+
+        private static final Map<Class<?>, Schema> SCHEMAS = new ConcurrentHashMap<>();
+
+        private final Class<?> clz;
+        private final FieldCodec[] fields;
+        private final Map<Integer, FieldCodec> fieldsById = new HashMap<>();
+        private final Constructor<?> constructor;
+
+        static Schema of(Class<?> clz) {
+            Schema schema = SCHEMAS.get(clz);
+            if (schema == null) {
+                schema = new Schema(clz);
+                //先放入缓存再解析嵌套的对象，互相引用的类不会无限递归
+                SCHEMAS.put(clz, schema);
+                try {
+                    for (FieldCodec codec : schema.fields) {
+                        if (codec.kind == KIND_OBJECT) codec.nested();
+                    }
+                } catch (RuntimeException e) {
+                    SCHEMAS.remove(clz);
+                    throw e;
+                }
+            }
+            return schema;
+        }
+
+        private Schema(Class<?> clz) {
+            this.clz = clz;
+            List<FieldCodec> list = new ArrayList<>();
+            for (Class<?> c = clz; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    FieldCodec codec = new FieldCodec(field);
+                    FieldCodec existed = fieldsById.put(codec.id, codec);
+                    if (existed != null) {
+                        throw new IllegalArgumentException(clz.getName() + " declares fields with the same id: "
+                                + existed.field.getName() + ", " + field.getName());
+                    }
+                    list.add(codec);
+                }
+            }
+            fields = list.toArray(new FieldCodec[list.size()]);
+
+            try {
+                constructor = clz.getDeclaredConstructor();
+                constructor.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException(clz.getName() + " needs a no-args constructor.");
+            }
+        }
+
+        void write(Writer writer, Object object) {
+            try {
+                for (FieldCodec codec : fields) {
+                    codec.write(writer, object);
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        Object read(Reader reader, int end) {
+            Object object = newInstance();
+            try {
+                while (reader.pos < end) {
+                    int tag = (int) reader.readVarint();
+                    int wire = tag & 0x7;
+                    FieldCodec codec = fieldsById.get(tag >>> 3);
+                    if (codec == null || codec.wire != wire) {
+                        reader.skip(wire);
+                    } else {
+                        codec.read(reader, object);
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+            return object;
+        }
+
+        private Object newInstance() {
+            try {
+                return constructor.newInstance();
+            } catch (Exception e) {
+                throw new IllegalStateException("Unable to create " + clz.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * 单个字段的编码方式。
+     */
+    private static final class FieldCodec {
+
+        private final Field field;
+        private final int id;
+        private final int kind;
+        private final int wire;
+        private final boolean primitive;
+        private final Type genericType;
+
+        /**
+         * 嵌套对象的编码方式，按字段声明的类型确定。
+         */
+        private volatile Schema nested;
+
+        FieldCodec(Field field) {
+            this.field = field;
+            //21位的字段id左移3位后不超过4字节的varint
+            this.id = field.getName().hashCode() & 0x1FFFFF;
+            Class<?> type = field.getType();
+            this.primitive = type.isPrimitive();
+            this.genericType = field.getGenericType();
+            this.kind = kindOf(type);
+            this.wire = wireOf(kind);
+        }
+
+        Schema nested() {
+            Schema schema = nested;
+            if (schema == null) {
+                schema = Schema.of(field.getType());
+                nested = schema;
+            }
+            return schema;
+        }
+
+        private static int kindOf(Class<?> type) {
+            if (type == boolean.class || type == Boolean.class) return KIND_BOOLEAN;
+            if (type == byte.class || type == Byte.class) return KIND_BYTE;
+            if (type == short.class || type == Short.class) return KIND_SHORT;
+            if (type == char.class || type == Character.class) return KIND_CHAR;
+            if (type == int.class || type == Integer.class) return KIND_INT;
+            if (type == long.class || type == Long.class) return KIND_LONG;
+            if (type == float.class || type == Float.class) return KIND_FLOAT;
+            if (type == double.class || type == Double.class) return KIND_DOUBLE;
+            if (type == String.class) return KIND_STRING;
+            if (type == byte[].class) return KIND_BYTES;
+            if (type.isEnum()) return KIND_ENUM;
+            if (type.isArray() || type.isInterface() || Modifier.isAbstract(type.getModifiers())
+                    || Collection.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type)) {
+                return KIND_JSON;
+            }
+            String name = type.getName();
+            if (name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("android.")) {
+                return KIND_JSON;
+            }
+            return KIND_OBJECT;
+        }
+
+        private static int wireOf(int kind) {
+            switch (kind) {
+                case KIND_FLOAT:
+                    return WIRE_FIXED32;
+                case KIND_DOUBLE:
+                    return WIRE_FIXED64;
+                case KIND_STRING:
+                case KIND_BYTES:
+                case KIND_ENUM:
+                case KIND_OBJECT:
+                case KIND_JSON:
+                    return WIRE_BYTES;
+                default:
+                    return WIRE_VARINT;
+            }
+        }
+
+        void write(Writer writer, Object object) throws IllegalAccessException {
+            long bits;
+            if (primitive) {
+                switch (kind) {
+                    case KIND_BOOLEAN: bits = field.getBoolean(object) ? 1 : 0; break;
+                    case KIND_BYTE: bits = zigzag(field.getByte(object)); break;
+                    case KIND_SHORT: bits = zigzag(field.getShort(object)); break;
+                    case KIND_CHAR: bits = field.getChar(object); break;
+                    case KIND_INT: bits = zigzag(field.getInt(object)); break;
+                    case KIND_LONG: bits = zigzag(field.getLong(object)); break;
+                    case KIND_FLOAT: bits = Float.floatToRawIntBits(field.getFloat(object)); break;
+                    default: bits = Double.doubleToRawLongBits(field.getDouble(object)); break;
+                }
+                writer.writeVarint((id << 3) | wire);
+                writeBits(writer, bits);
+                return;
+            }
+
+            Object value = field.get(object);
+            if (value == null) return;
+            writer.writeVarint((id << 3) | wire);
+            switch (kind) {
+                case KIND_BOOLEAN: writeBits(writer, (Boolean) value ? 1 : 0); break;
+                case KIND_BYTE:
+                case KIND_SHORT:
+                case KIND_INT:
+                case KIND_LONG: writeBits(writer, zigzag(((Number) value).longValue())); break;
+                case KIND_CHAR: writeBits(writer, (Character) value); break;
+                case KIND_FLOAT: writeBits(writer, Float.floatToRawIntBits((Float) value)); break;
+                case KIND_DOUBLE: writeBits(writer, Double.doubleToRawLongBits((Double) value)); break;
+                case KIND_STRING: writer.writeBytes(((String) value).getBytes(UTF_8)); break;
+                case KIND_BYTES: writer.writeBytes((byte[]) value); break;
+                case KIND_ENUM: writer.writeBytes(((Enum<?>) value).name().getBytes(UTF_8)); break;
+                case KIND_OBJECT:
+                    Writer buffer = new Writer(32);
+                    nested().write(buffer, value);
+                    writer.writeVarint(buffer.count);
+                    writer.write(buffer.buf, 0, buffer.count);
+                    break;
+                default:
+                    writer.writeBytes(GSON.toJson(value, genericType).getBytes(UTF_8));
+                    break;
+            }
+        }
+
+        private void writeBits(Writer writer, long bits) {
+            switch (wire) {
+                case WIRE_FIXED32: writer.writeFixed32((int) bits); break;
+                case WIRE_FIXED64: writer.writeFixed64(bits); break;
+                default: writer.writeVarint(bits); break;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        void read(Reader reader, Object object) throws IllegalAccessException {
+            switch (kind) {
+                case KIND_BOOLEAN: {
+                    boolean value = reader.readVarint() != 0;
+                    if (primitive) field.setBoolean(object, value); else field.set(object, value);
+                    break;
+                }
+                case KIND_BYTE: {
+                    byte value = (byte) unzigzag(reader.readVarint());
+                    if (primitive) field.setByte(object, value); else field.set(object, value);
+                    break;
+                }
+                case KIND_SHORT: {
+                    short value = (short) unzigzag(reader.readVarint());
+                    if (primitive) field.setShort(object, value); else field.set(object, value);
+                    break;
+                }
+                case KIND_CHAR: {
+                    char value = (char) reader.readVarint();
+                    if (primitive) field.setChar(object, value); else field.set(object, value);
+                    break;
+                }
+                case KIND_INT: {
+                    int value = (int) unzigzag(reader.readVarint());
+                    if (primitive) field.setInt(object, value); else field.set(object, value);
+                    break;
+                }
+                case KIND_LONG: {
+                    long value = unzigzag(reader.readVarint());
+                    if (primitive) field.setLong(object, value); else field.set(object, value);
+                    break;
+                }
+                case KIND_FLOAT: {
+                    float value = Float.intBitsToFloat(reader.readFixed32());
+                    if (primitive) field.setFloat(object, value); else field.set(object, value);
+                    break;
+                }
+                case KIND_DOUBLE: {
+                    double value = Double.longBitsToDouble(reader.readFixed64());
+                    if (primitive) field.setDouble(object, value); else field.set(object, value);
+                    break;
+                }
+                case KIND_STRING:
+                    field.set(object, reader.readString());
+                    break;
+                case KIND_BYTES:
+                    field.set(object, reader.readBytes());
+                    break;
+                case KIND_ENUM: {
+                    String name = reader.readString();
+                    try {
+                        field.set(object, Enum.valueOf((Class<Enum>) field.getType(), name));
+                    } catch (IllegalArgumentException e) {
+                        //枚举常量已被删除，保留默认值
+                    }
+                    break;
+                }
+                case KIND_OBJECT: {
+                    int length = (int) reader.readVarint();
+                    field.set(object, nested().read(reader, reader.pos + length));
+                    break;
+                }
+                default:
+                    field.set(object, GSON.fromJson(reader.readString(), genericType));
+                    break;
+            }
+        }
+    }
+
+    private static long zigzag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    private static long unzigzag(long n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private static final class Writer {
+
+        private byte[] buf;
+        private int count;
+
+        Writer(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        private void ensure(int more) {
+            if (count + more > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, count + more));
+            }
+        }
+
+        void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[count++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[count++] = (byte) value;
+        }
+
+        void writeFixed32(int value) {
+            ensure(4);
+            for (int i = 0; i < 4; i++) {
+                buf[count++] = (byte) (value >>> (i << 3));
+            }
+        }
+
+        void writeFixed64(long value) {
+            ensure(8);
+            for (int i = 0; i < 8; i++) {
+                buf[count++] = (byte) (value >>> (i << 3));
+            }
+        }
+
+        void writeBytes(byte[] bytes) {
+            writeVarint(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        void write(byte[] bytes, int offset, int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, buf, count, length);
+            count += length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
+    }
+
+    private static final class Reader {
+
+        private final byte[] buf;
+        private int pos;
+
+        Reader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buf[pos++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IllegalArgumentException("Malformed varint.");
+        }
+
+        int readFixed32() {
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                value |= (buf[pos++] & 0xFF) << (i << 3);
+            }
+            return value;
+        }
+
+        long readFixed64() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value |= (long) (buf[pos++] & 0xFF) << (i << 3);
+            }
+            return value;
+        }
+
+        byte[] readBytes() {
+            int length = (int) readVarint();
+            byte[] bytes = Arrays.copyOfRange(buf, pos, pos + length);
+            pos += length;
+            return bytes;
+        }
+
+        String readString() {
+            int length = (int) readVarint();
+            String value = new String(buf, pos, length, UTF_8);
+            pos += length;
+            return value;
+        }
+
+        void skip(int wire) {
+            switch (wire) {
+                case WIRE_VARINT: readVarint(); break;
+                case WIRE_FIXED64: pos += 8; break;
+                case WIRE_FIXED32: pos += 4; break;
+                case WIRE_BYTES: {
+                    //先读出长度，"pos += readVarint()"会使用读取长度之前的pos
+                    int length = (int) readVarint();
+                    pos += length;
+                    break;
+                }
+                default: throw new IllegalArgumentException("Unknown wire type: " + wire);
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.synaric.app.rxmodel.converter;
 
+import java.nio.charset.Charset;
+
 /**
  * 对象模型-文档模型转换器。
  * 子类必须实现它们的相互转换。
@@ -7,6 +9,8 @@ package com.synaric.app.rxmodel.converter;
  */
 public abstract class Converter<T> implements IConverter<T>{
 
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
     private Class<T> actualClass;
 
     public Converter(Class<T> clz) {
@@ -34,6 +38,44 @@ public abstract class Converter<T> implements IConverter<T>{
      */
     public abstract String bindID(T t);
 
+    /**
+     * 文档模型是否以二进制形式（BLOB）存储。
+     * 为true时，写入使用{@link #convertToBytes(Object)}，读取使用{@link #convertToObject(byte[])}。
+     * 默认为false，文档模型以字符串形式存储。
+     */
+    public boolean isBinary() {
+        return false;
+    }
+
+    /**
+     * 将字符数组形式的文档模型转换为对象模型，用于从Cursor中直接复制字符、不创建String的读取方式。
+     * 默认创建String后转换。调用方会复用字符数组，实现不应保存它的引用。
+     * @param document 文档模型所在的字符数组。
+     * @param length 文档模型的长度。
+     * @return 对象模型。
+     */
+    public T convertToObject(char[] document, int length) {
+        return convertToObject(new String(document, 0, length));
+    }
+
+    /**
+     * 将二进制的文档模型转换为对象模型。默认按UTF-8解码为字符串后转换。
+     * @param document 文档模型。
+     * @return 对象模型。
+     */
+    public T convertToObject(byte[] document) {
+        return convertToObject(new String(document, UTF_8));
+    }
+
+    /**
+     * 将对象模型转换为二进制的文档模型。默认将字符串形式的文档模型按UTF-8编码。
+     * @param t 对象模型。
+     * @return 文档模型。
+     */
+    public byte[] convertToBytes(T t) {
+        return convertToDocument(t).getBytes(UTF_8);
+    }
+
     /**
      * 获取泛型的确切类型。
      * @return 确切类型。
@@ -3,7 +3,7 @@ package com.synaric.app.rxmodel.converter;
 /**
  * 确立对象模型和最终存储结果之间的映射关系。
  * 对象模型指实际应用中需要存储到数据库的Java对象，文档模型指该对象在数据库中的存储形式。
- * 文档模型必须为String类型。
+ * 文档模型默认为String类型，以二进制形式存储时参见{@link Converter#isBinary()}。
  * Created by Synaric on 2016/8/23 0023.
  */
 public interface IConverter<T> {
@@ -1,26 +1,182 @@
 package com.synaric.app.rxmodel.converter;
 
+import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.internal.Excluder;
+import com.google.gson.internal.bind.ReflectiveTypeAdapterFactory;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.CharArrayReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 
 /**
  * 将对象模型以Json格式存储。
+ * 读写Json的TypeAdapter在创建时确定并一直复用：指定了TypeAdapter（例如rxmodel-compiler生成的"类名_JsonAdapter"）时使用它，
+ * 否则从Gson中获取一次，不会在每次转换时重新查找。
  * Created by Synaric on 2016/8/23 0023.
  */
 public abstract class JsonConverter<T> extends Converter<T> {
 
-    private Gson gson = new Gson();
+    /**
+     * 生成的TypeAdapter的类名后缀，与rxmodel-compiler一致。
+     */
+    private static final String GENERATED_SUFFIX = "_JsonAdapter";
+
+    private static final Gson DEFAULT_GSON = new Gson();
+
+    private final Gson gson;
+    private final TypeAdapter<T> adapter;
 
     public JsonConverter(Class<T> clz) {
+        this(clz, null, null);
+    }
+
+    /**
+     * @param adapter 读写Json的TypeAdapter，为null时从Gson中获取。
+     */
+    public JsonConverter(Class<T> clz, TypeAdapter<T> adapter) {
+        this(clz, null, adapter);
+    }
+
+    /**
+     * @param gson 决定Json的读写格式，为null时使用默认配置的Gson。
+     * @param adapter 读写Json的TypeAdapter，为null时从gson中获取。
+     */
+    public JsonConverter(Class<T> clz, Gson gson, TypeAdapter<T> adapter) {
         super(clz);
+        this.gson = gson != null ? gson : DEFAULT_GSON;
+        this.adapter = adapter != null ? adapter : this.gson.getAdapter(clz);
     }
 
     @Override
     public T convertToObject(String document) {
-        return gson.fromJson(document, getActualClass());
+        if(document == null) return null;
+        return read(new StringReader(document));
+    }
+
+    @Override
+    public T convertToObject(char[] document, int length) {
+        return read(new CharArrayReader(document, 0, length));
+    }
+
+    /**
+     * 与Gson.fromJson一致：宽松模式解析，空文档返回null。
+     */
+    private T read(Reader in) {
+        JsonReader reader = gson.newJsonReader(in);
+        reader.setLenient(true);
+        boolean empty = true;
+        try {
+            reader.peek();
+            empty = false;
+            return adapter.read(reader);
+        } catch (EOFException e) {
+            if(empty) return null;
+            throw new JsonSyntaxException(e);
+        } catch (IOException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IllegalStateException e) {
+            throw new JsonSyntaxException(e);
+        }
     }
 
     @Override
     public String convertToDocument(T t) {
-        return gson.toJson(t);
+        StringWriter out = new StringWriter();
+        try {
+            JsonWriter writer = gson.newJsonWriter(out);
+            //与Gson.toJson一致
+            writer.setLenient(true);
+            adapter.write(writer, t);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * 查找rxmodel-compiler为对象模型生成的TypeAdapter，字段的TypeAdapter从默认配置的Gson中获取。
+     * @param clz 被{@code @Document}标记的类。
+     * @return 生成的TypeAdapter，没有生成时返回null。
+     */
+    public static <T> TypeAdapter<T> findGeneratedAdapter(Class<T> clz) {
+        return findGeneratedAdapter(clz, DEFAULT_GSON);
+    }
+
+    /**
+     * 查找rxmodel-compiler为对象模型生成的TypeAdapter，字段的TypeAdapter从gson中获取。
+     * 生成的TypeAdapter只等价于Gson默认的反射转换：gson注册了clz的TypeAdapter，配置了字段命名策略、serializeNulls、
+     * 排除策略或版本，或者字段使用了{@code @JsonAdapter}等Gson在反射时才处理的注解时，返回null，由gson读写。
+     * @param clz 被{@code @Document}标记的类。
+     * @param gson 决定Json的读写格式。
+     * @return 生成的TypeAdapter，没有生成或者与gson的格式不一致时返回null。
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> TypeAdapter<T> findGeneratedAdapter(Class<T> clz, Gson gson) {
+        if(!isDefaultReflective(clz, gson)) return null;
+        String name = clz.getName();
+        int dot = name.lastIndexOf('.');
+        String adapterName = name.substring(0, dot + 1) + name.substring(dot + 1).replace('$', '_') + GENERATED_SUFFIX;
+        try {
+            Class<?> adapterClass = Class.forName(adapterName, true, clz.getClassLoader());
+            try {
+                return (TypeAdapter<T>) adapterClass.getDeclaredConstructor(Gson.class).newInstance(gson);
+            } catch (NoSuchMethodException e) {
+                //没有接收Gson的构造器时使用无参构造器
+                return (TypeAdapter<T>) adapterClass.getDeclaredConstructor().newInstance();
+            }
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * gson是否以默认的反射方式读写clz：
+     * <ul>
+     * <li>没有配置字段命名策略、serializeNulls、排除策略和版本（包括{@code @Expose}、{@code @Since}/{@code @Until}）。</li>
+     * <li>没有为clz注册TypeAdapter、JsonSerializer，clz上也没有{@code @JsonAdapter}。</li>
+     * <li>字段上没有{@code @JsonAdapter}和{@code @SerializedName}的alternate。</li>
+     * <li>基本类型、包装类型和String字段使用Gson内置的TypeAdapter（例如没有配置LongSerializationPolicy）。</li>
+     * </ul>
+     */
+    private static boolean isDefaultReflective(Class<?> clz, Gson gson) {
+        if(gson.fieldNamingStrategy() != FieldNamingPolicy.IDENTITY || gson.serializeNulls()) return false;
+        if(gson.excluder() != Excluder.DEFAULT) return false;
+        if(!(gson.getAdapter(clz) instanceof ReflectiveTypeAdapterFactory.Adapter)) return false;
+        for(Class<?> c = clz; c != null && c != Object.class; c = c.getSuperclass()) {
+            for(Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if(Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) continue;
+                if(field.isAnnotationPresent(JsonAdapter.class)) return false;
+                SerializedName name = field.getAnnotation(SerializedName.class);
+                if(name != null && name.alternate().length > 0) return false;
+                Class<?> type = field.getType();
+                if(type.isPrimitive() || type == String.class || isBoxed(type)) {
+                    //生成的TypeAdapter直接读写这些字段，注册的TypeAdapter不会生效
+                    if(gson.getAdapter(type).getClass() != DEFAULT_GSON.getAdapter(type).getClass()) return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isBoxed(Class<?> type) {
+        return type == Boolean.class || type == Byte.class || type == Short.class || type == Character.class
+                || type == Integer.class || type == Long.class || type == Float.class || type == Double.class;
     }
 }
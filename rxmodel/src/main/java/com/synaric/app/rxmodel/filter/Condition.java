@@ -0,0 +1,392 @@
+package com.synaric.app.rxmodel.filter;
+
+import com.synaric.app.rxmodel.utils.ReflectUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 声明式筛选条件。
+ * 条件可以编译为带参数的SQLite WHERE子句（字段通过{@link FieldMapper}映射为SQL表达式），
+ * 无法编译时也可以直接对对象模型求值，作为Java层的后置筛选。
+ * 条件对象不可变，可以被多个筛选器、多个线程共享。
+ * 字段路径是对象模型的Java字段名，嵌套字段以"."分隔；在SQL中按Gson序列化后的Json名称提取
+ * （参见{@link com.synaric.app.rxmodel.utils.JsonFieldResolver}），与{@code @SerializedName}、字段命名策略无关。
+ * <br/><br/>例子：
+ * <pre>
+ * Condition c = Condition.between("size", 20000, 40000)
+ *         .and(Condition.in("name", "game1", "game2"));
+ * </pre>
+ */
+@SuppressWarnings("unused")
+public abstract class Condition {
+
+    private static final Pattern FIELD_PATTERN =
+            Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*(\\.[A-Za-z_$][A-Za-z0-9_$]*)*");
+
+    Condition() {
+    }
+
+    /**
+     * 字段等于指定值。value为null时等价于{@link #isNull(String)}。
+     */
+    public static Condition eq(String field, Object value) {
+        if (value == null) return isNull(field);
+        return new Compare(field, "=", value);
+    }
+
+    /**
+     * 字段不等于指定值。value为null时等价于{@link #notNull(String)}。
+     * 与SQL一致，字段为null时不满足条件。
+     */
+    public static Condition ne(String field, Object value) {
+        if (value == null) return notNull(field);
+        return new Compare(field, "<>", value);
+    }
+
+    /**
+     * 字段大于指定值。
+     */
+    public static Condition gt(String field, Object value) {
+        return new Compare(field, ">", checkNotNull(value));
+    }
+
+    /**
+     * 字段大于等于指定值。
+     */
+    public static Condition ge(String field, Object value) {
+        return new Compare(field, ">=", checkNotNull(value));
+    }
+
+    /**
+     * 字段小于指定值。
+     */
+    public static Condition lt(String field, Object value) {
+        return new Compare(field, "<", checkNotNull(value));
+    }
+
+    /**
+     * 字段小于等于指定值。
+     */
+    public static Condition le(String field, Object value) {
+        return new Compare(field, "<=", checkNotNull(value));
+    }
+
+    /**
+     * 字段位于闭区间[from, to]内。
+     */
+    public static Condition between(String field, Object from, Object to) {
+        return and(ge(field, from), le(field, to));
+    }
+
+    /**
+     * 字段等于给定值中的任意一个。
+     */
+    public static Condition in(String field, Object... values) {
+        return in(field, Arrays.asList(values));
+    }
+
+    /**
+     * 字段等于给定集合中的任意一个。
+     */
+    public static Condition in(String field, Collection<?> values) {
+        for (Object value : values) checkNotNull(value);
+        return new In(field, new ArrayList<Object>(values));
+    }
+
+    /**
+     * 字段为null或不存在。
+     */
+    public static Condition isNull(String field) {
+        return new Null(field, true);
+    }
+
+    /**
+     * 字段不为null。
+     */
+    public static Condition notNull(String field) {
+        return new Null(field, false);
+    }
+
+    /**
+     * 所有条件同时满足。
+     */
+    public static Condition and(Condition... conditions) {
+        return new Junction(" and ", true, Arrays.asList(conditions));
+    }
+
+    /**
+     * 任意一个条件满足。
+     */
+    public static Condition or(Condition... conditions) {
+        return new Junction(" or ", false, Arrays.asList(conditions));
+    }
+
+    public Condition and(Condition other) {
+        return and(this, other);
+    }
+
+    public Condition or(Condition other) {
+        return or(this, other);
+    }
+
+    /**
+     * 将条件编译为SQL片段，追加到sql中，参数追加到args中。
+     * @return 如果条件中存在无法映射的字段，返回false，此时sql和args的内容不可用。
+     */
+    abstract boolean appendSql(FieldMapper mapper, StringBuilder sql, List<String> args);
+
+    /**
+     * 对对象模型求值。
+     * @param t 对象模型。
+     * @return 是否满足条件。
+     */
+    public abstract boolean matches(Object t);
+
+    /**
+     * 按照SQLite的规则比较两个值：null &lt; 数值 &lt; 文本。
+     */
+    public static int compareValues(Object a, Object b) {
+        a = normalize(a);
+        b = normalize(b);
+        int rankA = rank(a);
+        int rankB = rank(b);
+        if (rankA != rankB) return rankA < rankB ? -1 : 1;
+        if (a == null) return 0;
+        if (a instanceof Number) {
+            Number na = (Number) a;
+            Number nb = (Number) b;
+            if (isIntegral(na) && isIntegral(nb)) {
+                long la = na.longValue();
+                long lb = nb.longValue();
+                return la < lb ? -1 : (la == lb ? 0 : 1);
+            }
+            return Double.compare(na.doubleValue(), nb.doubleValue());
+        }
+        return a.toString().compareTo(b.toString());
+    }
+
+    /**
+     * 检查字段路径是否合法，不合法时抛出{@link IllegalArgumentException}。
+     */
+    public static void checkField(String field) {
+        if (field == null || !FIELD_PATTERN.matcher(field).matches()) {
+            throw new IllegalArgumentException("Illegal field: " + field);
+        }
+    }
+
+    private static Object checkNotNull(Object value) {
+        if (value == null) throw new IllegalArgumentException("value must not be null.");
+        return value;
+    }
+
+    /**
+     * 将值统一为Gson存储后的形式：布尔值对应1/0，枚举（参见{@link ReflectUtils#getEnumName(Enum)}）和字符对应字符串。
+     */
+    private static Object normalize(Object value) {
+        if (value instanceof Boolean) return (Boolean) value ? 1L : 0L;
+        if (value instanceof Enum) return ReflectUtils.getEnumName((Enum<?>) value);
+        if (value instanceof Character) return value.toString();
+        return value;
+    }
+
+    private static int rank(Object value) {
+        if (value == null) return 0;
+        if (value instanceof Number) return 1;
+        return 2;
+    }
+
+    private static boolean isIntegral(Number n) {
+        return n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte;
+    }
+
+    /**
+     * 生成值对应的SQL：数值直接内联（避免以文本绑定后与数值比较失败），其余以参数绑定。
+     */
+    public static void appendValue(Object value, StringBuilder sql, List<String> args) {
+        value = normalize(value);
+        if (value instanceof Number) {
+            Number n = (Number) value;
+            if (isIntegral(n)) {
+                sql.append(n.longValue());
+            } else if (n instanceof java.math.BigDecimal) {
+                sql.append(((java.math.BigDecimal) n).toPlainString());
+            } else {
+                double d = n.doubleValue();
+                if (Double.isNaN(d) || Double.isInfinite(d)) {
+                    throw new IllegalArgumentException("Unsupported number: " + n);
+                }
+                sql.append(d);
+            }
+        } else {
+            sql.append('?');
+            args.add(value.toString());
+        }
+    }
+
+    private static final class Compare extends Condition {
+
+        private final String field;
+        private final String operator;
+        private final Object value;
+
+        Compare(String field, String operator, Object value) {
+            checkField(field);
+            this.field = field;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        @Override
+        boolean appendSql(FieldMapper mapper, StringBuilder sql, List<String> args) {
+            String column = mapper == null ? null : mapper.map(field);
+            if (column == null) return false;
+            sql.append(column).append(' ').append(operator).append(' ');
+            appendValue(value, sql, args);
+            return true;
+        }
+
+        @Override
+        public boolean matches(Object t) {
+            Object actual = ReflectUtils.getFieldValue(t, field);
+            if (actual == null) return false;
+            int result = compareValues(actual, value);
+            switch (operator) {
+                case "=":
+                    return result == 0;
+                case "<>":
+                    return result != 0;
+                case ">":
+                    return result > 0;
+                case ">=":
+                    return result >= 0;
+                case "<":
+                    return result < 0;
+                default:
+                    return result <= 0;
+            }
+        }
+    }
+
+    private static final class In extends Condition {
+
+        private final String field;
+        private final List<Object> values;
+
+        In(String field, List<Object> values) {
+            checkField(field);
+            this.field = field;
+            this.values = Collections.unmodifiableList(values);
+        }
+
+        @Override
+        boolean appendSql(FieldMapper mapper, StringBuilder sql, List<String> args) {
+            if (values.isEmpty()) {
+                sql.append("0");
+                return true;
+            }
+            String column = mapper == null ? null : mapper.map(field);
+            if (column == null) return false;
+            sql.append(column).append(" in (");
+            for (int i = 0; i < values.size(); i++) {
+                if (i > 0) sql.append(", ");
+                appendValue(values.get(i), sql, args);
+            }
+            sql.append(')');
+            return true;
+        }
+
+        @Override
+        public boolean matches(Object t) {
+            Object actual = ReflectUtils.getFieldValue(t, field);
+            if (actual == null) return false;
+            for (Object value : values) {
+                if (compareValues(actual, value) == 0) return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class Null extends Condition {
+
+        private final String field;
+        private final boolean isNull;
+
+        Null(String field, boolean isNull) {
+            checkField(field);
+            this.field = field;
+            this.isNull = isNull;
+        }
+
+        @Override
+        boolean appendSql(FieldMapper mapper, StringBuilder sql, List<String> args) {
+            String column = mapper == null ? null : mapper.map(field);
+            if (column == null) return false;
+            sql.append(column).append(isNull ? " is null" : " is not null");
+            return true;
+        }
+
+        @Override
+        public boolean matches(Object t) {
+            return (ReflectUtils.getFieldValue(t, field) == null) == isNull;
+        }
+    }
+
+    static final class Junction extends Condition {
+
+        private final String operator;
+        private final boolean and;
+        private final List<Condition> children;
+
+        Junction(String operator, boolean and, List<Condition> children) {
+            //展开同类型的嵌套条件，a.and(b).and(c)等价于and(a, b, c)
+            List<Condition> flattened = new ArrayList<>();
+            for (Condition child : children) {
+                if (child == null) throw new IllegalArgumentException("condition must not be null.");
+                if (child instanceof Junction && ((Junction) child).and == and) {
+                    flattened.addAll(((Junction) child).children);
+                } else {
+                    flattened.add(child);
+                }
+            }
+            this.operator = operator;
+            this.and = and;
+            this.children = Collections.unmodifiableList(flattened);
+        }
+
+        boolean isAnd() {
+            return and;
+        }
+
+        List<Condition> getChildren() {
+            return children;
+        }
+
+        @Override
+        boolean appendSql(FieldMapper mapper, StringBuilder sql, List<String> args) {
+            if (children.isEmpty()) {
+                sql.append(and ? "1" : "0");
+                return true;
+            }
+            sql.append('(');
+            for (int i = 0; i < children.size(); i++) {
+                if (i > 0) sql.append(operator);
+                if (!children.get(i).appendSql(mapper, sql, args)) return false;
+            }
+            sql.append(')');
+            return true;
+        }
+
+        @Override
+        public boolean matches(Object t) {
+            for (Condition child : children) {
+                if (child.matches(t) != and) return !and;
+            }
+            return and;
+        }
+    }
+}
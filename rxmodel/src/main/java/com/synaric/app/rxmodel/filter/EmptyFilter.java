@@ -14,4 +14,9 @@ public class EmptyFilter<T> extends Filter<T> {
     public boolean doIterativeFilter(T t) {
         return true;
     }
+
+    @Override
+    protected boolean isIterative() {
+        return false;
+    }
 }
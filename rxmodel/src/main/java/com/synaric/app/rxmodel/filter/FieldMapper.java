@@ -0,0 +1,15 @@
+package com.synaric.app.rxmodel.filter;
+
+/**
+ * 将对象模型的字段映射为SQL表达式。
+ * 由{@link com.synaric.app.rxmodel.DbModel}实现，决定哪些字段可以在SQLite中直接求值。
+ */
+public interface FieldMapper {
+
+    /**
+     * 获取字段对应的SQL表达式。
+     * @param field 字段路径，嵌套字段以"."分隔，例如"owner.name"。
+     * @return SQL表达式，例如"json_extract(value, '$.size')"；如果该字段无法在SQL中求值，返回null。
+     */
+    String map(String field);
+}
@@ -1,8 +1,21 @@
 package com.synaric.app.rxmodel.filter;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * 抽象筛选器，定义了基本的筛选行为。
  * 可以通过{@link Filter#start}和{@link Filter#limit}设置筛选范围，但仅在查询语句中有效。
+ * <br/><br/>
+ * 通过{@link #where(Condition)}和{@link #orderBy(String, boolean)}可以声明筛选条件和排序，
+ * 它们会被尽可能地编译为SQL，在SQLite中完成筛选，避免逐条解析文档模型。
+ * {@link #doIterativeFilter(Object)}作为无法翻译为SQL的后置筛选，在Java层对SQL的结果逐条执行。
+ * <br/><br/>
+ * 筛选器只保存筛选的声明，不保存任何执行过程中的状态（执行状态由每次执行时编译的{@link SqlQuery}保存），
+ * 因此同一个筛选器可以保存为常量，在多个线程上同时用于多次查询。筛选器应当在共享之前设置完毕；
+ * {@link #doIterativeFilter(Object)}可能在多个线程上同时执行，不应修改筛选器或者其他共享的状态。
+ * 编译后的查询计划缓存在筛选器中，重复使用同一个筛选器时不需要重新生成SQL。
  * Created by Synaric on 2016/8/26 0026.
  */
 @SuppressWarnings("unused")
@@ -11,22 +24,32 @@ public abstract class Filter<T> implements IFilter<T>{
     /**
      * 筛选开始的起始索引，从0开始。
      */
-    private int start;
+    private volatile int start;
 
     /**
      * 最多筛选出的数据数。如果已经筛选出的数据量 = limit，则剩余数据被放弃。
      */
-    private int limit;
+    private volatile int limit;
+
+    /**
+     * 声明式筛选条件，为null表示没有条件。
+     */
+    private volatile Condition condition;
 
     /**
-     * 是否终结（即放弃所有剩余未筛选的数据）。
+     * 排序规则。修改时整体替换，读取的一方总是看到完整的列表。
      */
-    private boolean terminated;
+    private volatile List<Order> orders = Collections.emptyList();
 
     /**
-     * 标记位，是否筛选出指定索引范围、指定数量的数据。
+     * 修改次数，用于判断缓存的查询计划是否过期。
      */
-    private boolean readAll;
+    private volatile int revision;
+
+    /**
+     * 最近一次编译的查询计划。
+     */
+    private volatile SqlQuery<T> compiled;
 
     public Filter() {
         setDoFilterRange(0, -1);
@@ -37,20 +60,15 @@ public abstract class Filter<T> implements IFilter<T>{
     }
 
     /**
-     * 筛选数据。如果数据索引index < {@link Filter#start}则该数据被放弃。如果collected > {@link Filter#limit}，则剩余
-     * 所有数据都会被放弃，并且{@link Filter#isTerminated()}返回true。否则，通过{@link Filter#doIterativeFilter(Object)}筛选。
+     * 筛选数据。如果数据索引index < {@link Filter#start}则该数据被放弃。如果collected >= {@link Filter#limit}，则该数据
+     * 被放弃。否则，通过{@link Filter#doIterativeFilter(Object)}筛选。
      * @param index 当前被筛选数据的索引。
      * @param collected 当前已经有多少数据被选入结果集。
      * @return 当前被筛选数据是否被选入结果集。
      */
     public final boolean doFilter(T t, int index, int collected) {
-        if(!readAll) {
-            if(index < start) return false;
-            if(collected > limit) {
-                terminated = true;
-                return false;
-            }
-        }
+        if(index < start) return false;
+        if(limit > 0 && collected >= limit) return false;
         return doIterativeFilter(t);
     }
 
@@ -60,7 +78,7 @@ public abstract class Filter<T> implements IFilter<T>{
     public void setDoFilterRange(int start, int limit) {
         this.start = start;
         this.limit = limit;
-        readAll = start <= 0 && limit <= 0;
+        ++revision;
     }
 
     @Override
@@ -68,6 +86,44 @@ public abstract class Filter<T> implements IFilter<T>{
         return false;
     }
 
+    /**
+     * 设置声明式筛选条件，多次调用时以AND连接。
+     */
+    public Filter<T> where(Condition condition) {
+        this.condition = this.condition == null ? condition : this.condition.and(condition);
+        ++revision;
+        return this;
+    }
+
+    /**
+     * 追加排序规则，先追加的规则优先。
+     * @param field 排序字段。
+     * @param ascending 是否升序。
+     */
+    public Filter<T> orderBy(String field, boolean ascending) {
+        List<Order> orders = new ArrayList<>(this.orders);
+        orders.add(new Order(field, ascending));
+        this.orders = Collections.unmodifiableList(orders);
+        ++revision;
+        return this;
+    }
+
+    /**
+     * 是否需要在Java层对每条数据执行{@link #doIterativeFilter(Object)}。
+     * 只依赖{@link #where(Condition)}的筛选器应当返回false，这样筛选范围也可以交给SQL处理。
+     */
+    protected boolean isIterative() {
+        return true;
+    }
+
+    public Condition getCondition() {
+        return condition;
+    }
+
+    public List<Order> getOrders() {
+        return orders;
+    }
+
     public void setStart(int start) {
         setDoFilterRange(start, limit);
     }
@@ -84,7 +140,46 @@ public abstract class Filter<T> implements IFilter<T>{
         return limit;
     }
 
+    /**
+     * @deprecated 筛选器不再保存执行状态，总是返回false。筛选范围由{@link SqlQuery}执行。
+     */
+    @Deprecated
     public boolean isTerminated() {
-        return terminated;
+        return false;
+    }
+
+    int getRevision() {
+        return revision;
+    }
+
+    SqlQuery<T> getCompiled() {
+        return compiled;
+    }
+
+    void setCompiled(SqlQuery<T> compiled) {
+        this.compiled = compiled;
+    }
+
+    /**
+     * 排序规则。
+     */
+    public static final class Order {
+
+        private final String field;
+        private final boolean ascending;
+
+        public Order(String field, boolean ascending) {
+            Condition.checkField(field);
+            this.field = field;
+            this.ascending = ascending;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public boolean isAscending() {
+            return ascending;
+        }
     }
 }
@@ -0,0 +1,36 @@
+package com.synaric.app.rxmodel.filter;
+
+/**
+ * 只通过声明式条件筛选的筛选器，筛选完全在SQLite中完成。
+ * <br/><br/>例子：
+ * <pre>
+ * Filter&lt;GameBean&gt; filter = new QueryFilter&lt;GameBean&gt;(Condition.gt("size", 20000))
+ *         .orderBy("size", false);
+ * </pre>
+ */
+public class QueryFilter<T> extends Filter<T> {
+
+    public QueryFilter() {
+        super();
+    }
+
+    public QueryFilter(Condition condition) {
+        super();
+        where(condition);
+    }
+
+    public QueryFilter(Condition condition, int start, int limit) {
+        super(start, limit);
+        where(condition);
+    }
+
+    @Override
+    public boolean doIterativeFilter(T t) {
+        return true;
+    }
+
+    @Override
+    protected boolean isIterative() {
+        return false;
+    }
+}
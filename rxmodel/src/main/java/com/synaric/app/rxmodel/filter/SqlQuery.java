@@ -0,0 +1,243 @@
+package com.synaric.app.rxmodel.filter;
+
+import com.synaric.app.rxmodel.utils.ReflectUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 筛选器编译后的查询计划。
+ * 筛选条件中能够映射为SQL的部分编译为WHERE子句，其余部分（无法映射的条件、{@link Filter#doIterativeFilter(Object)}、
+ * 无法映射的排序）在Java层对查询结果逐条执行。
+ * 如果Java层没有需要执行的部分，筛选范围（start、limit）也会编译为LIMIT/OFFSET。
+ * 查询计划在编译时复制了筛选器的条件、排序和筛选范围，本身不可变，可以在多个线程上同时使用。
+ * 编译结果缓存在筛选器中，同一个筛选器再次以相同的字段映射编译时直接复用，修改筛选器后重新编译。
+ */
+public final class SqlQuery<T> {
+
+    private final Filter<T> filter;
+    private final FieldMapper mapper;
+    private final int revision;
+    private final String where;
+    private final String[] args;
+    private final Condition residual;
+    private final String orderBy;
+    private final Comparator<T> comparator;
+    private final boolean iterative;
+    private final boolean rangeInSql;
+    private final int start;
+    private final int limit;
+
+    private SqlQuery(Filter<T> filter,
+                     FieldMapper mapper,
+                     int revision,
+                     String where,
+                     String[] args,
+                     Condition residual,
+                     String orderBy,
+                     Comparator<T> comparator,
+                     int start,
+                     int limit) {
+        this.filter = filter;
+        this.mapper = mapper;
+        this.revision = revision;
+        this.where = where;
+        this.args = args;
+        this.residual = residual;
+        this.orderBy = orderBy;
+        this.comparator = comparator;
+        this.iterative = filter != null && filter.isIterative();
+        this.rangeInSql = residual == null && comparator == null && !iterative;
+        this.start = start;
+        this.limit = limit;
+    }
+
+    /**
+     * 编译筛选器。筛选器上次以同一个字段映射编译之后没有被修改时，直接返回上次的查询计划。
+     * @param filter 筛选器，可以为null，表示查询所有数据。
+     * @param mapper 字段映射，为null时所有条件都在Java层执行。
+     * @return 查询计划。
+     */
+    public static <T> SqlQuery<T> compile(Filter<T> filter, FieldMapper mapper) {
+        if (filter == null) return new SqlQuery<>(null, mapper, 0, null, new String[0], null, null, null, 0, -1);
+
+        //先读取修改次数：编译期间筛选器被修改时，缓存的查询计划会在下次编译时被视为过期
+        int revision = filter.getRevision();
+        SqlQuery<T> compiled = filter.getCompiled();
+        if (compiled != null && compiled.mapper == mapper && compiled.revision == revision) return compiled;
+
+        String where = null;
+        List<String> args = new ArrayList<>();
+        Condition residual = null;
+        Condition condition = filter.getCondition();
+        if (condition != null) {
+            StringBuilder sql = new StringBuilder();
+            if (condition.appendSql(mapper, sql, args)) {
+                where = sql.toString();
+            } else if (condition instanceof Condition.Junction && ((Condition.Junction) condition).isAnd()) {
+                //AND条件可以拆分：能翻译的部分交给SQL，剩余部分在Java层执行
+                List<Condition> pushed = new ArrayList<>();
+                List<Condition> remained = new ArrayList<>();
+                for (Condition child : ((Condition.Junction) condition).getChildren()) {
+                    if (child.appendSql(mapper, new StringBuilder(), new ArrayList<String>())) {
+                        pushed.add(child);
+                    } else {
+                        remained.add(child);
+                    }
+                }
+                args.clear();
+                if (!pushed.isEmpty()) {
+                    sql.setLength(0);
+                    Condition.and(pushed.toArray(new Condition[pushed.size()])).appendSql(mapper, sql, args);
+                    where = sql.toString();
+                }
+                residual = Condition.and(remained.toArray(new Condition[remained.size()]));
+            } else {
+                args.clear();
+                residual = condition;
+            }
+        }
+
+        String orderBy = null;
+        Comparator<T> comparator = null;
+        List<Filter.Order> orders = filter.getOrders();
+        if (!orders.isEmpty()) {
+            StringBuilder sql = new StringBuilder();
+            for (Filter.Order order : orders) {
+                String column = mapper == null ? null : mapper.map(order.getField());
+                if (column == null) {
+                    sql = null;
+                    break;
+                }
+                if (sql.length() > 0) sql.append(", ");
+                sql.append(column).append(order.isAscending() ? " asc" : " desc");
+            }
+            if (sql != null) {
+                orderBy = sql.toString();
+            } else {
+                comparator = new OrderComparator<>(new ArrayList<>(orders));
+            }
+        }
+
+        SqlQuery<T> query = new SqlQuery<>(filter, mapper, revision, where, args.toArray(new String[args.size()]),
+                residual, orderBy, comparator, filter.getStart(), filter.getLimit());
+        filter.setCompiled(query);
+        return query;
+    }
+
+    /**
+     * 以另一个筛选数量创建查询计划，其余部分不变，例如只查询第一条数据时。不会修改筛选器，也不会被缓存。
+     * @param limit 最多筛选出的数据数，-1表示不限制。
+     */
+    public SqlQuery<T> withLimit(int limit) {
+        if (limit == this.limit) return this;
+        return new SqlQuery<>(filter, mapper, revision, where, args, residual, orderBy, comparator, start, limit);
+    }
+
+    /**
+     * 编译前的筛选器，查询所有数据时为null。
+     */
+    public Filter<T> getFilter() {
+        return filter;
+    }
+
+    /**
+     * WHERE子句（不含"where"关键字），没有条件时为null。
+     */
+    public String getWhere() {
+        return where;
+    }
+
+    /**
+     * WHERE子句的绑定参数。
+     */
+    public String[] getArgs() {
+        return args;
+    }
+
+    /**
+     * ORDER BY子句（不含"order by"关键字），没有排序或排序需要在Java层完成时为null。
+     */
+    public String getOrderBy() {
+        return orderBy;
+    }
+
+    /**
+     * 查询结果是否需要在Java层排序。
+     */
+    public boolean isSortInJava() {
+        return comparator != null;
+    }
+
+    /**
+     * 是否所有筛选都在SQL中完成，此时SQL查询结果即为最终结果，Java层无需解析后再筛选。
+     */
+    public boolean isFullyInSql() {
+        return rangeInSql;
+    }
+
+    /**
+     * 编译到SQL中的LIMIT，-1表示不限制。
+     */
+    public int getSqlLimit() {
+        return rangeInSql && limit > 0 ? limit : -1;
+    }
+
+    /**
+     * 编译到SQL中的OFFSET，0表示不跳过。
+     */
+    public int getSqlOffset() {
+        return rangeInSql && start > 0 ? start : 0;
+    }
+
+    /**
+     * 需要在Java层跳过的结果数。
+     */
+    public int getJavaStart() {
+        return rangeInSql ? 0 : Math.max(start, 0);
+    }
+
+    /**
+     * 需要在Java层限制的结果数，-1表示不限制。
+     */
+    public int getJavaLimit() {
+        return rangeInSql || limit <= 0 ? -1 : limit;
+    }
+
+    /**
+     * 在Java层判断一条SQL查询结果是否满足筛选器中无法翻译为SQL的部分。
+     */
+    public boolean accept(T t) {
+        if (residual != null && !residual.matches(t)) return false;
+        return !iterative || filter.doIterativeFilter(t);
+    }
+
+    /**
+     * 在Java层排序。
+     */
+    public void sort(List<T> list) {
+        if (comparator != null) Collections.sort(list, comparator);
+    }
+
+    private static class OrderComparator<T> implements Comparator<T> {
+
+        private final List<Filter.Order> orders;
+
+        OrderComparator(List<Filter.Order> orders) {
+            this.orders = orders;
+        }
+
+        @Override
+        public int compare(T a, T b) {
+            for (Filter.Order order : orders) {
+                int result = Condition.compareValues(
+                        ReflectUtils.getFieldValue(a, order.getField()),
+                        ReflectUtils.getFieldValue(b, order.getField()));
+                if (result != 0) return order.isAscending() ? result : -result;
+            }
+            return 0;
+        }
+    }
+}
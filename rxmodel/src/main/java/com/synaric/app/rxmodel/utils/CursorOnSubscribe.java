@@ -0,0 +1,100 @@
+package com.synaric.app.rxmodel.utils;
+
+import android.database.Cursor;
+
+import com.synaric.app.rxmodel.converter.Converter;
+import com.synaric.app.rxmodel.filter.SqlQuery;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import rx.Observer;
+import rx.functions.Func0;
+import rx.observables.SyncOnSubscribe;
+
+/**
+ * 基于Cursor的流式查询，支持背压。
+ * 每次下游请求数据时才从Cursor读取并解析下一条满足条件的数据，Cursor本身按CursorWindow分批从SQLite加载，
+ * 因此内存占用与表的大小无关。数据读取完毕、出错或者订阅被取消时，Cursor会被关闭。
+ * 如果查询计划需要在Java层排序，则无法流式读取，会先读取全部结果排序后再逐条发送。
+ */
+public class CursorOnSubscribe<T> extends SyncOnSubscribe<CursorOnSubscribe.State<T>, T> {
+
+    private final Func0<Cursor> cursorFactory;
+    private final Converter<T> converter;
+    private final SqlQuery<T> query;
+
+    /**
+     * @param cursorFactory 在订阅时执行查询，返回结果指针。返回null时直接结束。
+     * @param converter 文档模型-对象模型转换器。
+     * @param query 查询计划。
+     */
+    public CursorOnSubscribe(Func0<Cursor> cursorFactory, Converter<T> converter, SqlQuery<T> query) {
+        this.cursorFactory = cursorFactory;
+        this.converter = converter;
+        this.query = query;
+    }
+
+    @Override
+    protected State<T> generateState() {
+        return new State<>(cursorFactory.call());
+    }
+
+    @Override
+    protected State<T> next(State<T> state, Observer<? super T> observer) {
+        Cursor cursor = state.cursor;
+        if(cursor == null) {
+            observer.onCompleted();
+            return state;
+        }
+
+        if(query.isSortInJava()) {
+            if(state.sorted == null) {
+                List<T> result = new ArrayList<>();
+                SqlUtils.readDocumentsFromCursor(cursor, converter, query, result);
+                state.sorted = result.iterator();
+            }
+            if(state.sorted.hasNext()) {
+                observer.onNext(state.sorted.next());
+            } else {
+                observer.onCompleted();
+            }
+            return state;
+        }
+
+        int start = query.getJavaStart();
+        int limit = query.getJavaLimit();
+        while(limit <= 0 || state.emitted < limit) {
+            if(!cursor.moveToNext()) break;
+            T t = SqlUtils.readDocument(cursor, 1, converter);//表结构： | _id | value |
+            if(!query.accept(t)) continue;
+            if(state.matched++ < start) continue;
+            ++state.emitted;
+            observer.onNext(t);
+            return state;
+        }
+        observer.onCompleted();
+        return state;
+    }
+
+    @Override
+    protected void onUnsubscribe(State<T> state) {
+        if(state.cursor != null) state.cursor.close();
+    }
+
+    /**
+     * 一次订阅的读取状态。
+     */
+    static final class State<T> {
+
+        private final Cursor cursor;
+        private int matched;
+        private int emitted;
+        private Iterator<T> sorted;
+
+        State(Cursor cursor) {
+            this.cursor = cursor;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.synaric.app.rxmodel.utils;
+
+import com.google.gson.FieldNamingStrategy;
+import com.google.gson.Gson;
+import com.google.gson.annotations.SerializedName;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 将字段路径解析为文档模型中的Json路径。
+ * 筛选条件、排序、索引、投影和按字段修改中的字段路径都是Java字段名（嵌套字段以"."分隔）：
+ * 在Java层通过反射读取，在SQL中通过这里解析出的Json名称读取，两者始终指向同一个字段。
+ * Json名称与Gson的序列化一致：字段有{@code @SerializedName}时取其值，否则由Gson的{@link FieldNamingStrategy}转换。
+ */
+public final class JsonFieldResolver {
+
+    private final Class<?> clz;
+    private final FieldNamingStrategy strategy;
+    private final ConcurrentHashMap<String, String[]> cache = new ConcurrentHashMap<>();
+
+    /**
+     * @param clz 对象模型的类型。
+     * @param gson 序列化文档模型使用的Gson。
+     */
+    public JsonFieldResolver(Class<?> clz, Gson gson) {
+        this.clz = clz;
+        this.strategy = gson.fieldNamingStrategy();
+    }
+
+    /**
+     * 解析字段路径。找不到的字段（例如Map中的键）保持原样，其后的各级也保持原样。
+     * @param path 字段路径，嵌套字段以"."分隔。
+     * @return Json路径的各级名称。
+     */
+    public String[] resolve(String path) {
+        String[] names = cache.get(path);
+        if (names != null) return names;
+        String[] segments = path.split("\\.");
+        names = new String[segments.length];
+        Class<?> type = clz;
+        for (int i = 0; i < segments.length; i++) {
+            Field field = type == null ? null : ReflectUtils.getField(type, segments[i]);
+            if (field == null) {
+                names[i] = segments[i];
+                type = null;
+                continue;
+            }
+            SerializedName serializedName = field.getAnnotation(SerializedName.class);
+            names[i] = serializedName != null ? serializedName.value() : strategy.translateName(field);
+            type = field.getType();
+        }
+        cache.putIfAbsent(path, names);
+        return names;
+    }
+}
@@ -0,0 +1,199 @@
+package com.synaric.app.rxmodel.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 从Json格式的文档模型中提取指定字段，不解析为对象模型。
+ * 扫描时跳过不需要的字段，所有字段都找到后立即停止，不读取文档的剩余部分。
+ * 提取的值与SQLite的json_extract保持一致：整数为Long，小数为Double，布尔值为1/0，字符串为String，
+ * 对象和数组为Json字符串，不存在的字段为null。
+ */
+public final class JsonProjection {
+
+    private final String[] fields;
+    private final Node root = new Node(null);
+    private final int leafCount;
+
+    /**
+     * @param fields 字段路径，嵌套字段以"."分隔。字段路径与Json名称相同。
+     */
+    public JsonProjection(String[] fields) {
+        this(fields, splitAll(fields));
+    }
+
+    /**
+     * @param fields 字段路径，作为结果的键。
+     * @param paths 每个字段在文档模型中的Json路径的各级名称，参见{@link JsonFieldResolver}。
+     */
+    public JsonProjection(String[] fields, String[][] paths) {
+        this.fields = fields;
+        int leaves = 0;
+        for (int i = 0; i < fields.length; i++) {
+            String field = fields[i];
+            Node node = root;
+            for (String name : paths[i]) {
+                Node child = node.children.get(name);
+                if (child == null) {
+                    child = new Node(null);
+                    node.children.put(name, child);
+                }
+                node = child;
+            }
+            if (node.path == null) {
+                node.path = field;
+                ++leaves;
+            }
+        }
+        leafCount = leaves;
+    }
+
+    private static String[][] splitAll(String[] fields) {
+        String[][] paths = new String[fields.length][];
+        for (int i = 0; i < fields.length; i++) {
+            paths[i] = fields[i].split("\\.");
+        }
+        return paths;
+    }
+
+    /**
+     * 扫描一个文档模型。
+     * @return 字段路径 -> 值，按照字段声明的顺序排列。
+     */
+    public Map<String, Object> scan(Reader in) throws IOException {
+        Map<String, Object> values = newResult();
+        JsonReader reader = new JsonReader(in);
+        reader.setLenient(true);
+        if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+            scanObject(reader, root, values, new int[1]);
+        }
+        return values;
+    }
+
+    private Map<String, Object> newResult() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String field : fields) {
+            values.put(field, null);
+        }
+        return values;
+    }
+
+    /**
+     * @return 是否已经找到所有字段。
+     */
+    private boolean scanObject(JsonReader reader, Node node, Map<String, Object> values, int[] found)
+            throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            Node child = node.children.get(reader.nextName());
+            if (child == null) {
+                reader.skipValue();
+                continue;
+            }
+            JsonToken token = reader.peek();
+            if (child.path != null && !child.children.isEmpty() && token == JsonToken.BEGIN_OBJECT) {
+                //既是需要的字段，又是其他字段的上级，整体解析后再从中提取
+                JsonElement element = new JsonParser().parse(reader);
+                found[0] += collect(element, child, values);
+            } else if (child.path != null) {
+                values.put(child.path, readValue(reader));
+                ++found[0];
+            } else if (token == JsonToken.BEGIN_OBJECT) {
+                if (scanObject(reader, child, values, found)) return true;
+            } else {
+                reader.skipValue();
+            }
+            if (found[0] >= leafCount) return true;
+        }
+        reader.endObject();
+        return false;
+    }
+
+    private static int collect(JsonElement element, Node node, Map<String, Object> values) {
+        int found = 0;
+        if (node.path != null) {
+            values.put(node.path, toValue(element));
+            ++found;
+        }
+        if (!element.isJsonObject()) return found;
+        JsonObject object = element.getAsJsonObject();
+        for (Map.Entry<String, Node> entry : node.children.entrySet()) {
+            JsonElement child = object.get(entry.getKey());
+            if (child != null) found += collect(child, entry.getValue(), values);
+        }
+        return found;
+    }
+
+    private static Object readValue(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case NULL:
+                reader.nextNull();
+                return null;
+            case BOOLEAN:
+                return reader.nextBoolean() ? 1L : 0L;
+            case NUMBER:
+                return parseNumber(reader.nextString());
+            case STRING:
+                return reader.nextString();
+            default:
+                return new JsonParser().parse(reader).toString();
+        }
+    }
+
+    private static Object toValue(JsonElement element) {
+        if (element.isJsonNull()) return null;
+        if (!element.isJsonPrimitive()) return element.toString();
+        JsonPrimitive primitive = element.getAsJsonPrimitive();
+        if (primitive.isBoolean()) return primitive.getAsBoolean() ? 1L : 0L;
+        if (primitive.isNumber()) return parseNumber(primitive.getAsString());
+        return primitive.getAsString();
+    }
+
+    private static Object parseNumber(String number) {
+        if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+            try {
+                return Long.parseLong(number);
+            } catch (NumberFormatException e) {
+                //超出long的范围，按小数处理
+            }
+        }
+        return Double.parseDouble(number);
+    }
+
+    /**
+     * 将对象模型中的字段值转换为与{@link #scan(Reader)}一致的形式。
+     * 用于必须解析对象模型的情况（例如二进制的文档模型，或者筛选器需要在Java层执行）。
+     */
+    public static Object normalize(Object value, Gson gson) {
+        if (value == null) return null;
+        if (value instanceof Boolean) return (Boolean) value ? 1L : 0L;
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Number) return ((Number) value).doubleValue();
+        if (value instanceof String || value instanceof Character) return value.toString();
+        if (value instanceof Enum) return ((Enum<?>) value).name();
+        return gson.toJson(value);
+    }
+
+    private static final class Node {
+
+        String path;
+        final Map<String, Node> children = new HashMap<>();
+
+        Node(String path) {
+            this.path = path;
+        }
+    }
+}
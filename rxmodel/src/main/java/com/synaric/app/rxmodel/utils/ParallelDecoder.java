@@ -0,0 +1,213 @@
+package com.synaric.app.rxmodel.utils;
+
+import android.database.Cursor;
+
+import com.synaric.app.rxmodel.Metrics;
+import com.synaric.app.rxmodel.converter.Converter;
+import com.synaric.app.rxmodel.filter.SqlQuery;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * 并行解析查询结果。
+ * 读取线程按块从Cursor中取出原始的文档模型（String或者byte[]），交给线程池解析并执行Java层的筛选，
+ * 读取线程同时继续读取下一块。同时处理中的块数不超过线程数的两倍，以限制内存占用。
+ * 保持顺序时按块的读取顺序合并结果，与顺序读取的结果完全一致；不保持顺序时按块的完成顺序合并。
+ * 筛选范围（start、limit）在合并时执行，达到limit后停止读取并取消剩余的块。
+ * 筛选器的{@link com.synaric.app.rxmodel.filter.Filter#doIterativeFilter(Object)}会在多个线程上同时执行，必须是线程安全的。
+ */
+public final class ParallelDecoder {
+
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final int chunkSize;
+    private final boolean ordered;
+
+    /**
+     * @param executor 解析使用的线程池。
+     * @param parallelism 线程池的线程数。
+     * @param chunkSize 每块的行数。
+     * @param ordered 是否保持查询结果的顺序。
+     */
+    public ParallelDecoder(ExecutorService executor, int parallelism, int chunkSize, boolean ordered) {
+        this.executor = executor;
+        this.parallelism = Math.max(parallelism, 1);
+        this.chunkSize = Math.max(chunkSize, 1);
+        this.ordered = ordered;
+    }
+
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    /**
+     * 按查询计划读取SQL数据（第一项为_id，第二项为value），读取完成后关闭cursor。
+     * 与{@link SqlUtils#readDocumentsFromCursor(Cursor, Converter, SqlQuery, List)}相同，只是解析和筛选并行执行。
+     * 结果不足一块时直接在当前线程上解析。
+     * @param cursor 结果指针。
+     * @param converter 文档模型-对象模型转换器，必须是线程安全的。
+     * @param query 查询计划。
+     * @param result 结果集。
+     */
+    public <T> void read(Cursor cursor, Converter<T> converter, SqlQuery<T> query, List<T> result) {
+        if(cursor == null) return;
+        //需要在Java层排序时，必须先收集所有结果，排序后再截取范围；此时合并顺序不影响结果
+        boolean sort = query.isSortInJava();
+        Collector<T> collector = new Collector<>(result,
+                sort ? 0 : query.getJavaStart(), sort ? -1 : query.getJavaLimit());
+        CompletionService<List<T>> completion = ordered ? null : new ExecutorCompletionService<List<T>>(executor);
+        ArrayDeque<Future<List<T>>> pending = new ArrayDeque<>();
+        int maxPending = parallelism * 2;
+        int scanned = 0;
+        long waitNanos = 0;
+        try {
+            List<Object> chunk = new ArrayList<>(chunkSize);
+            while(!collector.isFull() && cursor.moveToNext()) {
+                ++scanned;
+                chunk.add(readRaw(cursor, 1, converter));//表结构： | _id | value |
+                if(chunk.size() < chunkSize) continue;
+                Callable<List<T>> task = new DecodeTask<>(chunk, converter, query);
+                pending.add(ordered ? executor.submit(task) : completion.submit(task));
+                chunk = new ArrayList<>(chunkSize);
+                while(pending.size() >= maxPending && !collector.isFull()) {
+                    long begin = System.nanoTime();
+                    collector.collect(take(pending, completion));
+                    waitNanos += System.nanoTime() - begin;
+                }
+            }
+            if(!chunk.isEmpty() && !collector.isFull()) {
+                if(pending.isEmpty()) {
+                    long begin = System.nanoTime();
+                    collector.collect(new DecodeTask<>(chunk, converter, query).call());
+                    waitNanos += System.nanoTime() - begin;
+                } else {
+                    Callable<List<T>> task = new DecodeTask<>(chunk, converter, query);
+                    pending.add(ordered ? executor.submit(task) : completion.submit(task));
+                }
+            }
+            while(!pending.isEmpty() && !collector.isFull()) {
+                long begin = System.nanoTime();
+                collector.collect(take(pending, completion));
+                waitNanos += System.nanoTime() - begin;
+            }
+            if(sort) SqlUtils.sortInJava(query, result, collector.from);
+            //解析在其他线程上执行，只把读取线程等待解析的时间计入转换耗时
+            Metrics.Recording recording = Metrics.current();
+            if(recording != null) {
+                recording.addCodec(waitNanos);
+                recording.addRows(scanned, result.size() - collector.from);
+            }
+        } finally {
+            for (Future<List<T>> future : pending) {
+                future.cancel(false);
+            }
+            cursor.close();
+        }
+    }
+
+    /**
+     * 读取当前行的原始文档模型，不解析。
+     */
+    private static Object readRaw(Cursor cursor, int column, Converter<?> converter) {
+        if(converter.isBinary() && cursor.getType(column) == Cursor.FIELD_TYPE_BLOB) {
+            return cursor.getBlob(column);
+        }
+        return cursor.getString(column);
+    }
+
+    /**
+     * 取出下一块的结果：保持顺序时等待最早提交的块，否则等待任意一个完成的块。
+     */
+    private <T> List<T> take(ArrayDeque<Future<List<T>>> pending, CompletionService<List<T>> completion) {
+        try {
+            Future<List<T>> future;
+            if(completion == null) {
+                future = pending.poll();
+            } else {
+                future = completion.take();
+                pending.remove(future);
+            }
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while decoding documents.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if(cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * 解析一块文档模型，返回满足Java层筛选的对象模型，保持块内的顺序。
+     */
+    private static final class DecodeTask<T> implements Callable<List<T>> {
+
+        private final List<Object> documents;
+        private final Converter<T> converter;
+        private final SqlQuery<T> query;
+
+        DecodeTask(List<Object> documents, Converter<T> converter, SqlQuery<T> query) {
+            this.documents = documents;
+            this.converter = converter;
+            this.query = query;
+        }
+
+        @Override
+        public List<T> call() {
+            List<T> accepted = new ArrayList<>();
+            for (Object document : documents) {
+                T t;
+                if(document == null) {
+                    t = null;
+                } else if(document instanceof byte[]) {
+                    t = converter.convertToObject((byte[]) document);
+                } else {
+                    t = converter.convertToObject((String) document);
+                }
+                if(query.accept(t)) accepted.add(t);
+            }
+            return accepted;
+        }
+    }
+
+    /**
+     * 合并各块的结果，并执行筛选范围。
+     */
+    private static final class Collector<T> {
+
+        private final List<T> result;
+        private final int from;
+        private final int start;
+        private final int limit;
+        private int matched;
+
+        Collector(List<T> result, int start, int limit) {
+            this.result = result;
+            this.from = result.size();
+            this.start = start;
+            this.limit = limit;
+        }
+
+        void collect(List<T> accepted) {
+            for (T t : accepted) {
+                if(isFull()) return;
+                if(matched++ < start) continue;
+                result.add(t);
+            }
+        }
+
+        boolean isFull() {
+            return limit > 0 && result.size() - from >= limit;
+        }
+    }
+}
@@ -1,11 +1,14 @@
 package com.synaric.app.rxmodel.utils;
 
+import com.google.gson.annotations.SerializedName;
 import com.google.gson.internal.$Gson$Types;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 反射相关工具类。
@@ -13,6 +16,18 @@ import java.lang.reflect.Type;
  */
 public class ReflectUtils {
 
+    /**
+     * 缓存已经查找过的Field：类 -> 字段名 -> Field，不存在的字段记为{@link #MISSING}。
+     * 按类分两级查找，逐条筛选时不需要拼接字符串。
+     */
+    private static final ConcurrentHashMap<Class<?>, Map<String, Object>> FIELD_CACHE = new ConcurrentHashMap<>();
+
+    private static final Object MISSING = new Object();
+
+    /**
+     * 缓存枚举常量在Json中的名称。
+     */
+    private static final ConcurrentHashMap<Enum<?>, String> ENUM_NAME_CACHE = new ConcurrentHashMap<>();
 
     /**
      * 获取指定类的泛型参数的确切类型。
@@ -102,6 +117,74 @@ public class ReflectUtils {
         return null;
     }
 
+    /**
+     * 按路径获取指定对象的字段值，嵌套字段以"."分隔，例如"owner.name"。
+     * 查找到的Field会被缓存，适合在筛选时逐条调用。
+     * @return 字段值。如果路径上任意一级为null或字段不存在，返回null。
+     */
+    public static Object getFieldValue(Object object, String path) {
+        int from = 0;
+        while (object != null) {
+            int dot = path.indexOf('.', from);
+            String fieldName = dot < 0 ? path.substring(from) : path.substring(from, dot);
+            Field field = getField(object.getClass(), fieldName);
+            if (field == null) return null;
+            try {
+                object = field.get(object);
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+                return null;
+            }
+            if (dot < 0) return object;
+            from = dot + 1;
+        }
+        return null;
+    }
+
+    /**
+     * 获取枚举常量在Json中的名称，与Gson默认的枚举转换一致：声明了{@code @SerializedName}时使用其value，否则使用name()。
+     */
+    public static String getEnumName(Enum<?> value) {
+        String name = ENUM_NAME_CACHE.get(value);
+        if (name != null) return name;
+        name = value.name();
+        try {
+            SerializedName annotation = value.getDeclaringClass().getField(name).getAnnotation(SerializedName.class);
+            if (annotation != null) name = annotation.value();
+        } catch (NoSuchFieldException e) {
+            //枚举常量一定对应一个public字段，不会发生
+        }
+        ENUM_NAME_CACHE.put(value, name);
+        return name;
+    }
+
+    /**
+     * 在指定类及其超类中查找字段，结果（包括字段不存在）会被缓存。
+     * @return 已经设置为可访问的Field，不存在时返回null。
+     */
+    public static Field getField(Class<?> clz, String fieldName) {
+        Map<String, Object> fields = FIELD_CACHE.get(clz);
+        if (fields == null) {
+            fields = new ConcurrentHashMap<>();
+            Map<String, Object> existed = FIELD_CACHE.putIfAbsent(clz, fields);
+            if (existed != null) fields = existed;
+        }
+        Object cached = fields.get(fieldName);
+        if (cached != null) return cached == MISSING ? null : (Field) cached;
+
+        Field field = null;
+        for (Class<?> c = clz; c != null && c != Object.class && field == null; c = c.getSuperclass()) {
+            try {
+                field = c.getDeclaredField(fieldName);
+                field.setAccessible(true);
+            } catch (NoSuchFieldException e) {
+                //不处理，继续在超类寻找
+            }
+        }
+        fields.put(fieldName, field == null ? MISSING : field);
+        return field;
+    }
+
     /**
      * 获取指定对象的某个方法。
      */
@@ -3,6 +3,7 @@ package com.synaric.app.rxmodel.utils;
 import java.util.concurrent.Callable;
 
 import rx.Observable;
+import rx.Scheduler;
 import rx.Subscriber;
 import rx.android.schedulers.AndroidSchedulers;
 import rx.schedulers.Schedulers;
@@ -18,7 +19,18 @@ public class RxUtils {
      * 这个Observable将在{@link Schedulers#io()}线程被调用，在{@link AndroidSchedulers#mainThread()}回调结果。
      */
     public static <T> Observable<T> makeModelObservable(final Callable<T> func) {
-        return Observable.create(
+        return makeModelObservable(func, Schedulers.io(), AndroidSchedulers.mainThread());
+    }
+
+    /**
+     * 通过Callable创建Observable结果对象。
+     * @param subscribeScheduler 执行Callable的线程。
+     * @param resultScheduler 回调结果的线程，为null时在执行Callable的线程上直接回调。
+     */
+    public static <T> Observable<T> makeModelObservable(final Callable<T> func,
+                                                        Scheduler subscribeScheduler,
+                                                        Scheduler resultScheduler) {
+        Observable<T> observable = Observable.create(
                 new Observable.OnSubscribe<T>() {
                     @Override
                     public void call(Subscriber<? super T> subscriber) {
@@ -29,8 +41,34 @@ public class RxUtils {
                             e.printStackTrace();
                         }
                     }
-                })
-                .observeOn(AndroidSchedulers.mainThread())
-                .subscribeOn(Schedulers.io());
+                });
+        return observeOn(observable, resultScheduler).subscribeOn(subscribeScheduler);
+    }
+
+    /**
+     * 通过OnSubscribe创建逐条发送数据的Observable。
+     * 调度方式与{@link #makeModelObservable(Callable)}相同，下游的请求会被调度到{@link Schedulers#io()}线程，
+     * 因此数据源始终在同一个线程上被读取。
+     */
+    public static <T> Observable<T> makeModelStreamObservable(Observable.OnSubscribe<T> onSubscribe) {
+        return makeModelStreamObservable(onSubscribe, Schedulers.io(), AndroidSchedulers.mainThread());
+    }
+
+    /**
+     * 通过OnSubscribe创建逐条发送数据的Observable。
+     * @param subscribeScheduler 读取数据源的线程。
+     * @param resultScheduler 回调结果的线程，为null时在读取数据源的线程上直接回调。
+     */
+    public static <T> Observable<T> makeModelStreamObservable(Observable.OnSubscribe<T> onSubscribe,
+                                                              Scheduler subscribeScheduler,
+                                                              Scheduler resultScheduler) {
+        return observeOn(Observable.create(onSubscribe), resultScheduler).subscribeOn(subscribeScheduler);
+    }
+
+    /**
+     * 切换回调结果的线程，scheduler为null时不切换。
+     */
+    public static <T> Observable<T> observeOn(Observable<T> observable, Scheduler scheduler) {
+        return scheduler == null ? observable : observable.observeOn(scheduler);
     }
 }
@@ -1,14 +1,26 @@
 package com.synaric.app.rxmodel.utils;
 
+import android.database.CharArrayBuffer;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.synaric.app.rxmodel.Metrics;
 import com.synaric.app.rxmodel.converter.Converter;
+import com.synaric.app.rxmodel.filter.Condition;
 import com.synaric.app.rxmodel.filter.Filter;
-import com.synaric.app.rxmodel.filter.EmptyFilter;
+import com.synaric.app.rxmodel.filter.FieldMapper;
+import com.synaric.app.rxmodel.filter.SqlQuery;
 
+import java.io.CharArrayReader;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * SQL数据库工具类。
@@ -17,6 +29,26 @@ import java.util.List;
 @SuppressWarnings("unused")
 public class SqlUtils {
 
+    /**
+     * 读取文档模型时查询的列。
+     */
+    public static final String COLUMNS_DOCUMENT = "_id, value";
+
+    /**
+     * 单条语句中最多绑定的参数数量，低于SQLite默认的上限999。
+     */
+    public static final int MAX_BIND_ARGS = 500;
+
+    /**
+     * 读取文档模型时复用的字符数组，按线程隔离。容量不足时由Cursor扩容，之后一直保留。
+     */
+    private static final ThreadLocal<CharArrayBuffer> DOCUMENT_BUFFER = new ThreadLocal<CharArrayBuffer>() {
+        @Override
+        protected CharArrayBuffer initialValue() {
+            return new CharArrayBuffer(1024);
+        }
+    };
+
     /**
      * 定义SQL操作。
      */
@@ -52,6 +84,34 @@ public class SqlUtils {
         }
     }
 
+    /**
+     * 生成插入指定列的语句，插入项目用"?"代替。
+     * @param columns 要插入的列。
+     */
+    public static String ofBlankInsert(String op, String tableName, String[] columns) {
+        switch (op.toLowerCase()) {
+            case Operations.INSERT:
+            case Operations.INSERT_OR_REPLACE:
+            case Operations.INSERT_OR_IGNORE:
+                StringBuilder sBuilder = new StringBuilder();
+                sBuilder.append(op.toLowerCase())
+                        .append(" into ")
+                        .append(tableName)
+                        .append(" (");
+                for (int i = 0; i < columns.length; i++) {
+                    if(i > 0) sBuilder.append(", ");
+                    sBuilder.append(columns[i]);
+                }
+                sBuilder.append(") values(");
+                for (int i = 0; i < columns.length; i++) {
+                    sBuilder.append(i == 0 ? "?" : ", ?");
+                }
+                return sBuilder.append(")").toString();
+            default:
+                return null;
+        }
+    }
+
     /**
      * 生成表创建语句。如果表已经创建，则什么也不做。
      */
@@ -59,6 +119,181 @@ public class SqlUtils {
         return "create table if not exists " + tableName + " (_id VARCHAR primary key, value VARCHAR)";
     }
 
+    /**
+     * 生成索引列的列名，例如字段"owner.name"对应"idx_owner_name"。
+     */
+    public static String createIndexColumnName(String field) {
+        return "idx_" + field.replace('.', '_');
+    }
+
+    /**
+     * 生成为表新增索引列的语句。
+     */
+    public static String createAddColumn(String tableName, String column) {
+        return "alter table " + tableName + " add column " + column;
+    }
+
+    /**
+     * 生成索引创建语句。如果索引已经创建，则什么也不做。
+     */
+    public static String createIndex(String tableName, String column) {
+        return "create index if not exists " + tableName + "_" + column + " on " + tableName + "(" + column + ")";
+    }
+
+    /**
+     * 生成根据id更新指定列的语句，更新项目用"?"代替，最后一个参数为_id。
+     */
+    public static String createBlankUpdateById(String tableName, String[] columns) {
+        StringBuilder sBuilder = new StringBuilder("update ").append(tableName).append(" set ");
+        for (int i = 0; i < columns.length; i++) {
+            if(i > 0) sBuilder.append(", ");
+            sBuilder.append(columns[i]).append(" = ?");
+        }
+        return sBuilder.append(" where _id = ?").toString();
+    }
+
+    /**
+     * 读取表中已经存在的列。
+     */
+    public static List<String> readColumns(SQLiteDatabase db, String tableName) {
+        List<String> columns = new ArrayList<>();
+        Cursor cursor = db.rawQuery("pragma table_info(" + tableName + ")", null);
+        try {
+            int nameIndex = cursor.getColumnIndex("name");
+            while(cursor.moveToNext()) {
+                columns.add(cursor.getString(nameIndex));
+            }
+        } finally {
+            cursor.close();
+        }
+        return columns;
+    }
+
+    /**
+     * 读取查询计划，每一项为EXPLAIN QUERY PLAN结果中的detail列。
+     */
+    public static List<String> readQueryPlan(SQLiteDatabase db, String sql, String[] args) {
+        List<String> plan = new ArrayList<>();
+        Cursor cursor = db.rawQuery("explain query plan " + sql, args);
+        try {
+            int detailIndex = cursor.getColumnIndex("detail");
+            while(cursor.moveToNext()) {
+                plan.add(cursor.getString(detailIndex));
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan;
+    }
+
+    /**
+     * 按照Gson存储后的形式绑定参数，与json_extract从文档模型中取出的值一致：
+     * 整数、浮点数分别以INTEGER、REAL绑定，布尔值对应1/0，字符串（包括枚举的{@code @SerializedName}、日期等）以TEXT绑定，
+     * 对象和数组以Json文本绑定。
+     * @param gson 与文档模型相同配置的Gson。
+     */
+    public static void bindValue(SQLiteStatement stmt, int index, Object value, Gson gson) {
+        JsonElement element = value == null ? JsonNull.INSTANCE : gson.toJsonTree(value);
+        if(element.isJsonNull()) {
+            stmt.bindNull(index);
+        } else if(!element.isJsonPrimitive()) {
+            stmt.bindString(index, element.toString());
+        } else if(element.getAsJsonPrimitive().isBoolean()) {
+            stmt.bindLong(index, element.getAsBoolean() ? 1 : 0);
+        } else if(element.getAsJsonPrimitive().isNumber()) {
+            bindNumber(stmt, index, element.getAsString());
+        } else {
+            stmt.bindString(index, element.getAsString());
+        }
+    }
+
+    /**
+     * 按照Json中数值的文本绑定：与SQLite解析Json时一致，没有小数点和指数且在long范围内的以INTEGER绑定，其余以REAL绑定。
+     * 例如float的0.1按文本"0.1"绑定，而不是扩展为double后的0.10000000149011612。
+     */
+    private static void bindNumber(SQLiteStatement stmt, int index, String number) {
+        if(number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+            try {
+                stmt.bindLong(index, Long.parseLong(number));
+                return;
+            } catch (NumberFormatException e) {
+                //超出long的范围，按REAL绑定
+            }
+        }
+        stmt.bindDouble(index, Double.parseDouble(number));
+    }
+
+    /**
+     * 绑定文档模型。二进制的文档模型（{@link Converter#isBinary()}）以BLOB绑定，其余以TEXT绑定。
+     */
+    public static <T> void bindDocument(SQLiteStatement stmt, int index, Converter<T> converter, T t) {
+        Metrics.Recording recording = Metrics.current();
+        long begin = recording == null ? 0 : System.nanoTime();
+        if(converter.isBinary()) {
+            byte[] document = converter.convertToBytes(t);
+            if(recording != null) recording.addCodec(System.nanoTime() - begin);
+            stmt.bindBlob(index, document);
+        } else {
+            String document = converter.convertToDocument(t);
+            if(recording != null) recording.addCodec(System.nanoTime() - begin);
+            stmt.bindString(index, document);
+        }
+    }
+
+    /**
+     * 从当前行读取文档模型并转换为对象模型。BLOB按二进制的文档模型读取；
+     * 其余直接复制到当前线程复用的字符数组中转换，不为每一行创建String。
+     * 转换的时间计入当前线程上正在记录的{@link Metrics}。
+     * @param column 文档模型所在的列。
+     */
+    public static <T> T readDocument(Cursor cursor, int column, Converter<T> converter) {
+        Metrics.Recording recording = Metrics.current();
+        T t;
+        long begin;
+        if(converter.isBinary() && cursor.getType(column) == Cursor.FIELD_TYPE_BLOB) {
+            byte[] document = cursor.getBlob(column);
+            begin = recording == null ? 0 : System.nanoTime();
+            t = converter.convertToObject(document);
+        } else {
+            CharArrayBuffer buffer = DOCUMENT_BUFFER.get();
+            cursor.copyStringToBuffer(column, buffer);
+            if(buffer.sizeCopied == 0 && cursor.isNull(column)) return null;
+            begin = recording == null ? 0 : System.nanoTime();
+            t = converter.convertToObject(buffer.data, buffer.sizeCopied);
+        }
+        if(recording != null) recording.addCodec(System.nanoTime() - begin);
+        return t;
+    }
+
+    /**
+     * 按照SQLite中的存储类型读取当前行的一列：INTEGER为Long，REAL为Double，TEXT为String，BLOB为byte[]，NULL为null。
+     */
+    public static Object readValue(Cursor cursor, int column) {
+        switch (cursor.getType(column)) {
+            case Cursor.FIELD_TYPE_INTEGER:
+                return cursor.getLong(column);
+            case Cursor.FIELD_TYPE_FLOAT:
+                return cursor.getDouble(column);
+            case Cursor.FIELD_TYPE_STRING:
+                return cursor.getString(column);
+            case Cursor.FIELD_TYPE_BLOB:
+                return cursor.getBlob(column);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 从当前行的Json文档模型中提取指定字段，不解析为对象模型。文档模型复制到当前线程复用的字符数组中扫描。
+     * @param column 文档模型所在的列。
+     */
+    public static Map<String, Object> readFields(Cursor cursor, int column, JsonProjection projection)
+            throws IOException {
+        CharArrayBuffer buffer = DOCUMENT_BUFFER.get();
+        cursor.copyStringToBuffer(column, buffer);
+        return projection.scan(new CharArrayReader(buffer.data, 0, buffer.sizeCopied));
+    }
+
     /**
      * 生成INSERT语句。
      */
@@ -162,6 +397,219 @@ public class SqlUtils {
         return "select * from " + tableName;
     }
 
+    /**
+     * 生成从文档模型中提取字段的SQL表达式（需要SQLite支持JSON1扩展）。
+     * @param names Json路径的各级名称，参见{@link JsonFieldResolver}。
+     * @return SQL表达式；路径无法在SQL中表示时返回null。
+     */
+    public static String createJsonExtract(String[] names) {
+        String path = createJsonPath(names);
+        return path == null ? null : "json_extract(value, " + path + ")";
+    }
+
+    /**
+     * 生成Json路径的SQL字面量，例如'$.a.b'。名称不是简单的标识符时加双引号，例如'$."a-b"'。
+     * @param names Json路径的各级名称，参见{@link JsonFieldResolver}。
+     * @return SQL字面量；名称中含有双引号、无法在Json路径中表示时返回null。
+     */
+    public static String createJsonPath(String[] names) {
+        StringBuilder sBuilder = new StringBuilder("'$");
+        for (String name : names) {
+            if(name.isEmpty() || name.indexOf('"') >= 0) return null;
+            sBuilder.append('.');
+            if(name.matches("[A-Za-z_][A-Za-z0-9_]*")) {
+                sBuilder.append(name);
+            } else {
+                sBuilder.append('"').append(name.replace("'", "''")).append('"');
+            }
+        }
+        return sBuilder.append('\'').toString();
+    }
+
+    /**
+     * 根据查询计划生成SELECT语句，绑定参数通过{@link SqlQuery#getArgs()}获取。
+     * @param columns 要查询的列，例如"_id, value"。
+     */
+    public static String createSelect(String tableName, String columns, SqlQuery<?> query) {
+        StringBuilder sBuilder = new StringBuilder("select ")
+                .append(columns)
+                .append(" from ")
+                .append(tableName);
+        if(query.getWhere() != null) sBuilder.append(" where ").append(query.getWhere());
+        if(query.getOrderBy() != null) sBuilder.append(" order by ").append(query.getOrderBy());
+        int limit = query.getSqlLimit();
+        int offset = query.getSqlOffset();
+        if(limit > 0 || offset > 0) sBuilder.append(" limit ").append(limit);
+        if(offset > 0) sBuilder.append(" offset ").append(offset);
+        return sBuilder.toString();
+    }
+
+
+    /**
+     * 生成提取字段的SQL表达式列表，用于SELECT。
+     * @param mapper 字段 -> SQL表达式的映射。
+     * @return 以", "连接的表达式；任意字段无法映射时返回null。
+     */
+    public static String createProjection(String[] fields, FieldMapper mapper) {
+        StringBuilder sBuilder = new StringBuilder();
+        for (String field : fields) {
+            String expression = mapper.map(field);
+            if(expression == null) return null;
+            if(sBuilder.length() > 0) sBuilder.append(", ");
+            sBuilder.append(expression);
+        }
+        return sBuilder.toString();
+    }
+
+    /**
+     * 生成聚合查询语句：先按查询计划选出表达式的值（列名为v），再对其聚合。
+     * @param expression 被聚合的SQL表达式，为null时只统计行数。
+     * @param aggregate 对v的聚合表达式，例如"count(*)"、"total(v)"。
+     */
+    public static String createAggregate(String tableName, String expression, String aggregate, SqlQuery<?> query) {
+        String values = createSelect(tableName, (expression == null ? "1" : expression) + " as v", query);
+        return "select " + aggregate + " from (" + values + ")";
+    }
+
+    /**
+     * 生成分组统计语句：按表达式的值分组，查询每组的值和行数，按值升序排列。
+     */
+    public static String createGroupCount(String tableName, String expression, SqlQuery<?> query) {
+        String values = createSelect(tableName, expression + " as v", query);
+        return "select v, count(*) from (" + values + ") group by v order by v";
+    }
+
+    /**
+     * 生成按字段修改文档模型的UPDATE语句，不需要解析和重新生成文档模型。
+     * 字段通过json_set修改；值为null的字段通过json_remove移除，与Gson不输出null字段一致。
+     * 受影响的索引列从修改后的文档模型中重新提取。只能用于Json格式的文档模型，并且查询计划必须完全在SQL中执行。
+     * @param patch Json路径（{@link #createJsonPath(String[])}） -> Json格式的值，为null表示移除该字段。
+     * @param indexes 需要重新提取的索引列 -> Json路径（{@link #createJsonPath(String[])}）。
+     * @param single 是否只修改第一条满足条件的数据。
+     * @param args 输出参数，按顺序添加绑定参数。
+     */
+    public static String createJsonPatch(String tableName,
+                                         Map<String, String> patch,
+                                         Map<String, String> indexes,
+                                         SqlQuery<?> query,
+                                         boolean single,
+                                         List<String> args) {
+        //修改后的文档模型
+        StringBuilder set = new StringBuilder();
+        StringBuilder remove = new StringBuilder();
+        List<String> documentArgs = new ArrayList<>();
+        for (Map.Entry<String, String> entry : patch.entrySet()) {
+            String path = entry.getKey();
+            if(entry.getValue() == null) {
+                remove.append(", ").append(path);
+            } else {
+                set.append(", ").append(path).append(", json(?)");
+                documentArgs.add(entry.getValue());
+            }
+        }
+        String document = "value";
+        if(set.length() > 0) document = "json_set(" + document + set + ")";
+        if(remove.length() > 0) document = "json_remove(" + document + remove + ")";
+
+        StringBuilder sBuilder = new StringBuilder("update ")
+                .append(tableName)
+                .append(" set value = ")
+                .append(document);
+        args.addAll(documentArgs);
+        for (Map.Entry<String, String> index : indexes.entrySet()) {
+            sBuilder.append(", ").append(index.getKey())
+                    .append(" = json_extract(").append(document).append(", ").append(index.getValue()).append(")");
+            args.addAll(documentArgs);
+        }
+
+        if(single) {
+            //第一条满足条件的数据：筛选范围内的第一条
+            sBuilder.append(" where _id in (select _id from ").append(tableName);
+            if(query.getWhere() != null) sBuilder.append(" where ").append(query.getWhere());
+            if(query.getOrderBy() != null) sBuilder.append(" order by ").append(query.getOrderBy());
+            sBuilder.append(" limit 1");
+            if(query.getSqlOffset() > 0) sBuilder.append(" offset ").append(query.getSqlOffset());
+            sBuilder.append(")");
+        } else if(query.getSqlLimit() > 0 || query.getSqlOffset() > 0) {
+            //排序和范围只能在子查询中表达
+            sBuilder.append(" where _id in (").append(createSelect(tableName, "_id", query)).append(")");
+        } else if(query.getWhere() != null) {
+            sBuilder.append(" where ").append(query.getWhere());
+        }
+        Collections.addAll(args, query.getArgs());
+        return sBuilder.toString();
+    }
+
+    /**
+     * 生成键集分页的查询语句：按排序列和_id升序，从上一页最后一条之后开始读取，不需要跳过前面的数据。
+     * 筛选条件取自查询计划的WHERE子句，查询计划中的排序和范围被忽略。
+     * 查询的列依次为_id、value和排序列（如果有）。
+     * @param column 排序列，为null时只按_id排序。
+     * @param afterKey 上一页最后一条的排序列的值，afterId为null时忽略。
+     * @param afterId 上一页最后一条的_id，为null时从第一条开始。
+     * @param args 输出参数，按顺序添加绑定参数。
+     */
+    public static String createKeysetSelect(String tableName,
+                                            String column,
+                                            SqlQuery<?> query,
+                                            Object afterKey,
+                                            String afterId,
+                                            int limit,
+                                            List<String> args) {
+        StringBuilder sBuilder = new StringBuilder("select ")
+                .append(COLUMNS_DOCUMENT);
+        if(column != null) sBuilder.append(", ").append(column);
+        sBuilder.append(" from ").append(tableName);
+
+        String where = query.getWhere();
+        Collections.addAll(args, query.getArgs());
+        if(where != null) sBuilder.append(" where (").append(where).append(")");
+        if(afterId != null) {
+            sBuilder.append(where == null ? " where " : " and ");
+            if(column == null) {
+                sBuilder.append("_id > ?");
+            } else if(afterKey == null) {
+                //SQLite中null排在最前
+                sBuilder.append("((").append(column).append(" is null and _id > ?) or ")
+                        .append(column).append(" is not null)");
+            } else {
+                sBuilder.append("(").append(column).append(" > ");
+                Condition.appendValue(afterKey, sBuilder, args);
+                sBuilder.append(" or (").append(column).append(" = ");
+                Condition.appendValue(afterKey, sBuilder, args);
+                sBuilder.append(" and _id > ?))");
+            }
+            args.add(afterId);
+        }
+
+        sBuilder.append(" order by ");
+        if(column != null) sBuilder.append(column).append(", ");
+        return sBuilder.append("_id limit ").append(limit).toString();
+    }
+
+    /**
+     * 生成根据id查询的SELECT语句。
+     */
+    public static String createSelectById(String tableName) {
+        return "select " + COLUMNS_DOCUMENT + " from " + tableName + " where _id = ?";
+    }
+
+    /**
+     * 生成根据多个id查询的SELECT语句，id用count个"?"代替。
+     * @param count id的数量，不应超过{@link #MAX_BIND_ARGS}。
+     */
+    public static String createSelectByIds(String tableName, int count) {
+        if(count <= 0) throw new IllegalArgumentException("count must > 0.");
+        StringBuilder sBuilder = new StringBuilder("select ")
+                .append(COLUMNS_DOCUMENT)
+                .append(" from ")
+                .append(tableName)
+                .append(" where _id in (");
+        for (int i = 0; i < count; i++) {
+            sBuilder.append(i == 0 ? "?" : ", ?");
+        }
+        return sBuilder.append(")").toString();
+    }
 
     /**
      * 生成根据id删除的DELETE语句。
@@ -170,8 +618,37 @@ public class SqlUtils {
         return "delete from " + tableName + " where _id = ?";
     }
 
+    /**
+     * 生成根据多个id删除的DELETE语句。
+     * @param count id的数量。
+     */
+    public static String createBlankDeleteByIds(String tableName, int count) {
+        if(count <= 0) throw new IllegalArgumentException("count must > 0.");
+        StringBuilder sBuilder = new StringBuilder("delete from ")
+                .append(tableName)
+                .append(" where _id in (");
+        for (int i = 0; i < count; i++) {
+            sBuilder.append(i == 0 ? "?" : ", ?");
+        }
+        return sBuilder.append(")").toString();
+    }
+
+    /**
+     * 根据查询计划生成DELETE语句，绑定参数通过{@link SqlQuery#getArgs()}获取。
+     * 查询计划必须能完全在SQL中执行（{@link SqlQuery#isFullyInSql()}）。
+     * 带有筛选范围或排序时，通过子查询选出要删除的_id。
+     */
+    public static String createDelete(String tableName, SqlQuery<?> query) {
+        if(query.getOrderBy() != null || query.getSqlLimit() > 0 || query.getSqlOffset() > 0) {
+            return "delete from " + tableName + " where _id in (" + createSelect(tableName, "_id", query) + ")";
+        }
+        if(query.getWhere() == null) return "delete from " + tableName;
+        return "delete from " + tableName + " where " + query.getWhere();
+    }
+
     /**
      * 读取特定格式的指定索引范围的SQL数据（第一项为_id，第二项为value），读取完成后关闭cursor。
+     * 筛选器的条件、排序和筛选范围都在Java层逐条执行，与{@link #readDocumentsFromCursor(Cursor, Converter, SqlQuery, List)}一致。
      * @param cursor 结果指针。
      * @param converter 文档模型-对象模型转换器。
      * @param filter 筛选器，筛选出满足特定条件都额数据。
@@ -182,28 +659,60 @@ public class SqlUtils {
                                                    Filter<T> filter,
                                                    List<T> result) {
         if(result == null) result = new ArrayList<>();
+        readDocumentsFromCursor(cursor, converter, SqlQuery.compile(filter, null), result);
+    }
+
+    /**
+     * 按查询计划读取SQL数据（第一项为_id，第二项为value），读取完成后关闭cursor。
+     * 查询计划中无法在SQL中完成的筛选、排序和筛选范围在这里逐条执行。
+     * @param cursor 结果指针。
+     * @param converter 文档模型-对象模型转换器。
+     * @param query 查询计划。
+     * @param result 结果集。
+     */
+    public static <T> void readDocumentsFromCursor(Cursor cursor,
+                                                   Converter<T> converter,
+                                                   SqlQuery<T> query,
+                                                   List<T> result) {
         if(cursor == null) return;
-        if(filter == null) filter = new EmptyFilter<>();
         try {
 
-            int index = 0;
-            int collected = 0;
+            //需要在Java层排序时，必须先收集所有结果，排序后再截取范围
+            boolean sort = query.isSortInJava();
+            int start = sort ? 0 : query.getJavaStart();
+            int limit = sort ? -1 : query.getJavaLimit();
+            int matched = 0;
+            int scanned = 0;
+            int from = result.size();
             while(cursor.moveToNext()) {
-                String value = cursor.getString(1);//表结构： | _id | value |
-                T t = converter.convertToObject(value);
-                if(filter.doFilter(t, index, collected)){
-                    result.add(t);
-                    ++collected;
-                }
-                if(filter.isTerminated()) break;
-                ++index;
+                ++scanned;
+                T t = readDocument(cursor, 1, converter);//表结构： | _id | value |
+                if(!query.accept(t)) continue;
+                if(matched++ < start) continue;
+                result.add(t);
+                if(limit > 0 && result.size() - from >= limit) break;
             }
+            if(sort) sortInJava(query, result, from);
+            Metrics.Recording recording = Metrics.current();
+            if(recording != null) recording.addRows(scanned, result.size() - from);
 
         } finally {
             cursor.close();
         }
     }
 
+    /**
+     * 对结果集中从from开始的部分在Java层排序，再截取筛选范围。
+     */
+    static <T> void sortInJava(SqlQuery<T> query, List<T> result, int from) {
+        List<T> sorted = new ArrayList<>(result.subList(from, result.size()));
+        query.sort(sorted);
+        result.subList(from, result.size()).clear();
+        int skip = Math.min(query.getJavaStart(), sorted.size());
+        int end = query.getJavaLimit() > 0 ? Math.min(skip + query.getJavaLimit(), sorted.size()) : sorted.size();
+        result.addAll(sorted.subList(skip, end));
+    }
+
     /**
      * 检查指定数据库是否为空。
      * @param db 需要检查的数据库。
@@ -0,0 +1,99 @@
+package com.synaric.app.rxmodel.utils;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 预编译语句缓存。
+ * 同一条SQL只编译一次，之后每次执行只需重新绑定参数，避免重复拼接SQL、重复编译。
+ * SQLiteStatement不是线程安全的，因此语句以借出/归还的方式使用：通过{@link #acquire(SQLiteDatabase, String)}借出的语句
+ * 只被当前线程使用，使用完毕后通过{@link #release(SQLiteDatabase, String, SQLiteStatement)}归还。
+ * 多个线程同时执行同一条SQL时，后借出的线程编译新的语句，归还时多余的语句被关闭。
+ * 最多缓存{@link #maxSize}条空闲的语句，超出时关闭最久未使用的语句；{@link #close()}后关闭所有语句。
+ */
+public class StatementCache {
+
+    private final int maxSize;
+    private boolean closed;
+
+    /**
+     * SQL -> 空闲的语句，按最近使用的顺序排列。
+     */
+    private final LinkedHashMap<String, Entry> idle = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() <= maxSize) return false;
+            eldest.getValue().statement.close();
+            return true;
+        }
+    };
+
+    public StatementCache(int maxSize) {
+        if (maxSize <= 0) throw new IllegalArgumentException("maxSize must > 0.");
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 借出指定SQL的预编译语句，没有空闲的语句时编译新的语句。
+     * 返回的语句没有绑定参数，使用完毕后必须通过{@link #release(SQLiteDatabase, String, SQLiteStatement)}归还，不应关闭它。
+     * @param db 执行语句的数据库。数据库变化（例如重新打开）时，语句会被重新编译。
+     * @param sql SQL语句，参数用"?"代替。
+     * @return 预编译语句。
+     */
+    public SQLiteStatement acquire(SQLiteDatabase db, String sql) {
+        Entry entry;
+        synchronized (this) {
+            entry = idle.remove(sql);
+        }
+        if (entry != null && entry.db == db && db.isOpen()) return entry.statement;
+        if (entry != null) entry.statement.close();
+        return db.compileStatement(sql);
+    }
+
+    /**
+     * 归还通过{@link #acquire(SQLiteDatabase, String)}借出的语句，清除其绑定参数。
+     * 已经关闭，或者已经有同一条SQL的空闲语句时，关闭归还的语句。
+     */
+    public void release(SQLiteDatabase db, String sql, SQLiteStatement statement) {
+        statement.clearBindings();
+        synchronized (this) {
+            if (!closed && db.isOpen() && !idle.containsKey(sql)) {
+                idle.put(sql, new Entry(db, statement));
+                return;
+            }
+        }
+        statement.close();
+    }
+
+    /**
+     * 关闭并移除所有空闲的语句。
+     */
+    public synchronized void clear() {
+        for (Entry entry : idle.values()) {
+            entry.statement.close();
+        }
+        idle.clear();
+    }
+
+    /**
+     * 关闭所有空闲的语句，之后归还的语句也会被关闭。
+     */
+    public synchronized void close() {
+        closed = true;
+        clear();
+    }
+
+    private static final class Entry {
+
+        private final SQLiteDatabase db;
+        private final SQLiteStatement statement;
+
+        Entry(SQLiteDatabase db, SQLiteStatement statement) {
+            this.db = db;
+            this.statement = statement;
+        }
+    }
+}
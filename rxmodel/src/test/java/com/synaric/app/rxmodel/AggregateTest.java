@@ -0,0 +1,70 @@
+package com.synaric.app.rxmodel;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 在Java层执行的聚合，结果与SQLite的聚合函数一致。
+ */
+public class AggregateTest {
+
+    private static Object aggregate(Aggregate aggregate, Object... values) {
+        Aggregate.Accumulator accumulator = aggregate.newAccumulator();
+        for (Object value : values) {
+            accumulator.add(value);
+        }
+        return accumulator.result();
+    }
+
+    @Test
+    public void count() {
+        //count(*)同样统计null
+        assertEquals(3L, aggregate(Aggregate.COUNT, 1, null, "a"));
+        assertEquals(0L, aggregate(Aggregate.COUNT));
+    }
+
+    @Test
+    public void sum() {
+        //total()忽略null和非数字，结果为小数
+        assertEquals(4.5, aggregate(Aggregate.SUM, 1, 2L, 1.5, null, "a"));
+        assertEquals(0.0, aggregate(Aggregate.SUM));
+    }
+
+    @Test
+    public void avg() {
+        assertEquals(2.0, aggregate(Aggregate.AVG, 1, 3, null));
+        assertNull(aggregate(Aggregate.AVG, null, "a"));
+    }
+
+    @Test
+    public void minMax() {
+        assertEquals(1, aggregate(Aggregate.MIN, 3, null, 1, 2.5));
+        assertEquals(2.5, aggregate(Aggregate.MAX, 1, null, 2.5, 2L));
+        //文本大于数字
+        assertEquals("a", aggregate(Aggregate.MAX, 10, "a"));
+        assertEquals(10, aggregate(Aggregate.MIN, 10, "a"));
+        assertNull(aggregate(Aggregate.MIN, (Object) null));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void group() {
+        Map<Object, Long> groups = (Map<Object, Long>) aggregate(Aggregate.GROUP, "b", 2, "a", 2, null, "b");
+
+        //按SQLite的顺序排列：null、数字、文本
+        assertEquals(Arrays.<Object>asList(null, 2, "a", "b"), Arrays.asList(groups.keySet().toArray()));
+        Iterator<Long> counts = groups.values().iterator();
+        assertEquals(Long.valueOf(1), counts.next());
+        assertEquals(Long.valueOf(2), counts.next());
+        assertEquals(Long.valueOf(1), counts.next());
+        assertEquals(Long.valueOf(2), counts.next());
+        assertFalse(counts.hasNext());
+    }
+}
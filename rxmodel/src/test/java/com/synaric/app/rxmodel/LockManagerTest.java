@@ -0,0 +1,58 @@
+package com.synaric.app.rxmodel;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 流式读取的锁：阻止写操作，并且可以在其他线程上结束。
+ */
+public class LockManagerTest {
+
+    @Test
+    public void writeWaitsForStream() throws Exception {
+        LockManager lockManager = new LockManager(true);
+        final LockManager.TableLock lock = lockManager.getLock("Game");
+        lock.lockStream();
+
+        final CountDownLatch written = new CountDownLatch(1);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                lock.lockWrite();
+                lock.unlockWrite();
+                written.countDown();
+            }
+        });
+        writer.start();
+        assertFalse(written.await(100, TimeUnit.MILLISECONDS));
+
+        //在获取锁之外的线程上结束
+        Thread closer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                lock.unlockStream();
+            }
+        });
+        closer.start();
+        closer.join();
+        assertTrue(written.await(5, TimeUnit.SECONDS));
+        //等待流式读取计入锁竞争
+        assertEquals(1, lockManager.getStats("Game").getContended());
+    }
+
+    @Test
+    public void walDoesNotLock() throws Exception {
+        LockManager.TableLock lock = new LockManager(false).getLock("Game");
+        lock.lockStream();
+
+        assertEquals(0, lock.lockWrite());
+        lock.unlockWrite();
+        lock.unlockStream();
+    }
+}
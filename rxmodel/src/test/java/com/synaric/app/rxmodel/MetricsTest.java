@@ -0,0 +1,61 @@
+package com.synaric.app.rxmodel;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 耗时分布的统计。
+ */
+public class MetricsTest {
+
+    @Test
+    public void empty() {
+        Metrics.Histogram histogram = new Metrics.Histogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMeanNanos());
+        assertEquals(0, histogram.getPercentileNanos(50));
+        assertEquals(0, histogram.getMaxNanos());
+    }
+
+    @Test
+    public void record() {
+        Metrics.Histogram histogram = new Metrics.Histogram();
+        histogram.record(100);
+        histogram.record(300);
+        histogram.record(-5);
+
+        assertEquals(3, histogram.getCount());
+        //负数按0记录
+        assertEquals(400, histogram.getTotalNanos());
+        assertEquals(133, histogram.getMeanNanos());
+        assertEquals(300, histogram.getMaxNanos());
+    }
+
+    @Test
+    public void percentile() {
+        Metrics.Histogram histogram = new Metrics.Histogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(100);
+        }
+        histogram.record(1000000);
+
+        //100所在区间为[64, 127]，取区间上界
+        assertEquals(127, histogram.getPercentileNanos(50));
+        assertEquals(127, histogram.getPercentileNanos(99));
+        //不超过最大值
+        assertEquals(1000000, histogram.getPercentileNanos(100));
+        assertEquals(127, histogram.getPercentileNanos(-1));
+        assertEquals(1000000, histogram.getPercentileNanos(200));
+    }
+
+    @Test
+    public void zero() {
+        Metrics.Histogram histogram = new Metrics.Histogram();
+        histogram.record(0);
+
+        assertEquals(0, histogram.getPercentileNanos(50));
+        assertEquals(0, histogram.getPercentileNanos(100));
+    }
+}
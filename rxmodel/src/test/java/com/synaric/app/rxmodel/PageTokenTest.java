@@ -0,0 +1,74 @@
+package com.synaric.app.rxmodel;
+
+import android.util.Base64;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * 续页标记的编码与解码。标记使用android.util.Base64，因此通过Robolectric运行。
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class PageTokenTest {
+
+    private static Page.Token roundTrip(String field, Object key, String id) {
+        return Page.Token.decode(new Page.Token(field, key, id).encode(), field);
+    }
+
+    private static String base64(String json) {
+        return Base64.encodeToString(json.getBytes(), Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING);
+    }
+
+    @Test
+    public void keys() {
+        assertEquals(42L, roundTrip("size", 42L, "a").key);
+        assertEquals(-0.5, roundTrip("rating", -0.5, "a").key);
+        assertEquals("游戏 \"1\"", roundTrip("name", "游戏 \"1\"", "a").key);
+        assertNull(roundTrip("name", null, "a").key);
+
+        Page.Token token = roundTrip(null, null, "id/1+2");
+        assertNull(token.key);
+        assertEquals("id/1+2", token.id);
+    }
+
+    @Test
+    public void urlSafe() {
+        String token = new Page.Token("name", "???>>>", "~~~").encode();
+        for (char c : token.toCharArray()) {
+            if (!Character.isLetterOrDigit(c) && c != '-' && c != '_') fail(token);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void otherField() {
+        String token = new Page.Token("size", 1L, "a").encode();
+        Page.Token.decode(token, "name");
+    }
+
+    @Test
+    public void invalid() {
+        String[] tokens = {
+                "",
+                "not a token",
+                new Page.Token("size", 1L, "a").encode().substring(4),
+                base64("[\"size\",\"x\",\"1\",\"a\"]"),
+                base64("[\"size\",\"i\",\"abc\",\"a\"]"),
+                base64("{}"),
+        };
+        for (String token : tokens) {
+            try {
+                Page.Token.decode(token, "size");
+                fail(token);
+            } catch (IllegalArgumentException e) {
+                //期望的异常
+            }
+        }
+    }
+}
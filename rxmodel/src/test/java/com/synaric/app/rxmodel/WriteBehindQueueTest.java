@@ -0,0 +1,121 @@
+package com.synaric.app.rxmodel;
+
+import com.synaric.app.rxmodel.converter.CompactBinaryConverter;
+import com.synaric.app.rxmodel.converter.Converter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.functions.Action1;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 延迟写入的批次：失败的写操作只回滚自身，同一批次的其他操作只执行一次。
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class WriteBehindQueueTest {
+
+    private RxModel rxModel;
+    private CounterModel model;
+
+    @Before
+    public void setUp() {
+        //批次足够大、等待时间足够长，只在flushWrites时提交
+        rxModel = new RxModel.Builder(RuntimeEnvironment.application)
+                .dbName("write_behind")
+                .resultScheduler(null)
+                .writeBehind(100, 60000)
+                .build();
+        model = new CounterModel(rxModel);
+        model.save(new Counter("counter")).subscribe();
+        rxModel.flushWrites();
+    }
+
+    @After
+    public void tearDown() {
+        rxModel.close();
+    }
+
+    @Test
+    public void failedWriteInBatch() {
+        final AtomicInteger calls = new AtomicInteger();
+        final List<Integer> results = new ArrayList<>();
+        Action1<Integer> collect = new Action1<Integer>() {
+            @Override
+            public void call(Integer result) {
+                results.add(result);
+            }
+        };
+
+        model.update(null, new DbModel.OnUpdate<Counter>() {
+            @Override
+            public Counter update(Counter src) {
+                calls.incrementAndGet();
+                src.value++;
+                return src;
+            }
+        }).subscribe(collect);
+        model.update(null, new DbModel.OnUpdate<Counter>() {
+            @Override
+            public Counter update(Counter src) {
+                throw new IllegalStateException("failed");
+            }
+        }).subscribe(collect);
+        rxModel.flushWrites();
+
+        assertEquals(1, calls.get());
+        assertEquals(1, (int) results.get(0));
+        assertEquals(0, (int) results.get(1));
+        assertEquals(1, model.syncQueryFirst().value);
+        assertEquals(1, rxModel.getMetrics().getStats("Counter", Metrics.Operation.UPDATE).getFailures());
+    }
+
+    static class Counter {
+
+        String id;
+        int value;
+
+        Counter() {
+        }
+
+        Counter(String id) {
+            this.id = id;
+        }
+    }
+
+    static class CounterModel extends DbModel<Counter> {
+
+        CounterModel(RxModel rxModel) {
+            super(rxModel, Counter.class, "Counter");
+        }
+
+        @Override
+        public String bindID(Counter counter) {
+            return counter.id;
+        }
+
+        /**
+         * Robolectric的CursorWindow不支持copyStringToBuffer，文档模型以BLOB存储。
+         */
+        @Override
+        public Converter<Counter> bindConverter(Class<Counter> clz) {
+            return new CompactBinaryConverter<Counter>(clz) {
+                @Override
+                public String bindID(Counter counter) {
+                    return counter.id;
+                }
+            };
+        }
+    }
+}
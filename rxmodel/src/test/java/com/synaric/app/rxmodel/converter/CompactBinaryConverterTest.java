@@ -0,0 +1,172 @@
+package com.synaric.app.rxmodel.converter;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * 二进制文档模型的编码与解码。
+ */
+public class CompactBinaryConverterTest {
+
+    enum Kind { RPG, ACT }
+
+    public static class Game {
+        String id;
+        int size;
+        long downloads;
+        double rating;
+        float price;
+        boolean free;
+        char grade;
+        Integer boxed;
+        byte[] icon;
+        Kind kind;
+        List<String> tags;
+        Map<String, Integer> scores;
+        Detail detail;
+        transient String cached;
+    }
+
+    public static class Detail {
+        String author;
+        Detail parent;
+
+        private Detail() {
+        }
+
+        Detail(String author, Detail parent) {
+            this.author = author;
+            this.parent = parent;
+        }
+    }
+
+    public static class SubDetail extends Detail {
+        String extra;
+
+        private SubDetail() {
+        }
+    }
+
+    public static class NoDefaultConstructor {
+        int value;
+
+        NoDefaultConstructor(int value) {
+            this.value = value;
+        }
+    }
+
+    public static class Holder {
+        NoDefaultConstructor nested;
+    }
+
+    private static <T> CompactBinaryConverter<T> converter(Class<T> clz) {
+        return new CompactBinaryConverter<T>(clz) {
+            @Override
+            public String bindID(T t) {
+                return null;
+            }
+        };
+    }
+
+    @Test
+    public void roundTrip() {
+        Game game = new Game();
+        game.id = "g1";
+        game.size = -42;
+        game.downloads = Long.MAX_VALUE;
+        game.rating = 4.5;
+        game.price = 0.99f;
+        game.free = true;
+        game.grade = 'A';
+        game.boxed = 7;
+        game.icon = new byte[]{1, 2, 3};
+        game.kind = Kind.ACT;
+        game.tags = Arrays.asList("a", "b");
+        game.scores = Collections.singletonMap("x", 1);
+        game.detail = new Detail("synaric", new Detail("root", null));
+        game.cached = "not stored";
+
+        CompactBinaryConverter<Game> converter = converter(Game.class);
+        Game decoded = converter.convertToObject(converter.convertToBytes(game));
+
+        assertEquals("g1", decoded.id);
+        assertEquals(-42, decoded.size);
+        assertEquals(Long.MAX_VALUE, decoded.downloads);
+        assertEquals(4.5, decoded.rating, 0);
+        assertEquals(0.99f, decoded.price, 0);
+        assertEquals(true, decoded.free);
+        assertEquals('A', decoded.grade);
+        assertEquals(Integer.valueOf(7), decoded.boxed);
+        assertArrayEquals(new byte[]{1, 2, 3}, decoded.icon);
+        assertSame(Kind.ACT, decoded.kind);
+        assertEquals(Arrays.asList("a", "b"), decoded.tags);
+        assertEquals(Integer.valueOf(1), decoded.scores.get("x"));
+        assertEquals("synaric", decoded.detail.author);
+        assertEquals("root", decoded.detail.parent.author);
+        assertNull(decoded.detail.parent.parent);
+        assertNull(decoded.cached);
+    }
+
+    @Test
+    public void nullFieldsAndDocument() {
+        CompactBinaryConverter<Game> converter = converter(Game.class);
+        Game decoded = converter.convertToObject(converter.convertToBytes(new Game()));
+
+        assertNull(decoded.id);
+        assertNull(decoded.boxed);
+        assertNull(decoded.detail);
+        assertNull(converter.convertToObject((byte[]) null));
+    }
+
+    @Test
+    public void nestedUsesDeclaredType() {
+        SubDetail sub = new SubDetail();
+        sub.author = "synaric";
+        sub.extra = "dropped";
+        Game game = new Game();
+        game.detail = sub;
+
+        CompactBinaryConverter<Game> converter = converter(Game.class);
+        Game decoded = converter.convertToObject(converter.convertToBytes(game));
+
+        assertSame(Detail.class, decoded.detail.getClass());
+        assertEquals("synaric", decoded.detail.author);
+    }
+
+    @Test
+    public void unknownFieldsSkipped() {
+        Detail detail = new Detail("synaric", null);
+        byte[] bytes = converter(Detail.class).convertToBytes(detail);
+
+        //Game中没有author和parent字段，解码时跳过
+        Game decoded = converter(Game.class).convertToObject(bytes);
+        assertNull(decoded.id);
+        assertEquals(0, decoded.size);
+    }
+
+    @Test
+    public void requiresNoArgsConstructor() {
+        try {
+            converter(NoDefaultConstructor.class);
+            fail();
+        } catch (IllegalArgumentException e) {
+            //期望的异常
+        }
+        try {
+            converter(Holder.class);
+            fail();
+        } catch (IllegalArgumentException e) {
+            //嵌套的对象同样需要无参构造器
+        }
+    }
+}
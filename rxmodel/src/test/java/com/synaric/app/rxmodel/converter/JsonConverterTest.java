@@ -0,0 +1,143 @@
+package com.synaric.app.rxmodel.converter;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.LongSerializationPolicy;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 生成的TypeAdapter只在Gson以默认方式反射读写对象模型时使用。
+ * rxmodel-compiler不参与单元测试的编译，文件末尾的"类名_JsonAdapter"代替生成的类，输出可以区分的Json。
+ */
+public class JsonConverterTest {
+
+    public static class Game {
+        String name;
+        long size;
+    }
+
+    public static class Tagged {
+        @JsonAdapter(UpperCaseAdapter.class)
+        String name;
+    }
+
+    public static class Alternate {
+        @SerializedName(value = "name", alternate = {"title"})
+        String name;
+    }
+
+    public static class UpperCaseAdapter extends TypeAdapter<String> {
+
+        @Override
+        public void write(JsonWriter out, String value) throws IOException {
+            out.value(value.toUpperCase());
+        }
+
+        @Override
+        public String read(JsonReader in) throws IOException {
+            return in.nextString().toLowerCase();
+        }
+    }
+
+    private static final TypeAdapter<Game> REGISTERED = new TypeAdapter<Game>() {
+        @Override
+        public void write(JsonWriter out, Game value) throws IOException {
+            out.value("registered");
+        }
+
+        @Override
+        public Game read(JsonReader in) throws IOException {
+            in.skipValue();
+            return new Game();
+        }
+    };
+
+    private static <T> JsonConverter<T> converter(Class<T> clz, Gson gson) {
+        return new JsonConverter<T>(clz, gson, JsonConverter.findGeneratedAdapter(clz, gson)) {
+            @Override
+            public String bindID(T t) {
+                return null;
+            }
+        };
+    }
+
+    @Test
+    public void generatedAdapter() {
+        assertTrue(JsonConverter.findGeneratedAdapter(Game.class, new Gson()) instanceof GeneratedAdapter);
+        assertEquals("{\"generated\":true}", converter(Game.class, new Gson()).convertToDocument(new Game()));
+    }
+
+    @Test
+    public void registeredAdapterWins() {
+        Gson gson = new GsonBuilder().registerTypeAdapter(Game.class, REGISTERED).create();
+
+        assertNull(JsonConverter.findGeneratedAdapter(Game.class, gson));
+        assertEquals("\"registered\"", converter(Game.class, gson).convertToDocument(new Game()));
+    }
+
+    @Test
+    public void configuredGson() {
+        assertNull(JsonConverter.findGeneratedAdapter(Game.class, new GsonBuilder().serializeNulls().create()));
+        assertNull(JsonConverter.findGeneratedAdapter(Game.class, new GsonBuilder().setVersion(1.0).create()));
+        assertNull(JsonConverter.findGeneratedAdapter(Game.class,
+                new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create()));
+        assertNull(JsonConverter.findGeneratedAdapter(Game.class,
+                new GsonBuilder().setLongSerializationPolicy(LongSerializationPolicy.STRING).create()));
+        assertNull(JsonConverter.findGeneratedAdapter(Game.class,
+                new GsonBuilder().registerTypeAdapter(String.class, new UpperCaseAdapter()).create()));
+    }
+
+    @Test
+    public void fieldAnnotations() {
+        Tagged tagged = new Tagged();
+        tagged.name = "game";
+
+        assertNull(JsonConverter.findGeneratedAdapter(Tagged.class, new Gson()));
+        assertEquals("{\"name\":\"GAME\"}", converter(Tagged.class, new Gson()).convertToDocument(tagged));
+        assertNull(JsonConverter.findGeneratedAdapter(Alternate.class, new Gson()));
+    }
+}
+
+abstract class GeneratedAdapter<T> extends TypeAdapter<T> {
+
+    @Override
+    public void write(JsonWriter out, T value) throws IOException {
+        out.beginObject().name("generated").value(true).endObject();
+    }
+
+    @Override
+    public T read(JsonReader in) throws IOException {
+        in.skipValue();
+        return null;
+    }
+}
+
+final class JsonConverterTest_Game_JsonAdapter extends GeneratedAdapter<JsonConverterTest.Game> {
+
+    public JsonConverterTest_Game_JsonAdapter(Gson gson) {
+    }
+}
+
+final class JsonConverterTest_Tagged_JsonAdapter extends GeneratedAdapter<JsonConverterTest.Tagged> {
+
+    public JsonConverterTest_Tagged_JsonAdapter(Gson gson) {
+    }
+}
+
+final class JsonConverterTest_Alternate_JsonAdapter extends GeneratedAdapter<JsonConverterTest.Alternate> {
+
+    public JsonConverterTest_Alternate_JsonAdapter(Gson gson) {
+    }
+}
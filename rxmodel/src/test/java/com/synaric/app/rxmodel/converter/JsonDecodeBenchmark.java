@@ -0,0 +1,74 @@
+package com.synaric.app.rxmodel.converter;
+
+import com.google.gson.Gson;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 单行解码的耗时对比：每行创建String后gson.fromJson（原实现） vs 复用TypeAdapter、直接从字符数组解码（{@link JsonConverter}）。
+ * 模拟Cursor的读取方式：文档模型位于复用的字符数组中。每种方式先预热，再取多轮中最快的一轮，结果输出到标准输出。
+ */
+public class JsonDecodeBenchmark {
+
+    private static final int ROWS = 10000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    @Test
+    public void decodeCost() throws Exception {
+        Gson gson = new Gson();
+        List<char[]> rows = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            rows.add(gson.toJson(new Bean("id" + i, "bean" + i, i, i % 2 == 0)).toCharArray());
+        }
+        JsonConverter<Bean> converter = new JsonConverter<Bean>(Bean.class, gson, null) {
+            @Override
+            public String bindID(Bean bean) {
+                return bean.id;
+            }
+        };
+
+        long sink = 0;
+        long before = Long.MAX_VALUE;
+        long after = Long.MAX_VALUE;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            long begin = System.nanoTime();
+            for (char[] row : rows) {
+                sink += gson.fromJson(new String(row, 0, row.length), Bean.class).size;
+            }
+            long cost = System.nanoTime() - begin;
+            if (round >= WARMUP_ROUNDS) before = Math.min(before, cost);
+
+            begin = System.nanoTime();
+            for (char[] row : rows) {
+                sink += converter.convertToObject(row, row.length).size;
+            }
+            cost = System.nanoTime() - begin;
+            if (round >= WARMUP_ROUNDS) after = Math.min(after, cost);
+        }
+
+        assertEquals((long) ROWS * (ROWS - 1) * (WARMUP_ROUNDS + ROUNDS), sink);
+        System.out.println("JsonDecodeBenchmark: gson.fromJson(String) " + before / ROWS + " ns/row, "
+                + "cached adapter over char[] " + after / ROWS + " ns/row");
+    }
+
+    static class Bean {
+
+        String id;
+        String name;
+        int size;
+        boolean installed;
+
+        Bean(String id, String name, int size, boolean installed) {
+            this.id = id;
+            this.name = name;
+            this.size = size;
+            this.installed = installed;
+        }
+    }
+}
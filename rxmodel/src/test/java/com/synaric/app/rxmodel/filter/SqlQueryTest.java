@@ -0,0 +1,178 @@
+package com.synaric.app.rxmodel.filter;
+
+import com.google.gson.annotations.SerializedName;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 筛选器编译为查询计划：条件拆分、参数绑定、筛选范围，以及查询计划的缓存。
+ */
+public class SqlQueryTest {
+
+    /**
+     * 只有name和size可以映射为SQL。
+     */
+    private static final FieldMapper MAPPER = new FieldMapper() {
+        @Override
+        public String map(String field) {
+            if (field.equals("name") || field.equals("size")) return "c_" + field;
+            return null;
+        }
+    };
+
+    public enum Kind {
+        @SerializedName("rpg")
+        RPG,
+        ACT
+    }
+
+    public static class Game {
+        String name;
+        int size;
+        String tag;
+
+        Game(String name, int size, String tag) {
+            this.name = name;
+            this.size = size;
+            this.tag = tag;
+        }
+    }
+
+    @Test
+    public void fullyInSql() {
+        Filter<Game> filter = new QueryFilter<Game>(
+                Condition.gt("size", 10).and(Condition.eq("name", "game")), 5, 20)
+                .orderBy("size", false);
+        SqlQuery<Game> query = SqlQuery.compile(filter, MAPPER);
+
+        assertEquals("(c_size > 10 and c_name = ?)", query.getWhere());
+        assertArrayEquals(new String[]{"game"}, query.getArgs());
+        assertEquals("c_size desc", query.getOrderBy());
+        assertTrue(query.isFullyInSql());
+        assertEquals(20, query.getSqlLimit());
+        assertEquals(5, query.getSqlOffset());
+        assertEquals(0, query.getJavaStart());
+        assertEquals(-1, query.getJavaLimit());
+    }
+
+    @Test
+    public void splitAnd() {
+        Filter<Game> filter = new QueryFilter<Game>(
+                Condition.eq("name", "game").and(Condition.eq("tag", "rpg")).and(Condition.ge("size", 3)), 1, 2);
+        SqlQuery<Game> query = SqlQuery.compile(filter, MAPPER);
+
+        //能翻译的部分交给SQL，参数只包含这部分的值
+        assertEquals("(c_name = ? and c_size >= 3)", query.getWhere());
+        assertArrayEquals(new String[]{"game"}, query.getArgs());
+        assertFalse(query.isFullyInSql());
+        assertTrue(query.accept(new Game("game", 3, "rpg")));
+        assertFalse(query.accept(new Game("game", 3, "act")));
+
+        //部分条件在Java层执行时，筛选范围也在Java层执行
+        assertEquals(-1, query.getSqlLimit());
+        assertEquals(0, query.getSqlOffset());
+        assertEquals(1, query.getJavaStart());
+        assertEquals(2, query.getJavaLimit());
+    }
+
+    @Test
+    public void orNotSplit() {
+        Filter<Game> filter = new QueryFilter<Game>(
+                Condition.or(Condition.eq("name", "game"), Condition.eq("tag", "rpg")));
+        SqlQuery<Game> query = SqlQuery.compile(filter, MAPPER);
+
+        assertNull(query.getWhere());
+        assertEquals(0, query.getArgs().length);
+        assertTrue(query.accept(new Game("other", 0, "rpg")));
+        assertFalse(query.accept(new Game("other", 0, "act")));
+    }
+
+    @Test
+    public void noMapper() {
+        Filter<Game> filter = new QueryFilter<Game>(Condition.eq("name", "game"), 0, 1).orderBy("size", true);
+        SqlQuery<Game> query = SqlQuery.compile(filter, null);
+
+        assertNull(query.getWhere());
+        assertNull(query.getOrderBy());
+        assertTrue(query.isSortInJava());
+        assertEquals(1, query.getJavaLimit());
+
+        List<Game> games = new ArrayList<>(Arrays.asList(new Game("b", 2, null), new Game("a", 1, null)));
+        query.sort(games);
+        assertEquals("a", games.get(0).name);
+    }
+
+    @Test
+    public void iterativeFilter() {
+        Filter<Game> filter = new Filter<Game>(0, 10) {
+            @Override
+            public boolean doIterativeFilter(Game game) {
+                return game.size % 2 == 0;
+            }
+        };
+        filter.where(Condition.eq("name", "game"));
+        SqlQuery<Game> query = SqlQuery.compile(filter, MAPPER);
+
+        assertEquals("c_name = ?", query.getWhere());
+        assertFalse(query.isFullyInSql());
+        assertEquals(10, query.getJavaLimit());
+        assertTrue(query.accept(new Game("game", 2, null)));
+        assertFalse(query.accept(new Game("game", 1, null)));
+    }
+
+    @Test
+    public void cachedUntilModified() {
+        Filter<Game> filter = new QueryFilter<>(Condition.eq("name", "game"));
+        SqlQuery<Game> first = SqlQuery.compile(filter, MAPPER);
+        assertSame(first, SqlQuery.compile(filter, MAPPER));
+
+        //字段映射不同时重新编译
+        assertNotSame(first, SqlQuery.compile(filter, null));
+
+        SqlQuery<Game> cached = SqlQuery.compile(filter, MAPPER);
+        filter.setLimit(5);
+        SqlQuery<Game> limited = SqlQuery.compile(filter, MAPPER);
+        assertNotSame(cached, limited);
+        assertEquals(5, limited.getSqlLimit());
+        //已经编译的查询计划不受筛选器修改的影响
+        assertEquals(-1, cached.getSqlLimit());
+
+        filter.where(Condition.lt("size", 3));
+        SqlQuery<Game> narrowed = SqlQuery.compile(filter, MAPPER);
+        assertEquals("(c_name = ? and c_size < 3)", narrowed.getWhere());
+    }
+
+    @Test
+    public void withLimit() {
+        Filter<Game> filter = new QueryFilter<>(Condition.eq("name", "game"));
+        SqlQuery<Game> query = SqlQuery.compile(filter, MAPPER);
+        SqlQuery<Game> first = query.withLimit(1);
+
+        assertEquals(1, first.getSqlLimit());
+        assertEquals(-1, query.getSqlLimit());
+        assertEquals(-1, filter.getLimit());
+        assertSame(query, SqlQuery.compile(filter, MAPPER));
+    }
+
+    @Test
+    public void enumValue() {
+        Filter<Game> filter = new QueryFilter<Game>(Condition.in("name", Kind.RPG, Kind.ACT));
+        SqlQuery<Game> query = SqlQuery.compile(filter, MAPPER);
+
+        //与Gson存储的枚举一致，使用@SerializedName
+        assertEquals("c_name in (?, ?)", query.getWhere());
+        assertArrayEquals(new String[]{"rpg", "ACT"}, query.getArgs());
+    }
+}
@@ -0,0 +1,72 @@
+package com.synaric.app.rxmodel.utils;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.annotations.SerializedName;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 字段路径到Json名称的解析，以及Json路径的SQL字面量。
+ */
+public class JsonFieldResolverTest {
+
+    public static class Game {
+        String gameName;
+        @SerializedName("sz")
+        int size;
+        Detail gameDetail;
+        Map<String, String> extras;
+    }
+
+    public static class Detail {
+        String authorName;
+    }
+
+    @Test
+    public void defaultGson() {
+        JsonFieldResolver resolver = new JsonFieldResolver(Game.class, new Gson());
+
+        assertArrayEquals(new String[]{"gameName"}, resolver.resolve("gameName"));
+        assertArrayEquals(new String[]{"sz"}, resolver.resolve("size"));
+        assertArrayEquals(new String[]{"gameDetail", "authorName"}, resolver.resolve("gameDetail.authorName"));
+    }
+
+    @Test
+    public void namingPolicy() {
+        Gson gson = new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES).create();
+        JsonFieldResolver resolver = new JsonFieldResolver(Game.class, gson);
+
+        assertArrayEquals(new String[]{"game_name"}, resolver.resolve("gameName"));
+        //@SerializedName优先于命名策略
+        assertArrayEquals(new String[]{"sz"}, resolver.resolve("size"));
+        assertArrayEquals(new String[]{"game_detail", "author_name"}, resolver.resolve("gameDetail.authorName"));
+    }
+
+    @Test
+    public void unknownSegmentsKept() {
+        Gson gson = new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.UPPER_CAMEL_CASE).create();
+        JsonFieldResolver resolver = new JsonFieldResolver(Game.class, gson);
+
+        //Map的键不是字段，保持原样
+        assertArrayEquals(new String[]{"Extras", "someKey"}, resolver.resolve("extras.someKey"));
+        assertArrayEquals(new String[]{"missing", "gameName"}, resolver.resolve("missing.gameName"));
+    }
+
+    @Test
+    public void jsonPath() {
+        assertEquals("'$.a.b'", SqlUtils.createJsonPath(new String[]{"a", "b"}));
+        assertEquals("'$.\"a-b\".c'", SqlUtils.createJsonPath(new String[]{"a-b", "c"}));
+        assertEquals("'$.\"it''s\"'", SqlUtils.createJsonPath(new String[]{"it's"}));
+        assertNull(SqlUtils.createJsonPath(new String[]{"a\"b"}));
+        assertEquals("json_extract(value, '$.sz')", SqlUtils.createJsonExtract(new String[]{"sz"}));
+        assertNull(SqlUtils.createJsonExtract(new String[]{""}));
+    }
+}
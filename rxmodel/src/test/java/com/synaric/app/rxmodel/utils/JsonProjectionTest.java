@@ -0,0 +1,90 @@
+package com.synaric.app.rxmodel.utils;
+
+import com.google.gson.Gson;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 从Json文档模型中提取字段。
+ */
+public class JsonProjectionTest {
+
+    private static final String DOCUMENT = "{\"name\":\"game\",\"size\":20000,\"rating\":4.5,\"free\":true,"
+            + "\"tags\":[\"a\",\"b\"],\"detail\":{\"author\":\"synaric\",\"stats\":{\"views\":7}},\"extra\":null}";
+
+    private static Map<String, Object> scan(JsonProjection projection) throws IOException {
+        return projection.scan(new StringReader(DOCUMENT));
+    }
+
+    @Test
+    public void values() throws IOException {
+        Map<String, Object> values = scan(new JsonProjection(
+                new String[]{"size", "name", "rating", "free", "tags", "extra", "missing"}));
+
+        //按照字段声明的顺序排列
+        assertEquals(Arrays.asList("size", "name", "rating", "free", "tags", "extra", "missing"),
+                Arrays.asList(values.keySet().toArray()));
+        assertEquals(20000L, values.get("size"));
+        assertEquals("game", values.get("name"));
+        assertEquals(4.5, values.get("rating"));
+        assertEquals(1L, values.get("free"));
+        assertEquals("[\"a\",\"b\"]", values.get("tags"));
+        assertNull(values.get("extra"));
+        assertNull(values.get("missing"));
+    }
+
+    @Test
+    public void nested() throws IOException {
+        Map<String, Object> values = scan(new JsonProjection(
+                new String[]{"detail.author", "detail.stats.views", "detail.missing", "name.length"}));
+
+        assertEquals("synaric", values.get("detail.author"));
+        assertEquals(7L, values.get("detail.stats.views"));
+        assertNull(values.get("detail.missing"));
+        assertNull(values.get("name.length"));
+    }
+
+    @Test
+    public void parentAndChild() throws IOException {
+        Map<String, Object> values = scan(new JsonProjection(new String[]{"detail.stats", "detail.stats.views"}));
+
+        assertEquals("{\"views\":7}", values.get("detail.stats"));
+        assertEquals(7L, values.get("detail.stats.views"));
+    }
+
+    @Test
+    public void resolvedPaths() throws IOException {
+        //结果的键是字段路径，文档中按Json名称查找
+        JsonProjection projection = new JsonProjection(new String[]{"title", "writer"},
+                new String[][]{{"name"}, {"detail", "author"}});
+        Map<String, Object> values = scan(projection);
+
+        assertEquals("game", values.get("title"));
+        assertEquals("synaric", values.get("writer"));
+    }
+
+    @Test
+    public void notAnObject() throws IOException {
+        Map<String, Object> values = new JsonProjection(new String[]{"name"}).scan(new StringReader("[1,2]"));
+        assertNull(values.get("name"));
+    }
+
+    @Test
+    public void normalize() {
+        Gson gson = new Gson();
+        assertEquals(3L, JsonProjection.normalize(3, gson));
+        assertEquals(1L, JsonProjection.normalize(true, gson));
+        assertEquals(0.5, JsonProjection.normalize(0.5f, gson));
+        assertEquals("c", JsonProjection.normalize('c', gson));
+        assertEquals("[1,2]", JsonProjection.normalize(Arrays.asList(1, 2), gson));
+        assertNull(JsonProjection.normalize(null, gson));
+    }
+}